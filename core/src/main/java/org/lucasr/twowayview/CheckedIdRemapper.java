@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview;
+
+import org.lucasr.twowayview.ItemSelectionSupport.ItemIdLookup;
+
+import static org.lucasr.twowayview.ItemSelectionSupport.INVALID_POSITION;
+
+/**
+ * Finds the new positions of checked item IDs after a data set change.
+ * Items still at their previous position cost a single ID lookup. Moved
+ * items are found through the adapter's {@link ItemIdLookup} if it has one,
+ * otherwise by probing around their previous position, and the ones still
+ * missing are looked up in a single pass over the adapter.
+ */
+final class CheckedIdRemapper {
+    static final int SEARCH_DISTANCE = 20;
+
+    /**
+     * The item IDs of the adapter being remapped against.
+     */
+    interface ItemIds {
+        int getItemCount();
+        long getItemId(int position);
+    }
+
+    private CheckedIdRemapper() {
+    }
+
+    /**
+     * Updates the positions of the checked IDs in place and drops the ones
+     * no longer in the adapter. The new positions are also written, in no
+     * particular order, to <code>outPositions</code>, which must be able to
+     * hold all the checked IDs. Returns the number of positions written.
+     */
+    static int remap(CheckedIdStates checkedIds, ItemIds itemIds, ItemIdLookup idLookup,
+                     int[] outPositions) {
+        final int itemCount = itemIds.getItemCount();
+        final int checkedCount = checkedIds.size();
+
+        // Probing around the previous position costs a few getItemId() calls
+        // per moved item, a full pass over the adapter is cheaper past this.
+        final boolean probeNearby = (checkedCount * SEARCH_DISTANCE * 2 < itemCount);
+
+        // Checked IDs are iterated by slot, new positions are indexed the same way.
+        final int capacity = checkedIds.getCapacity();
+        final int[] newPositions = new int[capacity];
+        CheckedIdStates movedIds = null;
+
+        for (int slot = 0; slot < capacity; slot++) {
+            if (!checkedIds.isUsedAt(slot)) {
+                continue;
+            }
+
+            final long id = checkedIds.keyAt(slot);
+            final int position = checkedIds.valueAt(slot);
+
+            int newPosition = INVALID_POSITION;
+            if (position < itemCount && itemIds.getItemId(position) == id) {
+                newPosition = position;
+            } else if (idLookup != null) {
+                newPosition = idLookup.getPositionForItemId(id);
+                if (newPosition < 0 || newPosition >= itemCount) {
+                    newPosition = INVALID_POSITION;
+                }
+            } else if (probeNearby) {
+                newPosition = findItemIdNearby(itemIds, id, position, itemCount);
+            }
+
+            newPositions[slot] = newPosition;
+
+            // Look for the ones not found yet in a single pass below, unless
+            // the adapter told us they're gone.
+            if (newPosition == INVALID_POSITION && idLookup == null) {
+                if (movedIds == null) {
+                    movedIds = new CheckedIdStates();
+                }
+
+                movedIds.put(id, slot);
+            }
+        }
+
+        if (movedIds != null) {
+            for (int position = 0; position < itemCount && movedIds.size() > 0; position++) {
+                final long id = itemIds.getItemId(position);
+                final int slot = movedIds.get(id, INVALID_POSITION);
+                if (slot != INVALID_POSITION) {
+                    newPositions[slot] = position;
+                    movedIds.delete(id);
+                }
+            }
+        }
+
+        int positionCount = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (!checkedIds.isUsedAt(slot)) {
+                continue;
+            }
+
+            final int newPosition = newPositions[slot];
+            if (newPosition == INVALID_POSITION) {
+                checkedIds.removeAt(slot);
+            } else {
+                checkedIds.setValueAt(slot, newPosition);
+                outPositions[positionCount++] = newPosition;
+            }
+        }
+
+        return positionCount;
+    }
+
+    private static int findItemIdNearby(ItemIds itemIds, long id, int position, int itemCount) {
+        final int start = Math.max(0, position - SEARCH_DISTANCE);
+        final int end = Math.min(position + SEARCH_DISTANCE, itemCount);
+
+        for (int searchPos = start; searchPos < end; searchPos++) {
+            if (itemIds.getItemId(searchPos) == id) {
+                return searchPos;
+            }
+        }
+
+        return INVALID_POSITION;
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from checked item IDs to their positions, with
+ * primitive keys and values. Removed entries leave a tombstone behind, so
+ * iterating over the slots (see {@link #getCapacity()}) is stable while
+ * entries are removed or updated. Only {@link #put(long, int)} might move
+ * entries around when it has to grow the table.
+ */
+class CheckedIdStates implements Parcelable {
+    private static final int MIN_CAPACITY = 16;
+
+    private static final byte SLOT_FREE = 0;
+    private static final byte SLOT_USED = 1;
+    private static final byte SLOT_REMOVED = 2;
+
+    private long[] mKeys;
+    private int[] mValues;
+    private byte[] mSlots;
+
+    // Number of entries and number of slots that are not free, including
+    // removed ones.
+    private int mSize;
+    private int mOccupied;
+
+    public CheckedIdStates() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private CheckedIdStates(Parcel in) {
+        final int size = in.readInt();
+        allocate(getCapacityForSize(size));
+
+        for (int i = 0; i < size; i++) {
+            final long key = in.readLong();
+            final int value = in.readInt();
+            put(key, value);
+        }
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        mValues = new int[capacity];
+        mSlots = new byte[capacity];
+        mSize = 0;
+        mOccupied = 0;
+    }
+
+    private static int getCapacityForSize(int size) {
+        // Keep the table at most half full after (re)allocating it.
+        int capacity = MIN_CAPACITY;
+        while (capacity < size * 2) {
+            capacity *= 2;
+        }
+
+        return capacity;
+    }
+
+    private static int hash(long key) {
+        // Finalizer from MurmurHash3, spreads sequential IDs.
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Returns the slot holding the given key or -1 if there's none.
+     */
+    private int findSlot(long key) {
+        final int mask = mSlots.length - 1;
+        int slot = hash(key) & mask;
+
+        while (mSlots[slot] != SLOT_FREE) {
+            if (mSlots[slot] == SLOT_USED && mKeys[slot] == key) {
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private void rehash(int capacity) {
+        final long[] oldKeys = mKeys;
+        final int[] oldValues = mValues;
+        final byte[] oldSlots = mSlots;
+
+        allocate(capacity);
+
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] == SLOT_USED) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean containsKey(long key) {
+        return (findSlot(key) != -1);
+    }
+
+    public int get(long key, int valueIfKeyNotFound) {
+        final int slot = findSlot(key);
+        return (slot != -1 ? mValues[slot] : valueIfKeyNotFound);
+    }
+
+    public void put(long key, int value) {
+        final int mask = mSlots.length - 1;
+        int slot = hash(key) & mask;
+        int removedSlot = -1;
+
+        while (mSlots[slot] != SLOT_FREE) {
+            if (mSlots[slot] == SLOT_USED && mKeys[slot] == key) {
+                mValues[slot] = value;
+                return;
+            }
+
+            if (mSlots[slot] == SLOT_REMOVED && removedSlot == -1) {
+                removedSlot = slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        // Reuse the first tombstone along the probe sequence, if any.
+        if (removedSlot != -1) {
+            slot = removedSlot;
+        } else {
+            // Keep at least a quarter of the slots free so that probe
+            // sequences stay short and always end.
+            if ((mOccupied + 1) * 4 > mSlots.length * 3) {
+                rehash(getCapacityForSize(mSize + 1));
+                put(key, value);
+                return;
+            }
+
+            mOccupied++;
+        }
+
+        mKeys[slot] = key;
+        mValues[slot] = value;
+        mSlots[slot] = SLOT_USED;
+        mSize++;
+    }
+
+    public void delete(long key) {
+        final int slot = findSlot(key);
+        if (slot != -1) {
+            removeAt(slot);
+        }
+    }
+
+    public void clear() {
+        if (mSlots.length > MIN_CAPACITY) {
+            allocate(MIN_CAPACITY);
+        } else {
+            Arrays.fill(mSlots, SLOT_FREE);
+            mSize = 0;
+            mOccupied = 0;
+        }
+    }
+
+    /**
+     * Returns the number of slots in the table. Slots holding an entry
+     * are the ones for which {@link #isUsedAt(int)} returns true.
+     */
+    public int getCapacity() {
+        return mSlots.length;
+    }
+
+    public boolean isUsedAt(int slot) {
+        return (mSlots[slot] == SLOT_USED);
+    }
+
+    public long keyAt(int slot) {
+        return mKeys[slot];
+    }
+
+    public int valueAt(int slot) {
+        return mValues[slot];
+    }
+
+    public void setValueAt(int slot, int value) {
+        mValues[slot] = value;
+    }
+
+    public void removeAt(int slot) {
+        if (mSlots[slot] == SLOT_USED) {
+            mSlots[slot] = SLOT_REMOVED;
+            mSize--;
+        }
+    }
+
+    void collectMemoryUsage(MemoryUsage usage, String name) {
+        final int capacity = mSlots.length;
+        final long bytes = MemoryUsage.getObjectSize(3 * MemoryUsage.REFERENCE_SIZE +
+                2 * MemoryUsage.INT_SIZE) +
+                MemoryUsage.getArraySize(capacity, MemoryUsage.LONG_SIZE) +
+                MemoryUsage.getArraySize(capacity, MemoryUsage.INT_SIZE) +
+                MemoryUsage.getArraySize(capacity, MemoryUsage.BOOLEAN_SIZE);
+        usage.add(name, bytes, 4);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel parcel, int flags) {
+        // Only entries are written, the table is rebuilt when reading.
+        parcel.writeInt(mSize);
+
+        for (int i = 0; i < mSlots.length; i++) {
+            if (mSlots[i] == SLOT_USED) {
+                parcel.writeLong(mKeys[i]);
+                parcel.writeInt(mValues[i]);
+            }
+        }
+    }
+
+    public static final Creator<CheckedIdStates> CREATOR
+            = new Creator<CheckedIdStates>() {
+        @Override
+        public CheckedIdStates createFromParcel(Parcel in) {
+            return new CheckedIdStates(in);
+        }
+
+        @Override
+        public CheckedIdStates[] newArray(int size) {
+            return new CheckedIdStates[size];
+        }
+    };
+}
@@ -0,0 +1,487 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.SparseBooleanArray;
+
+import java.util.Arrays;
+
+/**
+ * Run-length encoded set of checked positions. Checked positions are kept
+ * as sorted, non-adjacent [start, end) ranges so that checking a whole range
+ * of items, or all of them, costs a single range no matter how many items
+ * it covers. Lookups are a binary search over the ranges and the checked
+ * count is kept up to date on every change.
+ */
+class CheckedStates implements Parcelable {
+    private static final int MIN_SIZE = 8;
+
+    // Pairs of range start (inclusive) and end (exclusive) positions.
+    private int[] mRanges = new int[MIN_SIZE * 2];
+    private int mRangeCount;
+    private int mCheckedCount;
+
+    public CheckedStates() {
+    }
+
+    public CheckedStates(CheckedStates states) {
+        mRanges = Arrays.copyOf(states.mRanges, Math.max(states.mRangeCount, MIN_SIZE) * 2);
+        mRangeCount = states.mRangeCount;
+        mCheckedCount = states.mCheckedCount;
+    }
+
+    private CheckedStates(Parcel in) {
+        mCheckedCount = in.readInt();
+        mRangeCount = in.readInt();
+        mRanges = new int[Math.max(mRangeCount, MIN_SIZE) * 2];
+
+        for (int i = 0; i < mRangeCount * 2; i++) {
+            mRanges[i] = in.readInt();
+        }
+    }
+
+    private int startOf(int range) {
+        return mRanges[range * 2];
+    }
+
+    private int endOf(int range) {
+        return mRanges[range * 2 + 1];
+    }
+
+    /**
+     * Returns the index of the first range ending after the given position.
+     */
+    private int findFirstEndingAfter(int position) {
+        int lo = 0;
+        int hi = mRangeCount;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (endOf(mid) > position) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+
+        return lo;
+    }
+
+    /**
+     * Returns the index of the first range starting after the given position.
+     */
+    private int findFirstStartingAfter(int position) {
+        int lo = 0;
+        int hi = mRangeCount;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (startOf(mid) > position) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+
+        return lo;
+    }
+
+    /**
+     * Replaces the ranges in [from, to) with the given ranges.
+     */
+    private void replaceRanges(int from, int to, int[] ranges, int count) {
+        final int newRangeCount = mRangeCount - (to - from) + count;
+        if (newRangeCount * 2 > mRanges.length) {
+            mRanges = Arrays.copyOf(mRanges, Math.max(newRangeCount, mRangeCount * 2) * 2);
+        }
+
+        System.arraycopy(mRanges, to * 2, mRanges, (from + count) * 2, (mRangeCount - to) * 2);
+        System.arraycopy(ranges, 0, mRanges, from * 2, count * 2);
+        mRangeCount = newRangeCount;
+    }
+
+    private int getCheckedCount(int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            count += endOf(i) - startOf(i);
+        }
+
+        return count;
+    }
+
+    public boolean get(int position) {
+        final int range = findFirstEndingAfter(position);
+        return (range < mRangeCount && startOf(range) <= position);
+    }
+
+    public void set(int position, boolean checked) {
+        setRange(position, position + 1, checked);
+    }
+
+    /**
+     * Sets the checked state of all positions in [start, end).
+     */
+    public void setRange(int start, int end, boolean checked) {
+        if (start >= end) {
+            return;
+        }
+
+        if (checked) {
+            // Merge all ranges overlapping or adjacent to the new one.
+            final int from = findFirstEndingAfter(start - 1);
+            final int to = findFirstStartingAfter(end);
+
+            int newStart = start;
+            int newEnd = end;
+            if (from < to) {
+                newStart = Math.min(start, startOf(from));
+                newEnd = Math.max(end, endOf(to - 1));
+            }
+
+            mCheckedCount += (newEnd - newStart) - getCheckedCount(from, to);
+            replaceRanges(from, to, new int[] { newStart, newEnd }, 1);
+        } else {
+            // Trim all ranges overlapping the cleared one.
+            final int from = findFirstEndingAfter(start);
+            final int to = findFirstStartingAfter(end - 1);
+            if (from >= to) {
+                return;
+            }
+
+            final int[] remaining = new int[4];
+            int count = 0;
+
+            if (startOf(from) < start) {
+                remaining[count * 2] = startOf(from);
+                remaining[count * 2 + 1] = start;
+                count++;
+            }
+
+            if (endOf(to - 1) > end) {
+                remaining[count * 2] = end;
+                remaining[count * 2 + 1] = endOf(to - 1);
+                count++;
+            }
+
+            mCheckedCount -= getCheckedCount(from, to) - getCheckedCount(remaining, count);
+            replaceRanges(from, to, remaining, count);
+        }
+    }
+
+    /**
+     * Checks all the given positions, in any order. This sorts them and
+     * merges their runs with the existing ranges in a single pass, instead
+     * of shifting ranges around for every position. Sorts the first
+     * <code>count</code> positions of the given array in place.
+     */
+    public void setPositions(int[] positions, int count) {
+        if (count == 0) {
+            return;
+        }
+
+        Arrays.sort(positions, 0, count);
+
+        // Runs of consecutive positions, skipping duplicates.
+        final int[] runs = new int[count * 2];
+        int runCount = 0;
+        for (int i = 0; i < count; i++) {
+            final int position = positions[i];
+            if (runCount > 0 && position < runs[runCount * 2 - 1]) {
+                continue;
+            }
+
+            runCount = appendRange(runs, runCount, position, position + 1);
+        }
+
+        final int[] merged = new int[Math.max(mRangeCount + runCount, MIN_SIZE) * 2];
+        int mergedCount = 0;
+        int range = 0;
+        int run = 0;
+
+        while (range < mRangeCount || run < runCount) {
+            final int start;
+            final int end;
+            if (run == runCount || (range < mRangeCount && startOf(range) <= runs[run * 2])) {
+                start = startOf(range);
+                end = endOf(range);
+                range++;
+            } else {
+                start = runs[run * 2];
+                end = runs[run * 2 + 1];
+                run++;
+            }
+
+            if (mergedCount > 0 && merged[mergedCount * 2 - 1] >= start) {
+                merged[mergedCount * 2 - 1] = Math.max(merged[mergedCount * 2 - 1], end);
+            } else {
+                merged[mergedCount * 2] = start;
+                merged[mergedCount * 2 + 1] = end;
+                mergedCount++;
+            }
+        }
+
+        mRanges = merged;
+        mRangeCount = mergedCount;
+        mCheckedCount = getCheckedCount(0, mergedCount);
+    }
+
+    /**
+     * Sets the checked state of all positions in [start, end) to the
+     * one they have in the given states.
+     */
+    public void copyRange(CheckedStates states, int start, int end) {
+        setRange(start, end, false);
+        setRanges(states, start, end, true);
+    }
+
+    /**
+     * Sets the checked state of all positions in [start, end) that are
+     * checked in the given states.
+     */
+    public void setRanges(CheckedStates states, int start, int end, boolean checked) {
+        for (int i = states.findFirstEndingAfter(start); i < states.mRangeCount; i++) {
+            if (states.startOf(i) >= end) {
+                break;
+            }
+
+            setRange(Math.max(states.startOf(i), start), Math.min(states.endOf(i), end), checked);
+        }
+    }
+
+    /**
+     * Shifts the checked positions to account for <code>itemCount</code>
+     * items inserted at <code>positionStart</code>. Inserted positions are
+     * unchecked, a range spanning the insertion point is split.
+     */
+    public void offsetForAddition(int positionStart, int itemCount) {
+        if (itemCount <= 0) {
+            return;
+        }
+
+        int range = findFirstEndingAfter(positionStart);
+        if (range < mRangeCount && startOf(range) < positionStart) {
+            final int[] split =
+                    new int[] { startOf(range), positionStart, positionStart, endOf(range) };
+            replaceRanges(range, range + 1, split, 2);
+            range++;
+        }
+
+        for (int i = range; i < mRangeCount; i++) {
+            mRanges[i * 2] += itemCount;
+            mRanges[i * 2 + 1] += itemCount;
+        }
+    }
+
+    /**
+     * Shifts the checked positions to account for <code>itemCount</code>
+     * items removed at <code>positionStart</code>.
+     */
+    public void offsetForRemoval(int positionStart, int itemCount) {
+        if (itemCount <= 0) {
+            return;
+        }
+
+        setRange(positionStart, positionStart + itemCount, false);
+
+        final int range = findFirstEndingAfter(positionStart);
+        for (int i = range; i < mRangeCount; i++) {
+            mRanges[i * 2] -= itemCount;
+            mRanges[i * 2 + 1] -= itemCount;
+        }
+
+        // The ranges around the removed items might touch now.
+        mergeAdjacent(range - 1);
+    }
+
+    /**
+     * Moves the checked states of <code>itemCount</code> items from
+     * <code>from</code> to <code>to</code>, shifting the ones in between.
+     */
+    public void offsetForMove(int from, int to, int itemCount) {
+        if (from == to || itemCount <= 0) {
+            return;
+        }
+
+        final CheckedStates moved = new CheckedStates();
+        moved.setRanges(this, from, from + itemCount, true);
+
+        offsetForRemoval(from, itemCount);
+        offsetForAddition(to, itemCount);
+
+        for (int i = 0; i < moved.mRangeCount; i++) {
+            setRange(moved.startOf(i) - from + to, moved.endOf(i) - from + to, true);
+        }
+    }
+
+    private static int getCheckedCount(int[] ranges, int count) {
+        int checkedCount = 0;
+        for (int i = 0; i < count; i++) {
+            checkedCount += ranges[i * 2 + 1] - ranges[i * 2];
+        }
+
+        return checkedCount;
+    }
+
+    /**
+     * Flips the checked state of all positions in [start, end).
+     */
+    public void invert(int start, int end) {
+        if (start >= end) {
+            return;
+        }
+
+        final int from = findFirstEndingAfter(start);
+        final int to = findFirstStartingAfter(end - 1);
+
+        // Each range inside the inverted one turns into a gap and vice
+        // versa, plus whatever is left of the outer ranges on both sides.
+        final int[] ranges = new int[(to - from + 3) * 2];
+        int count = 0;
+        int cursor = start;
+        int covered = 0;
+
+        for (int i = from; i < to; i++) {
+            final int rangeStart = startOf(i);
+            final int rangeEnd = endOf(i);
+
+            if (rangeStart < start) {
+                count = appendRange(ranges, count, rangeStart, start);
+            }
+
+            final int innerStart = Math.max(rangeStart, start);
+            final int innerEnd = Math.min(rangeEnd, end);
+            count = appendRange(ranges, count, cursor, innerStart);
+            covered += innerEnd - innerStart;
+            cursor = innerEnd;
+        }
+
+        count = appendRange(ranges, count, cursor, end);
+        if (from < to && endOf(to - 1) > end) {
+            count = appendRange(ranges, count, end, endOf(to - 1));
+        }
+
+        mCheckedCount += (end - start) - 2 * covered;
+        replaceRanges(from, to, ranges, count);
+
+        // The new ranges might now touch the ones right before or after.
+        mergeAdjacent(from + count - 1);
+        mergeAdjacent(from - 1);
+    }
+
+    private static int appendRange(int[] ranges, int count, int start, int end) {
+        if (start >= end) {
+            return count;
+        }
+
+        if (count > 0 && ranges[count * 2 - 1] == start) {
+            ranges[count * 2 - 1] = end;
+            return count;
+        }
+
+        ranges[count * 2] = start;
+        ranges[count * 2 + 1] = end;
+        return count + 1;
+    }
+
+    private void mergeAdjacent(int range) {
+        if (range < 0 || range + 1 >= mRangeCount || endOf(range) != startOf(range + 1)) {
+            return;
+        }
+
+        mRanges[range * 2 + 1] = endOf(range + 1);
+        replaceRanges(range + 1, range + 2, mRanges, 0);
+    }
+
+    public int getCheckedCount() {
+        return mCheckedCount;
+    }
+
+    /**
+     * Returns the first checked position or
+     * {@link ItemSelectionSupport#INVALID_POSITION} if there's none.
+     */
+    public int getFirstChecked() {
+        return (mRangeCount > 0 ? startOf(0) : ItemSelectionSupport.INVALID_POSITION);
+    }
+
+    public int getRangeCount() {
+        return mRangeCount;
+    }
+
+    public int getRangeStart(int range) {
+        return startOf(range);
+    }
+
+    public int getRangeEnd(int range) {
+        return endOf(range);
+    }
+
+    public void clear() {
+        mRangeCount = 0;
+        mCheckedCount = 0;
+
+        if (mRanges.length > MIN_SIZE * 2) {
+            mRanges = new int[MIN_SIZE * 2];
+        }
+    }
+
+    /**
+     * Adds all checked positions to the given array.
+     */
+    public void toSparseBooleanArray(SparseBooleanArray out) {
+        for (int i = 0; i < mRangeCount; i++) {
+            for (int position = startOf(i); position < endOf(i); position++) {
+                out.append(position, true);
+            }
+        }
+    }
+
+    void collectMemoryUsage(MemoryUsage usage, String name) {
+        final long bytes = MemoryUsage.getObjectSize(MemoryUsage.REFERENCE_SIZE +
+                2 * MemoryUsage.INT_SIZE) +
+                MemoryUsage.getArraySize(mRanges.length, MemoryUsage.INT_SIZE);
+        usage.add(name, bytes, 2);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel parcel, int flags) {
+        parcel.writeInt(mCheckedCount);
+        parcel.writeInt(mRangeCount);
+
+        for (int i = 0; i < mRangeCount * 2; i++) {
+            parcel.writeInt(mRanges[i]);
+        }
+    }
+
+    public static final Parcelable.Creator<CheckedStates> CREATOR
+            = new Parcelable.Creator<CheckedStates>() {
+        @Override
+        public CheckedStates createFromParcel(Parcel in) {
+            return new CheckedStates(in);
+        }
+
+        @Override
+        public CheckedStates[] newArray(int size) {
+            return new CheckedStates[size];
+        }
+    };
+}
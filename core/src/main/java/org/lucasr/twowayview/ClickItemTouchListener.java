@@ -5,6 +5,7 @@ import android.os.Build;
 import android.support.v4.view.GestureDetectorCompat;
 import android.support.v4.view.MotionEventCompat;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.RecyclerView.LayoutManager;
 import android.support.v7.widget.RecyclerView.OnItemTouchListener;
 import android.view.GestureDetector.SimpleOnGestureListener;
 import android.view.MotionEvent;
@@ -28,6 +29,19 @@ abstract class ClickItemTouchListener implements OnItemTouchListener {
         }
     }
 
+    /**
+     * Finds the child under the given point through the layout manager
+     * when it can look it up without scanning all children.
+     */
+    static View findChildViewUnder(RecyclerView hostView, float x, float y) {
+        final LayoutManager layout = hostView.getLayoutManager();
+        if (layout instanceof TwoWayLayoutManager) {
+            return ((TwoWayLayoutManager) layout).findChildViewUnder(x, y);
+        }
+
+        return hostView.findChildViewUnder(x, y);
+    }
+
     private boolean hasAdapter(RecyclerView hostView) {
         return (hostView.getAdapter() != null);
     }
@@ -39,18 +53,32 @@ abstract class ClickItemTouchListener implements OnItemTouchListener {
         }
 
         mGestureDetector.onTouchEvent(event);
-        return false;
+        return interceptTouchEvent(recyclerView, event);
     }
 
     @Override
     public void onTouchEvent(RecyclerView recyclerView, MotionEvent event) {
         // We can silently track tap and and long presses by silently
         // intercepting touch events in the host RecyclerView.
+        handleTouchEvent(recyclerView, event);
     }
 
     abstract boolean performItemClick(RecyclerView parent, View view, int position, long id);
     abstract boolean performItemLongClick(RecyclerView parent, View view, int position, long id);
 
+    /**
+     * Allows subclasses to take over the rest of the gesture e.g. after a
+     * long press. Once it returns <code>true</code>, the following events
+     * are sent to {@link #handleTouchEvent(RecyclerView, MotionEvent)}.
+     */
+    boolean interceptTouchEvent(RecyclerView recyclerView, MotionEvent event) {
+        return false;
+    }
+
+    void handleTouchEvent(RecyclerView recyclerView, MotionEvent event) {
+        // Do nothing by default.
+    }
+
     private class ItemClickGestureDetector extends GestureDetectorCompat {
         private final ItemClickGestureListener mGestureListener;
 
@@ -95,7 +123,7 @@ abstract class ClickItemTouchListener implements OnItemTouchListener {
             final int x = (int) event.getX();
             final int y = (int) event.getY();
 
-            mTargetChild = mHostView.findChildViewUnder(x, y);
+            mTargetChild = findChildViewUnder(mHostView, x, y);
             return (mTargetChild != null);
         }
 
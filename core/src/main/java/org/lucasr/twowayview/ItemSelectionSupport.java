@@ -1,56 +1,268 @@
 package org.lucasr.twowayview;
 
 import android.annotation.TargetApi;
+import android.content.Context;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Parcel;
-import android.os.Parcelable;
-import android.support.v4.util.LongSparseArray;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.view.MotionEventCompat;
+import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.RecyclerView.Adapter;
+import android.support.v7.widget.RecyclerView.LayoutManager;
 import android.util.SparseBooleanArray;
+import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewParent;
 import android.widget.Checkable;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
 import static android.os.Build.VERSION_CODES.HONEYCOMB;
 
 public class ItemSelectionSupport {
     public static final int INVALID_POSITION = -1;
 
+    /**
+     * Memory usage categories, see {@link #getMemoryUsage()}.
+     */
+    public static final String MEMORY_CHECKED_STATES = "checkedStates";
+    public static final String MEMORY_CHECKED_ID_STATES = "checkedIdStates";
+
     public static enum ChoiceMode {
         NONE,
         SINGLE,
         MULTIPLE
     }
 
+    /**
+     * Adapters with stable IDs can implement this interface to map IDs back
+     * to positions, e.g. from their own index. It's used to remap checked
+     * items in {@link #onAdapterDataChanged()} without scanning the adapter.
+     */
+    public interface ItemIdLookup {
+        /**
+         * Returns the current position of the item with the given ID or
+         * {@link #INVALID_POSITION} if it's no longer in the adapter.
+         */
+        int getPositionForItemId(long id);
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when the checked
+     * state of items changes. Changes are coalesced and dispatched at most
+     * once per frame.
+     */
+    public interface OnSelectionChangedListener {
+        /**
+         * Callback method to be invoked when the checked state of
+         * items has changed.
+         *
+         * @param selection The ItemSelectionSupport where the change happened
+         * @param delta The positions checked and unchecked since the last call
+         */
+        void onSelectionChanged(ItemSelectionSupport selection, SelectionDelta delta);
+    }
+
+    /**
+     * Ranges of positions that were checked and unchecked between two
+     * {@link OnSelectionChangedListener} calls. Range ends are exclusive.
+     */
+    public static class SelectionDelta {
+        private final CheckedStates mAdded = new CheckedStates();
+        private final CheckedStates mRemoved = new CheckedStates();
+
+        private SelectionDelta() {
+        }
+
+        /**
+         * Compares the given states only within the ranges of positions
+         * that changed in between.
+         */
+        static SelectionDelta compute(CheckedStates oldStates, CheckedStates newStates,
+                                      CheckedStates changedPositions) {
+            final SelectionDelta delta = new SelectionDelta();
+            for (int i = 0; i < changedPositions.getRangeCount(); i++) {
+                final int start = changedPositions.getRangeStart(i);
+                final int end = changedPositions.getRangeEnd(i);
+
+                delta.mAdded.copyRange(newStates, start, end);
+                delta.mAdded.setRanges(oldStates, start, end, false);
+
+                delta.mRemoved.copyRange(oldStates, start, end);
+                delta.mRemoved.setRanges(newStates, start, end, false);
+            }
+
+            return delta;
+        }
+
+        public boolean isEmpty() {
+            return (mAdded.getRangeCount() == 0 && mRemoved.getRangeCount() == 0);
+        }
+
+        public int getAddedCount() {
+            return mAdded.getCheckedCount();
+        }
+
+        public int getAddedRangeCount() {
+            return mAdded.getRangeCount();
+        }
+
+        public int getAddedRangeStart(int index) {
+            return mAdded.getRangeStart(index);
+        }
+
+        public int getAddedRangeEnd(int index) {
+            return mAdded.getRangeEnd(index);
+        }
+
+        public int getRemovedCount() {
+            return mRemoved.getCheckedCount();
+        }
+
+        public int getRemovedRangeCount() {
+            return mRemoved.getRangeCount();
+        }
+
+        public int getRemovedRangeStart(int index) {
+            return mRemoved.getRangeStart(index);
+        }
+
+        public int getRemovedRangeEnd(int index) {
+            return mRemoved.getRangeEnd(index);
+        }
+    }
+
     private final RecyclerView mRecyclerView;
     private final TouchListener mTouchListener;
+    private final DragSelector mDragSelector;
 
     private ChoiceMode mChoiceMode = ChoiceMode.NONE;
     private CheckedStates mCheckedStates;
     private CheckedIdStates mCheckedIdStates;
-    private int mCheckedCount;
+    private boolean mDragSelectionEnabled;
+
+    // Ranges of positions changed in bulk, e.g. by selectAll(). The IDs of
+    // the items checked in them aren't kept in mCheckedIdStates, they're
+    // read from the adapter when asked for and the items keep their
+    // positions across data changes.
+    private CheckedStates mPositionalIdRanges;
+
+    private int mBatchDepth;
+    private int mBatchRefreshStart = Integer.MAX_VALUE;
+    private int mBatchRefreshEnd = Integer.MIN_VALUE;
+
+    private OnSelectionChangedListener mOnSelectionChangedListener;
+    private final CheckedStates mChangedPositions = new CheckedStates();
+    private CheckedStates mDispatchedStates;
+    private boolean mSelectionChangeScheduled;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final AtomicReference<SelectionModel> mPendingSelectionModel =
+            new AtomicReference<SelectionModel>();
+
+    private final Runnable mApplyPendingSelectionModel = new Runnable() {
+        @Override
+        public void run() {
+            final SelectionModel model = mPendingSelectionModel.getAndSet(null);
+            if (model != null) {
+                applySelectionModel(model);
+            }
+        }
+    };
+
+    private final CheckedIdRemapper.ItemIds mAdapterItemIds = new CheckedIdRemapper.ItemIds() {
+        @Override
+        public int getItemCount() {
+            return mRecyclerView.getAdapter().getItemCount();
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return mRecyclerView.getAdapter().getItemId(position);
+        }
+    };
+
+    private final Runnable mDispatchSelectionChange = new Runnable() {
+        @Override
+        public void run() {
+            mSelectionChangeScheduled = false;
+            dispatchSelectionChanged();
+        }
+    };
 
     private static final String STATE_KEY_CHOICE_MODE = "choiceMode";
     private static final String STATE_KEY_CHECKED_STATES = "checkedStates";
     private static final String STATE_KEY_CHECKED_ID_STATES = "checkedIdStates";
-    private static final String STATE_KEY_CHECKED_COUNT = "checkedCount";
+    private static final String STATE_KEY_POSITIONAL_ID_RANGES = "positionalIdRanges";
+
+    // Changed ranges longer than this don't have their checked IDs looked
+    // up right away, see mPositionalIdRanges.
+    private static final int MAX_CHECKED_ID_UPDATE_COUNT = 64;
 
-    private static final int CHECK_POSITION_SEARCH_DISTANCE = 20;
+    // Size of the edges that auto-scroll while drag selecting and the
+    // scroll speed right at the view's bounds.
+    private static final int AUTO_SCROLL_EDGE_SIZE_DP = 48;
+    private static final int AUTO_SCROLL_MAX_SPEED_DP = 16;
 
     private ItemSelectionSupport(RecyclerView recyclerView) {
         mRecyclerView = recyclerView;
 
         mTouchListener = new TouchListener(recyclerView);
         recyclerView.addOnItemTouchListener(mTouchListener);
+
+        mDragSelector = new DragSelector(recyclerView.getContext());
     }
 
-    private void updateOnScreenCheckedViews() {
-        final int count = mRecyclerView.getChildCount();
+    /**
+     * Refreshes the checked state of the children showing positions
+     * in [start, end).
+     */
+    private void updateOnScreenCheckedViews(int start, int end) {
+        if (mBatchDepth > 0) {
+            mBatchRefreshStart = Math.min(mBatchRefreshStart, start);
+            mBatchRefreshEnd = Math.max(mBatchRefreshEnd, end);
+            return;
+        }
+
+        final LayoutManager layout = mRecyclerView.getLayoutManager();
+        if (layout == null) {
+            return;
+        }
+
+        // Children of our own layouts are in adapter order, so only the
+        // range's visible positions need to be looked at.
+        if (layout instanceof TwoWayLayoutManager) {
+            final TwoWayLayoutManager twoWayLayout = (TwoWayLayoutManager) layout;
+            if (twoWayLayout.getChildCount() == 0) {
+                return;
+            }
+
+            start = Math.max(start, twoWayLayout.getFirstVisiblePosition());
+            end = Math.min(end, twoWayLayout.getLastVisiblePosition() + 1);
+        }
+
+        final int count = layout.getChildCount();
+        if (end - start <= count) {
+            for (int position = start; position < end; position++) {
+                final View child = layout.findViewByPosition(position);
+                if (child != null) {
+                    setViewChecked(child, mCheckedStates.get(position));
+                }
+            }
+
+            return;
+        }
+
         for (int i = 0; i < count; i++) {
             final View child = mRecyclerView.getChildAt(i);
             final int position = mRecyclerView.getChildPosition(child);
-            setViewChecked(child, mCheckedStates.get(position));
+            if (position >= start && position < end) {
+                setViewChecked(child, mCheckedStates.get(position));
+            }
         }
     }
 
@@ -68,7 +280,7 @@ public class ItemSelectionSupport {
      * @see #getCheckedItemIds()
      */
     public int getCheckedItemCount() {
-        return mCheckedCount;
+        return (mCheckedStates != null ? mCheckedStates.getCheckedCount() : 0);
     }
 
     /**
@@ -100,8 +312,9 @@ public class ItemSelectionSupport {
      * @see #setChoiceMode(ChoiceMode)
      */
     public int getCheckedItemPosition() {
-        if (mChoiceMode == ChoiceMode.SINGLE && mCheckedStates != null && mCheckedStates.size() == 1) {
-            return mCheckedStates.keyAt(0);
+        if (mChoiceMode == ChoiceMode.SINGLE && mCheckedStates != null &&
+                mCheckedStates.getCheckedCount() == 1) {
+            return mCheckedStates.getFirstChecked();
         }
 
         return INVALID_POSITION;
@@ -111,6 +324,12 @@ public class ItemSelectionSupport {
      * Returns the set of checked items in the list. The result is only valid if
      * the choice mode has not been set to {@link ChoiceMode#NONE}.
      *
+     * <p>Checked states are stored as ranges of positions, the returned array
+     * is a new copy holding every checked position. Prefer
+     * {@link #isItemChecked(int)} and {@link #getCheckedItemCount()}, or
+     * the ranges of {@link #getSelectionModel()}, when many items might be
+     * checked.</p>
+     *
      * @return  A SparseBooleanArray which will return true for each call to
      *          get(int position) where position is a position in the list,
      *          or <code>null</code> if the choice mode is set to
@@ -118,7 +337,9 @@ public class ItemSelectionSupport {
      */
     public SparseBooleanArray getCheckedItemPositions() {
         if (mChoiceMode != ChoiceMode.NONE) {
-            return mCheckedStates;
+            final SparseBooleanArray positions = new SparseBooleanArray();
+            mCheckedStates.toSparseBooleanArray(positions);
+            return positions;
         }
 
         return null;
@@ -129,6 +350,9 @@ public class ItemSelectionSupport {
      * choice mode has not been set to {@link ChoiceMode#NONE} and the adapter
      * has stable IDs.
      *
+     * <p>The IDs of items checked in bulk, e.g. with {@link #selectAll()},
+     * are only read from the adapter here.</p>
+     *
      * @return A new array which contains the id of each checked item in the
      *         list.
      *
@@ -140,14 +364,32 @@ public class ItemSelectionSupport {
             return new long[0];
         }
 
-        final int count = mCheckedIdStates.size();
-        final long[] ids = new long[count];
+        final Adapter adapter = mRecyclerView.getAdapter();
+        final CheckedStates positionalStates = getPositionalCheckedStates();
 
-        for (int i = 0; i < count; i++) {
-            ids[i] = mCheckedIdStates.keyAt(i);
+        final long[] ids = new long[mCheckedIdStates.size() + positionalStates.getCheckedCount()];
+        int count = 0;
+
+        final int capacity = mCheckedIdStates.getCapacity();
+        for (int i = 0; i < capacity; i++) {
+            if (mCheckedIdStates.isUsedAt(i)) {
+                ids[count++] = mCheckedIdStates.keyAt(i);
+            }
+        }
+
+        final int itemCount = adapter.getItemCount();
+        for (int i = 0; i < positionalStates.getRangeCount(); i++) {
+            final int end = Math.min(positionalStates.getRangeEnd(i), itemCount);
+            for (int position = positionalStates.getRangeStart(i); position < end; position++) {
+                // Items checked one by one might have moved into the range.
+                final long id = adapter.getItemId(position);
+                if (!mCheckedIdStates.containsKey(id)) {
+                    ids[count++] = id;
+                }
+            }
         }
 
-        return ids;
+        return (count == ids.length ? ids : Arrays.copyOf(ids, count));
     }
 
     /**
@@ -166,24 +408,8 @@ public class ItemSelectionSupport {
         final Adapter adapter = mRecyclerView.getAdapter();
 
         if (mChoiceMode == ChoiceMode.MULTIPLE) {
-            boolean oldValue = mCheckedStates.get(position);
-            mCheckedStates.put(position, checked);
-
-            if (mCheckedIdStates != null && adapter.hasStableIds()) {
-                if (checked) {
-                    mCheckedIdStates.put(adapter.getItemId(position), position);
-                } else {
-                    mCheckedIdStates.delete(adapter.getItemId(position));
-                }
-            }
-
-            if (oldValue != checked) {
-                if (checked) {
-                    mCheckedCount++;
-                } else {
-                    mCheckedCount--;
-                }
-            }
+            mCheckedStates.set(position, checked);
+            onCheckedRangeChanged(position, position + 1);
         } else {
             boolean updateIds = mCheckedIdStates != null && adapter.hasStableIds();
 
@@ -193,26 +419,359 @@ public class ItemSelectionSupport {
                 mCheckedStates.clear();
 
                 if (updateIds) {
-                    mCheckedIdStates.clear();
+                    clearCheckedIds();
                 }
             }
 
-            // This may end up selecting the checked we just cleared but this way
-            // we ensure length of mCheckStates is 1, a fact getCheckedItemPosition relies on
             if (checked) {
-                mCheckedStates.put(position, true);
+                mCheckedStates.set(position, true);
 
                 if (updateIds) {
                     mCheckedIdStates.put(adapter.getItemId(position), position);
                 }
+            }
+
+            onCheckedStatesChanged();
+        }
+    }
+
+    /**
+     * Sets the checked state of a range of positions. This is only valid if
+     * the choice mode has been set to {@link ChoiceMode#MULTIPLE}. The range
+     * is stored as a whole, its cost doesn't depend on the number of items.
+     * With stable IDs, the IDs of large ranges are only read from the
+     * adapter when needed, see {@link #getCheckedItemIds()}.
+     *
+     * @param positionStart The first item whose checked state is to be set
+     * @param itemCount The number of items whose checked state is to be set
+     * @param checked The new checked state for the items
+     */
+    public void setItemCheckedRange(int positionStart, int itemCount, boolean checked) {
+        if (mChoiceMode != ChoiceMode.MULTIPLE) {
+            return;
+        }
+
+        if (positionStart < 0 || itemCount < 0) {
+            throw new IllegalArgumentException("Invalid range: " + positionStart +
+                    " (" + itemCount + " items)");
+        }
+
+        mCheckedStates.setRange(positionStart, positionStart + itemCount, checked);
+        onCheckedRangeChanged(positionStart, positionStart + itemCount);
+    }
+
+    /**
+     * Checks all items in the adapter. This is only valid if the choice mode
+     * has been set to {@link ChoiceMode#MULTIPLE}.
+     */
+    public void selectAll() {
+        final Adapter adapter = mRecyclerView.getAdapter();
+        if (adapter != null) {
+            setItemCheckedRange(0, adapter.getItemCount(), true);
+        }
+    }
+
+    /**
+     * Flips the checked state of all items in the adapter. This is only valid
+     * if the choice mode has been set to {@link ChoiceMode#MULTIPLE}.
+     */
+    public void invertSelection() {
+        final Adapter adapter = mRecyclerView.getAdapter();
+        if (mChoiceMode != ChoiceMode.MULTIPLE || adapter == null) {
+            return;
+        }
+
+        final int itemCount = adapter.getItemCount();
+        mCheckedStates.invert(0, itemCount);
+        onCheckedRangeChanged(0, itemCount);
+    }
+
+    private void onCheckedRangeChanged(int start, int end) {
+        updateCheckedIds(start, end);
+        updateOnScreenCheckedViews(start, end);
+        scheduleSelectionChanged(start, end);
+    }
+
+    /**
+     * Refreshes the children showing positions whose checked state is
+     * set in the given states.
+     */
+    private void updateOnScreenCheckedViews(CheckedStates changedPositions) {
+        final int rangeCount = changedPositions.getRangeCount();
+        if (rangeCount == 0) {
+            return;
+        }
+
+        if (mBatchDepth > 0) {
+            updateOnScreenCheckedViews(changedPositions.getRangeStart(0),
+                    changedPositions.getRangeEnd(rangeCount - 1));
+            return;
+        }
+
+        final LayoutManager layout = mRecyclerView.getLayoutManager();
+        if (layout instanceof TwoWayLayoutManager) {
+            final TwoWayLayoutManager twoWayLayout = (TwoWayLayoutManager) layout;
+            if (twoWayLayout.getChildCount() == 0) {
+                return;
+            }
+
+            final int firstPosition = twoWayLayout.getFirstVisiblePosition();
+            final int lastPosition = twoWayLayout.getLastVisiblePosition();
+
+            for (int i = 0; i < rangeCount; i++) {
+                final int start = changedPositions.getRangeStart(i);
+                final int end = changedPositions.getRangeEnd(i);
+                if (start > lastPosition) {
+                    break;
+                }
 
-                mCheckedCount = 1;
-            } else if (mCheckedStates.size() == 0 || !mCheckedStates.valueAt(0)) {
-                mCheckedCount = 0;
+                if (end > firstPosition) {
+                    updateOnScreenCheckedViews(start, end);
+                }
             }
+
+            return;
         }
 
-        updateOnScreenCheckedViews();
+        final int count = mRecyclerView.getChildCount();
+        for (int i = 0; i < count; i++) {
+            final View child = mRecyclerView.getChildAt(i);
+            final int position = mRecyclerView.getChildPosition(child);
+            if (changedPositions.get(position)) {
+                setViewChecked(child, mCheckedStates.get(position));
+            }
+        }
+    }
+
+    private void onCheckedStatesChanged() {
+        updateOnScreenCheckedViews(0, Integer.MAX_VALUE);
+        scheduleSelectionChanged(0, Integer.MAX_VALUE);
+    }
+
+    private void scheduleSelectionChanged(int start, int end) {
+        if (mOnSelectionChangedListener == null) {
+            return;
+        }
+
+        mChangedPositions.setRange(start, end, true);
+
+        if (!mSelectionChangeScheduled) {
+            mSelectionChangeScheduled = true;
+            ViewCompat.postOnAnimation(mRecyclerView, mDispatchSelectionChange);
+        }
+    }
+
+    private void dispatchSelectionChanged() {
+        if (mOnSelectionChangedListener == null || mChangedPositions.getRangeCount() == 0) {
+            return;
+        }
+
+        final CheckedStates states =
+                (mCheckedStates != null ? mCheckedStates : new CheckedStates());
+
+        final SelectionDelta delta =
+                SelectionDelta.compute(mDispatchedStates, states, mChangedPositions);
+
+        mChangedPositions.clear();
+        mDispatchedStates = new CheckedStates(states);
+
+        if (!delta.isEmpty()) {
+            mOnSelectionChangedListener.onSelectionChanged(this, delta);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the checked positions, e.g. to derive a new
+     * selection from it on a background thread with
+     * {@link SelectionModel#buildUpon()}. Should be called from the main
+     * thread.
+     */
+    public SelectionModel getSelectionModel() {
+        final CheckedStates states =
+                (mCheckedStates != null ? new CheckedStates(mCheckedStates) : new CheckedStates());
+        return new SelectionModel(states);
+    }
+
+    /**
+     * Replaces the checked positions with the ones in the given model. It
+     * can be called from any thread: the model is published atomically and
+     * applied on the main thread, right away if called from it. Only the
+     * latest model is applied if several are published before the main
+     * thread gets to them. Only visible children whose checked state
+     * changed are refreshed. Ignored if the choice mode is
+     * {@link ChoiceMode#NONE}.
+     *
+     * <p>In {@link ChoiceMode#SINGLE}, models with more than one checked
+     * item are rejected when set from the main thread. Models published
+     * from other threads are checked against the choice mode when they're
+     * applied, only their first checked item is kept in single choice
+     * mode.</p>
+     */
+    public void setSelectionModel(SelectionModel model) {
+        if (model == null) {
+            throw new IllegalArgumentException("Selection model should not be null");
+        }
+
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            // The view might not be attached, which would drop the
+            // message on older platforms, so go through our own handler.
+            if (mPendingSelectionModel.getAndSet(model) == null) {
+                mHandler.post(mApplyPendingSelectionModel);
+            }
+
+            return;
+        }
+
+        if (mChoiceMode == ChoiceMode.SINGLE && model.getCheckedItemCount() > 1) {
+            throw new IllegalArgumentException("Selection model has " +
+                    model.getCheckedItemCount() + " checked items in single choice mode");
+        }
+
+        mPendingSelectionModel.set(null);
+        applySelectionModel(model);
+    }
+
+    private void applySelectionModel(SelectionModel model) {
+        if (mChoiceMode == ChoiceMode.NONE) {
+            return;
+        }
+
+        CheckedStates newStates = model.getCheckedStates();
+        if (mChoiceMode == ChoiceMode.SINGLE && newStates.getCheckedCount() > 1) {
+            final int position = newStates.getFirstChecked();
+            newStates = new CheckedStates();
+            newStates.set(position, true);
+        }
+
+        mDragSelector.stop();
+
+        // Positions whose checked state differs between both states.
+        final CheckedStates changedPositions = new CheckedStates(mCheckedStates);
+        for (int i = 0; i < newStates.getRangeCount(); i++) {
+            changedPositions.invert(newStates.getRangeStart(i), newStates.getRangeEnd(i));
+        }
+
+        // Models are immutable, keep our own copy.
+        mCheckedStates = new CheckedStates(newStates);
+
+        for (int i = 0; i < changedPositions.getRangeCount(); i++) {
+            updateCheckedIds(changedPositions.getRangeStart(i), changedPositions.getRangeEnd(i));
+        }
+
+        updateOnScreenCheckedViews(changedPositions);
+
+        for (int i = 0; i < changedPositions.getRangeCount(); i++) {
+            scheduleSelectionChanged(changedPositions.getRangeStart(i),
+                    changedPositions.getRangeEnd(i));
+        }
+    }
+
+    /**
+     * Register a callback to be invoked when the checked state of
+     * items changes.
+     *
+     * @param listener The callback that will be invoked.
+     */
+    public void setOnSelectionChangedListener(OnSelectionChangedListener listener) {
+        mOnSelectionChangedListener = listener;
+
+        // Deltas are computed against the states when the listener was set.
+        mChangedPositions.clear();
+        mDispatchedStates = (mCheckedStates != null ?
+                new CheckedStates(mCheckedStates) : new CheckedStates());
+    }
+
+    /**
+     * Starts a batch of changes to the checked states. Checked views are
+     * only refreshed once the outermost batch ends, see {@link #endBatch()}.
+     * Batches can be nested.
+     */
+    public void beginBatch() {
+        mBatchDepth++;
+    }
+
+    /**
+     * Ends a batch of changes started with {@link #beginBatch()}, refreshing
+     * the checked views changed within it if it's the outermost one.
+     */
+    public void endBatch() {
+        if (mBatchDepth == 0) {
+            throw new IllegalStateException("endBatch() called without beginBatch()");
+        }
+
+        mBatchDepth--;
+
+        if (mBatchDepth == 0 && mBatchRefreshStart < mBatchRefreshEnd) {
+            final int start = mBatchRefreshStart;
+            final int end = mBatchRefreshEnd;
+
+            mBatchRefreshStart = Integer.MAX_VALUE;
+            mBatchRefreshEnd = Integer.MIN_VALUE;
+
+            updateOnScreenCheckedViews(start, end);
+        }
+    }
+
+    private void updateCheckedIds(int start, int end) {
+        final Adapter adapter = mRecyclerView.getAdapter();
+        if (mCheckedIdStates == null || adapter == null || !adapter.hasStableIds()) {
+            return;
+        }
+
+        end = Math.min(end, adapter.getItemCount());
+        if (start >= end) {
+            return;
+        }
+
+        if (end - start > MAX_CHECKED_ID_UPDATE_COUNT) {
+            removeCheckedIds(start, end);
+            mPositionalIdRanges.setRange(start, end, true);
+            return;
+        }
+
+        mPositionalIdRanges.setRange(start, end, false);
+        for (int position = start; position < end; position++) {
+            if (mCheckedStates.get(position)) {
+                mCheckedIdStates.put(adapter.getItemId(position), position);
+            } else {
+                mCheckedIdStates.delete(adapter.getItemId(position));
+            }
+        }
+    }
+
+    /**
+     * Removes the IDs of the items checked in [start, end).
+     */
+    private void removeCheckedIds(int start, int end) {
+        final int capacity = mCheckedIdStates.getCapacity();
+        for (int slot = 0; slot < capacity; slot++) {
+            if (!mCheckedIdStates.isUsedAt(slot)) {
+                continue;
+            }
+
+            final int position = mCheckedIdStates.valueAt(slot);
+            if (position >= start && position < end) {
+                mCheckedIdStates.removeAt(slot);
+            }
+        }
+    }
+
+    private void clearCheckedIds() {
+        mCheckedIdStates.clear();
+        mPositionalIdRanges.clear();
+    }
+
+    /**
+     * Returns the checked positions within mPositionalIdRanges.
+     */
+    private CheckedStates getPositionalCheckedStates() {
+        final CheckedStates states = new CheckedStates();
+        for (int i = 0; i < mPositionalIdRanges.getRangeCount(); i++) {
+            states.setRanges(mCheckedStates, mPositionalIdRanges.getRangeStart(i),
+                    mPositionalIdRanges.getRangeEnd(i), true);
+        }
+
+        return states;
     }
 
     @TargetApi(HONEYCOMB)
@@ -233,11 +792,28 @@ public class ItemSelectionSupport {
         }
 
         if (mCheckedIdStates != null) {
-            mCheckedIdStates.clear();
+            clearCheckedIds();
         }
 
-        mCheckedCount = 0;
-        updateOnScreenCheckedViews();
+        onCheckedStatesChanged();
+    }
+
+    /**
+     * Enables drag selection: in {@link ChoiceMode#MULTIPLE}, a long press
+     * on an item followed by a drag checks (or unchecks, if the pressed
+     * item was already checked) all items between the pressed one and the
+     * one under the finger. The view auto-scrolls while dragging close to
+     * its edges. Disabled by default.
+     */
+    public void setDragSelectionEnabled(boolean enabled) {
+        mDragSelectionEnabled = enabled;
+        if (!enabled) {
+            mDragSelector.stop();
+        }
+    }
+
+    public boolean isDragSelectionEnabled() {
+        return mDragSelectionEnabled;
     }
 
     /**
@@ -264,6 +840,7 @@ public class ItemSelectionSupport {
         }
 
         mChoiceMode = choiceMode;
+        mDragSelector.stop();
 
         if (mChoiceMode != ChoiceMode.NONE) {
             if (mCheckedStates == null) {
@@ -273,51 +850,92 @@ public class ItemSelectionSupport {
             final Adapter adapter = mRecyclerView.getAdapter();
             if (mCheckedIdStates == null && adapter != null && adapter.hasStableIds()) {
                 mCheckedIdStates = new CheckedIdStates();
+                mPositionalIdRanges = new CheckedStates();
             }
         }
     }
 
     public void onAdapterDataChanged() {
         final Adapter adapter = mRecyclerView.getAdapter();
-        if (mChoiceMode == ChoiceMode.NONE || adapter == null || !adapter.hasStableIds()) {
+        if (mChoiceMode == ChoiceMode.NONE || adapter == null || !adapter.hasStableIds() ||
+                mCheckedIdStates == null) {
             return;
         }
 
-        final int itemCount = adapter.getItemCount();
+        final ItemIdLookup idLookup =
+                (adapter instanceof ItemIdLookup ? (ItemIdLookup) adapter : null);
 
-        // Clear out the positional check states, we'll rebuild it below from IDs.
-        mCheckedStates.clear();
-
-        for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
-            final long currentId = mCheckedIdStates.keyAt(checkedIndex);
-            final int currentPosition = mCheckedIdStates.valueAt(checkedIndex);
-
-            final long newPositionId = adapter.getItemId(currentPosition);
-            if (currentId != newPositionId) {
-                // Look around to see if the ID is nearby. If not, uncheck it.
-                final int start = Math.max(0, currentPosition - CHECK_POSITION_SEARCH_DISTANCE);
-                final int end = Math.min(currentPosition + CHECK_POSITION_SEARCH_DISTANCE, itemCount);
-
-                boolean found = false;
-                for (int searchPos = start; searchPos < end; searchPos++) {
-                    final long searchId = adapter.getItemId(searchPos);
-                    if (currentId == searchId) {
-                        found = true;
-                        mCheckedStates.put(searchPos, true);
-                        mCheckedIdStates.setValueAt(checkedIndex, searchPos);
-                        break;
-                    }
-                }
+        // Rebuild the positional check states from the remapped IDs,
+        // unchecking the ones that are gone. Positions aren't in order,
+        // so they're sorted and checked all at once.
+        final int[] checkedPositions = new int[mCheckedIdStates.size()];
+        final int checkedPositionCount =
+                CheckedIdRemapper.remap(mCheckedIdStates, mAdapterItemIds, idLookup,
+                        checkedPositions);
 
-                if (!found) {
-                    mCheckedIdStates.delete(currentId);
-                    mCheckedCount--;
-                    checkedIndex--;
-                }
-            } else {
-                mCheckedStates.put(currentPosition, true);
+        final int itemCount = adapter.getItemCount();
+
+        // Items checked in bulk keep their positions, as long as they're
+        // still in the adapter.
+        mPositionalIdRanges.setRange(itemCount, Integer.MAX_VALUE, false);
+        mCheckedStates = getPositionalCheckedStates();
+        mCheckedStates.setPositions(checkedPositions, checkedPositionCount);
+
+        // Remapped items are tracked by ID, even if they moved into a
+        // range of items checked in bulk.
+        if (mPositionalIdRanges.getRangeCount() > 0) {
+            for (int i = 0; i < checkedPositionCount; i++) {
+                mPositionalIdRanges.set(checkedPositions[i], false);
             }
         }
+
+        scheduleSelectionChanged(0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Items checked in bulk are tracked by position until their IDs are
+     * needed, so they have to follow the adapter changes as they happen.
+     * Items tracked by ID are remapped in {@link #onAdapterDataChanged()}.
+     */
+    void onItemsAdded(int positionStart, int itemCount) {
+        if (mCheckedIdStates != null && mPositionalIdRanges.getRangeCount() > 0) {
+            mPositionalIdRanges.offsetForAddition(positionStart, itemCount);
+            mCheckedStates.offsetForAddition(positionStart, itemCount);
+        }
+    }
+
+    void onItemsRemoved(int positionStart, int itemCount) {
+        if (mCheckedIdStates != null && mPositionalIdRanges.getRangeCount() > 0) {
+            mPositionalIdRanges.offsetForRemoval(positionStart, itemCount);
+            mCheckedStates.offsetForRemoval(positionStart, itemCount);
+        }
+    }
+
+    void onItemsMoved(int from, int to, int itemCount) {
+        if (mCheckedIdStates != null && mPositionalIdRanges.getRangeCount() > 0) {
+            mPositionalIdRanges.offsetForMove(from, to, itemCount);
+            mCheckedStates.offsetForMove(from, to, itemCount);
+        }
+    }
+
+    /**
+     * Returns an estimate of the memory retained by the checked states,
+     * broken down in {@link #MEMORY_CHECKED_STATES} and
+     * {@link #MEMORY_CHECKED_ID_STATES}.
+     */
+    public MemoryUsage getMemoryUsage() {
+        final MemoryUsage usage = new MemoryUsage();
+
+        if (mCheckedStates != null) {
+            mCheckedStates.collectMemoryUsage(usage, MEMORY_CHECKED_STATES);
+        }
+
+        if (mCheckedIdStates != null) {
+            mCheckedIdStates.collectMemoryUsage(usage, MEMORY_CHECKED_ID_STATES);
+            mPositionalIdRanges.collectMemoryUsage(usage, MEMORY_CHECKED_ID_STATES);
+        }
+
+        return usage;
     }
 
     public Bundle onSaveInstanceState() {
@@ -326,7 +944,7 @@ public class ItemSelectionSupport {
         state.putInt(STATE_KEY_CHOICE_MODE, mChoiceMode.ordinal());
         state.putParcelable(STATE_KEY_CHECKED_STATES, mCheckedStates);
         state.putParcelable(STATE_KEY_CHECKED_ID_STATES, mCheckedIdStates);
-        state.putInt(STATE_KEY_CHECKED_COUNT, mCheckedCount);
+        state.putParcelable(STATE_KEY_POSITIONAL_ID_RANGES, mPositionalIdRanges);
 
         return state;
     }
@@ -335,9 +953,14 @@ public class ItemSelectionSupport {
         mChoiceMode = ChoiceMode.values()[state.getInt(STATE_KEY_CHOICE_MODE)];
         mCheckedStates = state.getParcelable(STATE_KEY_CHECKED_STATES);
         mCheckedIdStates = state.getParcelable(STATE_KEY_CHECKED_ID_STATES);
-        mCheckedCount = state.getInt(STATE_KEY_CHECKED_COUNT);
+        mPositionalIdRanges = state.getParcelable(STATE_KEY_POSITIONAL_ID_RANGES);
+        if (mCheckedIdStates != null && mPositionalIdRanges == null) {
+            mPositionalIdRanges = new CheckedStates();
+        }
 
         // TODO confirm ids here
+
+        scheduleSelectionChanged(0, Integer.MAX_VALUE);
     }
 
     public static ItemSelectionSupport addTo(RecyclerView recyclerView) {
@@ -359,8 +982,15 @@ public class ItemSelectionSupport {
             return;
         }
 
+        itemSelection.mDragSelector.stop();
         itemSelection.clearChoices();
 
+        recyclerView.removeCallbacks(itemSelection.mDispatchSelectionChange);
+        itemSelection.mSelectionChangeScheduled = false;
+
+        recyclerView.removeCallbacks(itemSelection.mApplyPendingSelectionModel);
+        itemSelection.mPendingSelectionModel.set(null);
+
         recyclerView.removeOnItemTouchListener(itemSelection.mTouchListener);
         recyclerView.setTag(R.id.twowayview_item_selection_support, null);
     }
@@ -373,159 +1003,259 @@ public class ItemSelectionSupport {
         return (ItemSelectionSupport) recyclerView.getTag(R.id.twowayview_item_selection_support);
     }
 
-    private static class CheckedStates extends SparseBooleanArray implements Parcelable {
-        private static final int FALSE = 0;
-        private static final int TRUE = 1;
-
-        public CheckedStates() {
-            super();
+    private class TouchListener extends ClickItemTouchListener {
+        TouchListener(RecyclerView recyclerView) {
+            super(recyclerView);
         }
 
-        private CheckedStates(Parcel in) {
-            final int size = in.readInt();
-            if (size > 0) {
-                for (int i = 0; i < size; i++) {
-                    final int key = in.readInt();
-                    final boolean value = (in.readInt() == TRUE);
-                    put(key, value);
+        @Override
+        boolean performItemClick(RecyclerView parent, View view, int position, long id) {
+            final Adapter adapter = mRecyclerView.getAdapter();
+            boolean checkedStateChanged = false;
+
+            if (mChoiceMode == ChoiceMode.MULTIPLE) {
+                mCheckedStates.set(position, !mCheckedStates.get(position));
+                onCheckedRangeChanged(position, position + 1);
+            } else if (mChoiceMode == ChoiceMode.SINGLE) {
+                boolean checked = !mCheckedStates.get(position);
+                if (checked) {
+                    mCheckedStates.clear();
+                    mCheckedStates.set(position, true);
+
+                    if (mCheckedIdStates != null && adapter.hasStableIds()) {
+                        clearCheckedIds();
+                        mCheckedIdStates.put(adapter.getItemId(position), position);
+                    }
                 }
+
+                checkedStateChanged = true;
             }
-        }
 
-        @Override
-        public int describeContents() {
-            return 0;
+            if (checkedStateChanged) {
+                onCheckedStatesChanged();
+            }
+
+            return false;
         }
 
         @Override
-        public void writeToParcel(Parcel parcel, int flags) {
-            final int size = size();
-            parcel.writeInt(size);
-
-            for (int i = 0; i < size; i++) {
-                parcel.writeInt(keyAt(i));
-                parcel.writeInt(valueAt(i) ? TRUE : FALSE);
+        boolean performItemLongClick(RecyclerView parent, View view, int position, long id) {
+            if (mDragSelectionEnabled && mChoiceMode == ChoiceMode.MULTIPLE) {
+                mDragSelector.start(position);
             }
+
+            return true;
         }
 
-        public static final Parcelable.Creator<CheckedStates> CREATOR
-                = new Parcelable.Creator<CheckedStates>() {
-            @Override
-            public CheckedStates createFromParcel(Parcel in) {
-                return new CheckedStates(in);
+        @Override
+        boolean interceptTouchEvent(RecyclerView recyclerView, MotionEvent event) {
+            if (!mDragSelector.isActive()) {
+                return false;
             }
 
-            @Override
-            public CheckedStates[] newArray(int size) {
-                return new CheckedStates[size];
+            // The event taking over the gesture isn't sent to
+            // handleTouchEvent(), handle it here as well.
+            handleTouchEvent(recyclerView, event);
+            return mDragSelector.isActive();
+        }
+
+        @Override
+        void handleTouchEvent(RecyclerView recyclerView, MotionEvent event) {
+            switch (event.getAction() & MotionEventCompat.ACTION_MASK) {
+                case MotionEvent.ACTION_MOVE:
+                    mDragSelector.onMove(event.getX(), event.getY());
+                    break;
+
+                case MotionEvent.ACTION_DOWN:
+                case MotionEvent.ACTION_UP:
+                case MotionEvent.ACTION_CANCEL:
+                    mDragSelector.stop();
+                    break;
             }
-        };
+        }
     }
 
-    private static class CheckedIdStates extends LongSparseArray<Integer> implements Parcelable {
-        public CheckedIdStates() {
-            super();
+    /**
+     * Tracks a drag selection gesture. The range between the anchor (the
+     * long pressed item) and the item under the finger takes the anchor's
+     * new checked state, items leaving the range get back the state they
+     * had when the gesture started. Only the delta between consecutive
+     * ranges is applied, as range operations, on every move and frame.
+     */
+    private class DragSelector implements Runnable {
+        private final int mEdgeSize;
+        private final int mMaxScrollSpeed;
+
+        private boolean mActive;
+        private int mAnchorPosition;
+        private int mEndPosition;
+        private boolean mChecked;
+        private CheckedStates mInitialStates;
+
+        private float mLastX;
+        private float mLastY;
+        private int mScrollSpeed;
+        private boolean mScrollScheduled;
+
+        DragSelector(Context context) {
+            final float density = context.getResources().getDisplayMetrics().density;
+            mEdgeSize = (int) (AUTO_SCROLL_EDGE_SIZE_DP * density + 0.5f);
+            mMaxScrollSpeed = (int) (AUTO_SCROLL_MAX_SPEED_DP * density + 0.5f);
         }
 
-        private CheckedIdStates(Parcel in) {
-            final int size = in.readInt();
-            if (size > 0) {
-                for (int i = 0; i < size; i++) {
-                    final long key = in.readLong();
-                    final int value = in.readInt();
-                    put(key, value);
-                }
-            }
+        boolean isActive() {
+            return mActive;
         }
 
-        @Override
-        public int describeContents() {
-            return 0;
-        }
+        void start(int position) {
+            mActive = true;
+            mAnchorPosition = position;
+            mEndPosition = position;
+            mChecked = !mCheckedStates.get(position);
+            mInitialStates = new CheckedStates(mCheckedStates);
 
-        @Override
-        public void writeToParcel(Parcel parcel, int flags) {
-            final int size = size();
-            parcel.writeInt(size);
+            mCheckedStates.set(position, mChecked);
+            onCheckedRangeChanged(position, position + 1);
 
-            for (int i = 0; i < size; i++) {
-                parcel.writeLong(keyAt(i));
-                parcel.writeInt(valueAt(i));
+            final ViewParent parent = mRecyclerView.getParent();
+            if (parent != null) {
+                parent.requestDisallowInterceptTouchEvent(true);
             }
         }
 
-        public static final Creator<CheckedIdStates> CREATOR
-                = new Creator<CheckedIdStates>() {
-            @Override
-            public CheckedIdStates createFromParcel(Parcel in) {
-                return new CheckedIdStates(in);
+        void stop() {
+            if (!mActive) {
+                return;
             }
 
-            @Override
-            public CheckedIdStates[] newArray(int size) {
-                return new CheckedIdStates[size];
+            mActive = false;
+            mInitialStates = null;
+            mScrollSpeed = 0;
+
+            if (mScrollScheduled) {
+                mRecyclerView.removeCallbacks(this);
+                mScrollScheduled = false;
             }
-        };
-    }
+        }
 
-    private class TouchListener extends ClickItemTouchListener {
-        TouchListener(RecyclerView recyclerView) {
-            super(recyclerView);
+        void onMove(float x, float y) {
+            mLastX = x;
+            mLastY = y;
+
+            updateEndPosition();
+            updateScrollSpeed();
         }
 
-        @Override
-        boolean performItemClick(RecyclerView parent, View view, int position, long id) {
-            final Adapter adapter = mRecyclerView.getAdapter();
-            boolean checkedStateChanged = false;
+        private void updateEndPosition() {
+            final View child =
+                    ClickItemTouchListener.findChildViewUnder(mRecyclerView, mLastX, mLastY);
+            if (child == null) {
+                return;
+            }
 
-            if (mChoiceMode == ChoiceMode.MULTIPLE) {
-                boolean checked = !mCheckedStates.get(position, false);
-                mCheckedStates.put(position, checked);
+            final int position = mRecyclerView.getChildPosition(child);
+            if (position == RecyclerView.NO_POSITION || position == mEndPosition) {
+                return;
+            }
 
-                if (mCheckedIdStates != null && adapter.hasStableIds()) {
-                    if (checked) {
-                        mCheckedIdStates.put(adapter.getItemId(position), position);
-                    } else {
-                        mCheckedIdStates.delete(adapter.getItemId(position));
-                    }
-                }
+            final int oldStart = Math.min(mAnchorPosition, mEndPosition);
+            final int oldEnd = Math.max(mAnchorPosition, mEndPosition) + 1;
+            final int newStart = Math.min(mAnchorPosition, position);
+            final int newEnd = Math.max(mAnchorPosition, position) + 1;
 
-                if (checked) {
-                    mCheckedCount++;
-                } else {
-                    mCheckedCount--;
-                }
+            mEndPosition = position;
 
-                checkedStateChanged = true;
-            } else if (mChoiceMode == ChoiceMode.SINGLE) {
-                boolean checked = !mCheckedStates.get(position, false);
-                if (checked) {
-                    mCheckedStates.clear();
-                    mCheckedStates.put(position, true);
+            // Both ranges contain the anchor, so they can only differ
+            // on each of their ends.
+            if (newStart < oldStart) {
+                setRangeInside(newStart, oldStart, true);
+            } else if (newStart > oldStart) {
+                setRangeInside(oldStart, newStart, false);
+            }
 
-                    if (mCheckedIdStates != null && adapter.hasStableIds()) {
-                        mCheckedIdStates.clear();
-                        mCheckedIdStates.put(adapter.getItemId(position), position);
-                    }
+            if (newEnd > oldEnd) {
+                setRangeInside(oldEnd, newEnd, true);
+            } else if (newEnd < oldEnd) {
+                setRangeInside(newEnd, oldEnd, false);
+            }
+        }
 
-                    mCheckedCount = 1;
-                } else if (mCheckedStates.size() == 0 || !mCheckedStates.valueAt(0)) {
-                    mCheckedCount = 0;
-                }
+        private void setRangeInside(int start, int end, boolean inside) {
+            if (inside) {
+                mCheckedStates.setRange(start, end, mChecked);
+            } else {
+                mCheckedStates.copyRange(mInitialStates, start, end);
+            }
 
-                checkedStateChanged = true;
+            onCheckedRangeChanged(start, end);
+        }
+
+        private void updateScrollSpeed() {
+            final LayoutManager layout = mRecyclerView.getLayoutManager();
+            if (layout == null) {
+                return;
             }
 
-            if (checkedStateChanged) {
-                updateOnScreenCheckedViews();
+            final boolean isVertical = layout.canScrollVertically();
+            final float offset = (isVertical ? mLastY : mLastX);
+            final int size = (isVertical ? mRecyclerView.getHeight() : mRecyclerView.getWidth());
+
+            final float startDistance = mEdgeSize - offset;
+            final float endDistance = offset - (size - mEdgeSize);
+
+            mScrollSpeed = 0;
+            if (startDistance > 0) {
+                mScrollSpeed = -getScrollSpeed(startDistance);
+            } else if (endDistance > 0) {
+                mScrollSpeed = getScrollSpeed(endDistance);
             }
 
-            return false;
+            if (mScrollSpeed != 0 && !mScrollScheduled) {
+                mScrollScheduled = true;
+                ViewCompat.postOnAnimation(mRecyclerView, this);
+            }
+        }
+
+        private int getScrollSpeed(float edgeDistance) {
+            final float ratio = Math.min(1f, edgeDistance / mEdgeSize);
+            return Math.max(1, (int) (mMaxScrollSpeed * ratio));
         }
 
         @Override
-        boolean performItemLongClick(RecyclerView parent, View view, int position, long id) {
-            return true;
+        public void run() {
+            mScrollScheduled = false;
+
+            final LayoutManager layout = mRecyclerView.getLayoutManager();
+            if (!mActive || mScrollSpeed == 0 || layout == null) {
+                return;
+            }
+
+            final boolean isVertical = layout.canScrollVertically();
+            final View firstChild = mRecyclerView.getChildAt(0);
+            if (firstChild == null) {
+                return;
+            }
+
+            final int oldOffset = (isVertical ? firstChild.getTop() : firstChild.getLeft());
+
+            if (isVertical) {
+                mRecyclerView.scrollBy(0, mScrollSpeed);
+            } else {
+                mRecyclerView.scrollBy(mScrollSpeed, 0);
+            }
+
+            // Stop at the ends of the content, the next move past the
+            // edges starts scrolling again if there's more to scroll.
+            final int newOffset = (isVertical ? firstChild.getTop() : firstChild.getLeft());
+            if (mRecyclerView.getChildAt(0) == firstChild && newOffset == oldOffset) {
+                return;
+            }
+
+            // New items might have scrolled under the finger.
+            updateEndPosition();
+
+            mScrollScheduled = true;
+            ViewCompat.postOnAnimation(mRecyclerView, this);
         }
     }
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview;
+
+import java.util.ArrayList;
+
+/**
+ * Estimated memory retained by a component, broken down by category.
+ * Sizes are shallow estimates based on the ART object layout (8 bytes
+ * object header, 4 bytes references, 8 bytes alignment) and don't include
+ * memory shared with other components.
+ */
+public class MemoryUsage {
+    public static final int REFERENCE_SIZE = 4;
+    public static final int INT_SIZE = 4;
+    public static final int LONG_SIZE = 8;
+    public static final int BOOLEAN_SIZE = 1;
+
+    private static final int OBJECT_HEADER_SIZE = 8;
+    private static final int ARRAY_HEADER_SIZE = 12;
+    private static final int ALIGNMENT = 8;
+
+    private static class Category {
+        final String name;
+        long bytes;
+        int objectCount;
+
+        Category(String name) {
+            this.name = name;
+        }
+    }
+
+    private final ArrayList<Category> mCategories = new ArrayList<Category>();
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Returns the size of an object holding fields of the given total size.
+     */
+    public static long getObjectSize(int fieldsSize) {
+        return align(OBJECT_HEADER_SIZE + fieldsSize);
+    }
+
+    /**
+     * Returns the size of an array with the given length and element size.
+     */
+    public static long getArraySize(int length, int elementSize) {
+        return align(ARRAY_HEADER_SIZE + (long) length * elementSize);
+    }
+
+    private Category getCategory(String name) {
+        for (int i = 0; i < mCategories.size(); i++) {
+            final Category category = mCategories.get(i);
+            if (category.name.equals(name)) {
+                return category;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Adds the given bytes and objects to a category, creating it if needed.
+     */
+    public void add(String name, long bytes, int objectCount) {
+        Category category = getCategory(name);
+        if (category == null) {
+            category = new Category(name);
+            mCategories.add(category);
+        }
+
+        category.bytes += bytes;
+        category.objectCount += objectCount;
+    }
+
+    /**
+     * Adds all categories from another breakdown.
+     */
+    public void add(MemoryUsage usage) {
+        for (int i = 0; i < usage.mCategories.size(); i++) {
+            final Category category = usage.mCategories.get(i);
+            add(category.name, category.bytes, category.objectCount);
+        }
+    }
+
+    public int getCategoryCount() {
+        return mCategories.size();
+    }
+
+    public String getCategoryName(int index) {
+        return mCategories.get(index).name;
+    }
+
+    public long getBytes(int index) {
+        return mCategories.get(index).bytes;
+    }
+
+    public int getObjectCount(int index) {
+        return mCategories.get(index).objectCount;
+    }
+
+    /**
+     * Returns the bytes retained by the given category, 0 if there's none.
+     */
+    public long getBytes(String name) {
+        final Category category = getCategory(name);
+        return (category != null ? category.bytes : 0);
+    }
+
+    /**
+     * Returns the objects retained by the given category, 0 if there's none.
+     */
+    public int getObjectCount(String name) {
+        final Category category = getCategory(name);
+        return (category != null ? category.objectCount : 0);
+    }
+
+    public long getTotalBytes() {
+        long bytes = 0;
+        for (int i = 0; i < mCategories.size(); i++) {
+            bytes += mCategories.get(i).bytes;
+        }
+
+        return bytes;
+    }
+
+    public int getTotalObjectCount() {
+        int objectCount = 0;
+        for (int i = 0; i < mCategories.size(); i++) {
+            objectCount += mCategories.get(i).objectCount;
+        }
+
+        return objectCount;
+    }
+
+    public void clear() {
+        mCategories.clear();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("MemoryUsage{total=").append(getTotalBytes()).append("B/")
+          .append(getTotalObjectCount());
+
+        for (int i = 0; i < mCategories.size(); i++) {
+            final Category category = mCategories.get(i);
+            sb.append(", ").append(category.name).append('=').append(category.bytes)
+              .append("B/").append(category.objectCount);
+        }
+
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview;
+
+/**
+ * Immutable set of checked positions that can be built on any thread and
+ * published to an {@link ItemSelectionSupport} with
+ * {@link ItemSelectionSupport#setSelectionModel(SelectionModel)}. Use a
+ * {@link Builder} to create one, or {@link #buildUpon()} to derive a new
+ * model from an existing one. Positions are stored as ranges, so checking
+ * a whole range of items is cheap.
+ */
+public final class SelectionModel {
+    private final CheckedStates mStates;
+
+    SelectionModel(CheckedStates states) {
+        mStates = states;
+    }
+
+    CheckedStates getCheckedStates() {
+        return mStates;
+    }
+
+    public boolean isItemChecked(int position) {
+        return mStates.get(position);
+    }
+
+    public int getCheckedItemCount() {
+        return mStates.getCheckedCount();
+    }
+
+    /**
+     * Returns the number of ranges of checked positions.
+     */
+    public int getRangeCount() {
+        return mStates.getRangeCount();
+    }
+
+    public int getRangeStart(int index) {
+        return mStates.getRangeStart(index);
+    }
+
+    /**
+     * Returns the end of the given range, exclusive.
+     */
+    public int getRangeEnd(int index) {
+        return mStates.getRangeEnd(index);
+    }
+
+    /**
+     * Returns a builder initialized with this model's checked positions.
+     */
+    public Builder buildUpon() {
+        return new Builder(mStates);
+    }
+
+    /**
+     * Builds {@link SelectionModel}s. A builder should only be used from
+     * one thread at a time. Built models share the builder's states until
+     * it's changed again, at which point it makes its own copy.
+     */
+    public static class Builder {
+        private CheckedStates mStates;
+        private boolean mShared;
+
+        public Builder() {
+            mStates = new CheckedStates();
+        }
+
+        private Builder(CheckedStates states) {
+            mStates = states;
+            mShared = true;
+        }
+
+        private CheckedStates getStatesForWrite() {
+            if (mShared) {
+                mStates = new CheckedStates(mStates);
+                mShared = false;
+            }
+
+            return mStates;
+        }
+
+        private static void checkRange(int positionStart, int itemCount) {
+            if (positionStart < 0 || itemCount < 0) {
+                throw new IllegalArgumentException("Invalid range: " + positionStart +
+                        " (" + itemCount + " items)");
+            }
+        }
+
+        public Builder setItemChecked(int position, boolean checked) {
+            return setItemCheckedRange(position, 1, checked);
+        }
+
+        public Builder setItemCheckedRange(int positionStart, int itemCount, boolean checked) {
+            checkRange(positionStart, itemCount);
+            getStatesForWrite().setRange(positionStart, positionStart + itemCount, checked);
+            return this;
+        }
+
+        /**
+         * Flips the checked state of a range of positions.
+         */
+        public Builder invertRange(int positionStart, int itemCount) {
+            checkRange(positionStart, itemCount);
+            getStatesForWrite().invert(positionStart, positionStart + itemCount);
+            return this;
+        }
+
+        public Builder clear() {
+            getStatesForWrite().clear();
+            return this;
+        }
+
+        public SelectionModel build() {
+            mShared = true;
+            return new SelectionModel(mStates);
+        }
+    }
+}
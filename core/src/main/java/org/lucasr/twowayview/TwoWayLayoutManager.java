@@ -22,11 +22,13 @@ import android.graphics.PointF;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearSmoothScroller;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.RecyclerView.Adapter;
 import android.support.v7.widget.RecyclerView.LayoutManager;
 import android.support.v7.widget.RecyclerView.LayoutParams;
+import android.support.v7.widget.RecyclerView.RecycledViewPool;
 import android.support.v7.widget.RecyclerView.Recycler;
 import android.support.v7.widget.RecyclerView.State;
 import android.support.v7.widget.RecyclerView.ViewHolder;
@@ -39,6 +41,10 @@ import java.util.List;
 public abstract class TwoWayLayoutManager extends LayoutManager {
     private static final String LOGTAG = "TwoWayLayoutManager";
 
+    // Number of screens worth of items left to animate through
+    // after jumping towards a distant smooth scroll target.
+    protected static final int SMOOTH_SCROLL_JUMP_SCREENS = 2;
+
     public static enum Orientation {
         HORIZONTAL,
         VERTICAL
@@ -57,6 +63,7 @@ public abstract class TwoWayLayoutManager extends LayoutManager {
 
     private int mPendingScrollPosition = RecyclerView.NO_POSITION;
     private int mPendingScrollOffset = 0;
+    private boolean mPendingScrollFromUpdate;
 
     private int mLayoutStart;
     private int mLayoutEnd;
@@ -120,6 +127,10 @@ public abstract class TwoWayLayoutManager extends LayoutManager {
         return (mRecyclerView != null ? mRecyclerView.getAdapter() : null);
     }
 
+    protected RecycledViewPool getRecycledViewPool() {
+        return (mRecyclerView != null ? mRecyclerView.getRecycledViewPool() : null);
+    }
+
     private void offsetChildren(int offset) {
         if (mIsVertical) {
             offsetChildrenVertical(offset);
@@ -487,6 +498,7 @@ public abstract class TwoWayLayoutManager extends LayoutManager {
         final View firstChild = findViewByPosition(firstPosition);
         if (firstChild != null) {
             setPendingScrollPositionWithOffset(firstPosition, getChildStart(firstChild));
+            mPendingScrollFromUpdate = true;
         } else {
             setPendingScrollPositionWithOffset(RecyclerView.NO_POSITION, 0);
         }
@@ -591,6 +603,36 @@ public abstract class TwoWayLayoutManager extends LayoutManager {
     protected void setPendingScrollPositionWithOffset(int position, int offset) {
         mPendingScrollPosition = position;
         mPendingScrollOffset = offset;
+        mPendingScrollFromUpdate = false;
+    }
+
+    /**
+     * Returns whether the pre-layout pass can leave the attached children
+     * untouched. The pre-layout pass lays out items as they were before the
+     * pending adapter changes, which is exactly what the attached children
+     * show unless something other than adapter changes affected the layout.
+     */
+    protected boolean canKeepChildrenInPreLayout(State state) {
+        return (getChildCount() > 0 && mPendingSavedState == null &&
+                (mPendingScrollPosition == RecyclerView.NO_POSITION || mPendingScrollFromUpdate));
+    }
+
+    /**
+     * Returns the space taken by the attached children being removed.
+     */
+    private int getRemovedChildrenSpace() {
+        int space = 0;
+
+        final int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            final View child = getChildAt(i);
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            if (lp.isItemRemoved()) {
+                space += getChildEnd(child) - getChildStart(child);
+            }
+        }
+
+        return space;
     }
 
     protected int getPendingScrollPosition() {
@@ -715,11 +757,31 @@ public abstract class TwoWayLayoutManager extends LayoutManager {
                 itemSelection.onRestoreInstanceState(itemSelectionState);
             }
 
-            if (state.didStructureChange()) {
+            // Adapter updates might still be postponed in the pre-layout
+            // pass, checked items are only remapped once they're all in.
+            if (state.didStructureChange() && !state.isPreLayout()) {
                 itemSelection.onAdapterDataChanged();
             }
         }
 
+        if (state.isPreLayout() && canKeepChildrenInPreLayout(state)) {
+            // The anchor set by the adapter changes is resolved from the
+            // first child in the real layout pass instead, only keep its
+            // offset. Positions are only updated after the pre-layout pass.
+            mPendingScrollPosition = RecyclerView.NO_POSITION;
+
+            // The items sliding in to fill the space freed by removed items
+            // have to be in the pre-layout pass too, so that they're
+            // animated in. Lay them out past the last child.
+            final int removedSpace = getRemovedChildrenSpace();
+            if (removedSpace > 0) {
+                fillAfter(getFirstVisiblePosition() + getChildCount(), recycler, state,
+                        removedSpace);
+            }
+
+            return;
+        }
+
         final int anchorItemPosition = getAnchorItemPosition(state);
         detachAndScrapAttachedViews(recycler);
         fillSpecific(anchorItemPosition, recycler, state);
@@ -747,11 +809,21 @@ public abstract class TwoWayLayoutManager extends LayoutManager {
 
     @Override
     public void onItemsAdded(RecyclerView recyclerView, int positionStart, int itemCount) {
+        final ItemSelectionSupport itemSelection = ItemSelectionSupport.from(mRecyclerView);
+        if (itemSelection != null) {
+            itemSelection.onItemsAdded(positionStart, itemCount);
+        }
+
         handleUpdate();
     }
 
     @Override
     public void onItemsRemoved(RecyclerView recyclerView, int positionStart, int itemCount) {
+        final ItemSelectionSupport itemSelection = ItemSelectionSupport.from(mRecyclerView);
+        if (itemSelection != null) {
+            itemSelection.onItemsRemoved(positionStart, itemCount);
+        }
+
         handleUpdate();
     }
 
@@ -762,6 +834,11 @@ public abstract class TwoWayLayoutManager extends LayoutManager {
 
     @Override
     public void onItemsMoved(RecyclerView recyclerView, int from, int to, int itemCount) {
+        final ItemSelectionSupport itemSelection = ItemSelectionSupport.from(mRecyclerView);
+        if (itemSelection != null) {
+            itemSelection.onItemsMoved(from, to, itemCount);
+        }
+
         handleUpdate();
     }
 
@@ -822,8 +899,43 @@ public abstract class TwoWayLayoutManager extends LayoutManager {
         requestLayout();
     }
 
+    /**
+     * Returns the position to jump to before smoothly scrolling to the given
+     * target position, or {@link RecyclerView#NO_POSITION} if the target is
+     * close enough to scroll all the way to it. The jump position is laid
+     * out at the start of the layout so that about
+     * {@link #SMOOTH_SCROLL_JUMP_SCREENS} screens worth of items are left
+     * between it and the target. By default, the distance is estimated
+     * from the number of visible items.
+     */
+    protected int getSmoothScrollJumpPosition(int targetPosition) {
+        final int childCount = getChildCount();
+        if (childCount == 0) {
+            return RecyclerView.NO_POSITION;
+        }
+
+        final int firstPosition = getFirstVisiblePosition();
+        final int lastPosition = getLastVisiblePosition();
+        final int distance = childCount * SMOOTH_SCROLL_JUMP_SCREENS;
+
+        if (targetPosition > lastPosition + distance) {
+            return targetPosition - distance;
+        } else if (targetPosition < firstPosition - distance) {
+            return targetPosition + distance;
+        }
+
+        return RecyclerView.NO_POSITION;
+    }
+
     @Override
     public void smoothScrollToPosition(RecyclerView recyclerView, State state, int position) {
+        // Scrolling to a distant position would bind and lay out every
+        // item in between, jump close to it and only animate the rest.
+        final int jumpPosition = getSmoothScrollJumpPosition(position);
+        if (jumpPosition != RecyclerView.NO_POSITION) {
+            scrollToPosition(jumpPosition);
+        }
+
         final LinearSmoothScroller scroller = new LinearSmoothScroller(recyclerView.getContext()) {
             @Override
             public PointF computeScrollVectorForPosition(int targetPosition) {
@@ -954,6 +1066,53 @@ public abstract class TwoWayLayoutManager extends LayoutManager {
         return getPosition(getChildAt(childCount - 1));
     }
 
+    @Override
+    public View findViewByPosition(int position) {
+        // Children are kept in adapter order, so the child for a position
+        // is usually at a known index. Fall back to a full scan otherwise
+        // e.g. when there are disappearing or removed children around.
+        final int childCount = getChildCount();
+        if (childCount > 0) {
+            final int index = position - getFirstVisiblePosition();
+            if (index >= 0 && index < childCount) {
+                final View child = getChildAt(index);
+                final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+                if (getPosition(child) == position && !lp.isItemRemoved()) {
+                    return child;
+                }
+            }
+        }
+
+        return super.findViewByPosition(position);
+    }
+
+    /**
+     * Returns the topmost attached child under the given point, in the
+     * RecyclerView's coordinates, or null if there's none. Unlike
+     * {@link RecyclerView#findChildViewUnder(float, float)}, subclasses
+     * can answer it without scanning all children.
+     */
+    public View findChildViewUnder(float x, float y) {
+        for (int i = getChildCount() - 1; i >= 0; i--) {
+            final View child = getChildAt(i);
+            if (isChildUnder(child, x, y)) {
+                return child;
+            }
+        }
+
+        return null;
+    }
+
+    protected boolean isChildUnder(View child, float x, float y) {
+        final float translationX = ViewCompat.getTranslationX(child);
+        final float translationY = ViewCompat.getTranslationY(child);
+
+        return (x >= child.getLeft() + translationX &&
+                x <= child.getRight() + translationX &&
+                y >= child.getTop() + translationY &&
+                y <= child.getBottom() + translationY);
+    }
+
     protected abstract void measureChild(View child, Direction direction);
     protected abstract void layoutChild(View child, Direction direction);
 
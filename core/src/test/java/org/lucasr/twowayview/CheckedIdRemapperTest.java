@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview;
+
+import org.junit.Test;
+import org.lucasr.twowayview.ItemSelectionSupport.ItemIdLookup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CheckedIdRemapperTest {
+    private static class Items implements CheckedIdRemapper.ItemIds, ItemIdLookup {
+        final List<Long> ids = new ArrayList<Long>();
+        int idCalls;
+        int lookupCalls;
+
+        Items(int count) {
+            for (long id = 0; id < count; id++) {
+                ids.add(id * 10);
+            }
+        }
+
+        @Override
+        public int getItemCount() {
+            return ids.size();
+        }
+
+        @Override
+        public long getItemId(int position) {
+            idCalls++;
+            return ids.get(position);
+        }
+
+        @Override
+        public int getPositionForItemId(long id) {
+            lookupCalls++;
+            return ids.indexOf(id);
+        }
+    }
+
+    private static CheckedIdStates check(Items items, int... positions) {
+        final CheckedIdStates checkedIds = new CheckedIdStates();
+        for (int position : positions) {
+            checkedIds.put(items.ids.get(position), position);
+        }
+
+        items.idCalls = 0;
+        return checkedIds;
+    }
+
+    private static int[] remap(CheckedIdStates checkedIds, Items items, ItemIdLookup idLookup) {
+        final int[] positions = new int[checkedIds.size()];
+        final int count = CheckedIdRemapper.remap(checkedIds, items, idLookup, positions);
+
+        final int[] sorted = Arrays.copyOf(positions, count);
+        Arrays.sort(sorted);
+
+        // Checked IDs and returned positions always agree.
+        assertEquals(count, checkedIds.size());
+        for (int position : sorted) {
+            assertEquals(position, checkedIds.get(items.ids.get(position), -1));
+        }
+
+        return sorted;
+    }
+
+    @Test
+    public void unchangedItemsCostOneLookupEach() {
+        final Items items = new Items(1000);
+        final CheckedIdStates checkedIds = check(items, 3, 500, 999);
+
+        assertArrayEquals(new int[] { 3, 500, 999 }, remap(checkedIds, items, null));
+        assertEquals(3, items.idCalls);
+    }
+
+    @Test
+    public void followsInsertedItems() {
+        final Items items = new Items(1000);
+        final CheckedIdStates checkedIds = check(items, 3, 500, 999);
+
+        items.ids.add(0, -1L);
+        items.ids.add(0, -2L);
+
+        assertArrayEquals(new int[] { 5, 502, 1001 }, remap(checkedIds, items, null));
+
+        // Items were found close to where they were.
+        assertTrue(items.idCalls < 3 * (CheckedIdRemapper.SEARCH_DISTANCE * 2 + 1));
+    }
+
+    @Test
+    public void dropsRemovedItems() {
+        final Items items = new Items(1000);
+        final CheckedIdStates checkedIds = check(items, 3, 4, 500);
+
+        items.ids.remove(4);
+        items.ids.remove(0);
+
+        assertArrayEquals(new int[] { 2, 498 }, remap(checkedIds, items, null));
+        assertFalse(checkedIds.containsKey(40L));
+    }
+
+    @Test
+    public void findsItemsMovedFarAway() {
+        final Items items = new Items(1000);
+        final CheckedIdStates checkedIds = check(items, 3, 500);
+
+        items.ids.add(900, items.ids.remove(3));
+
+        assertArrayEquals(new int[] { 499, 900 }, remap(checkedIds, items, null));
+    }
+
+    @Test
+    public void usesFullPassForManyCheckedItems() {
+        final Items items = new Items(100);
+        final int[] checked = new int[50];
+        for (int i = 0; i < checked.length; i++) {
+            checked[i] = i * 2;
+        }
+
+        final CheckedIdStates checkedIds = check(items, checked);
+        items.ids.add(0, -1L);
+
+        final int[] expected = new int[checked.length];
+        for (int i = 0; i < checked.length; i++) {
+            expected[i] = checked[i] + 1;
+        }
+
+        assertArrayEquals(expected, remap(checkedIds, items, null));
+
+        // One lookup per checked item plus a single pass over the items.
+        assertTrue(items.idCalls <= checked.length + items.ids.size());
+    }
+
+    @Test
+    public void usesItemIdLookup() {
+        final Items items = new Items(1000);
+        final CheckedIdStates checkedIds = check(items, 3, 4, 500);
+
+        items.ids.add(700, items.ids.remove(3));
+        items.ids.remove(Long.valueOf(40L));
+
+        assertArrayEquals(new int[] { 498, 699 }, remap(checkedIds, items, items));
+
+        // Gone items aren't searched for, the lookup already said so.
+        assertEquals(3, items.idCalls);
+        assertEquals(3, items.lookupCalls);
+    }
+}
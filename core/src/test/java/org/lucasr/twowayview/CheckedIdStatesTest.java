@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CheckedIdStatesTest {
+    private static int countUsedSlots(CheckedIdStates states) {
+        int count = 0;
+        for (int slot = 0; slot < states.getCapacity(); slot++) {
+            if (states.isUsedAt(slot)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    @Test
+    public void putsAndGetsEntries() {
+        final CheckedIdStates states = new CheckedIdStates();
+        states.put(100L, 1);
+        states.put(-5L, 2);
+        states.put(Long.MAX_VALUE, 3);
+
+        assertEquals(3, states.size());
+        assertEquals(1, states.get(100L, -1));
+        assertEquals(2, states.get(-5L, -1));
+        assertEquals(3, states.get(Long.MAX_VALUE, -1));
+        assertEquals(-1, states.get(7L, -1));
+        assertFalse(states.containsKey(7L));
+    }
+
+    @Test
+    public void putReplacesValue() {
+        final CheckedIdStates states = new CheckedIdStates();
+        states.put(1L, 10);
+        states.put(1L, 20);
+
+        assertEquals(1, states.size());
+        assertEquals(20, states.get(1L, -1));
+    }
+
+    @Test
+    public void deleteLeavesOtherEntries() {
+        final CheckedIdStates states = new CheckedIdStates();
+        for (long id = 0; id < 10; id++) {
+            states.put(id, (int) id);
+        }
+
+        states.delete(4L);
+        states.delete(42L);
+
+        assertEquals(9, states.size());
+        assertFalse(states.containsKey(4L));
+        for (long id = 0; id < 10; id++) {
+            if (id != 4L) {
+                assertEquals((int) id, states.get(id, -1));
+            }
+        }
+    }
+
+    @Test
+    public void reusesTombstones() {
+        final CheckedIdStates states = new CheckedIdStates();
+        final int capacity = states.getCapacity();
+
+        // Removed slots are either reused or dropped when rehashing, so
+        // the table doesn't grow as long as few entries are left.
+        for (long id = 0; id < capacity * 10; id++) {
+            states.put(id, (int) id);
+            states.delete(id);
+        }
+
+        assertEquals(capacity, states.getCapacity());
+
+        states.put(-1L, 1);
+        states.delete(-1L);
+        states.put(-1L, 2);
+
+        assertEquals(1, states.size());
+        assertEquals(2, states.get(-1L, -1));
+        assertEquals(1, countUsedSlots(states));
+    }
+
+    @Test
+    public void lookupsProbePastTombstones() {
+        final CheckedIdStates states = new CheckedIdStates();
+        for (long id = 0; id < 8; id++) {
+            states.put(id, (int) id);
+        }
+
+        for (long id = 0; id < 8; id += 2) {
+            states.delete(id);
+        }
+
+        for (long id = 1; id < 8; id += 2) {
+            assertEquals((int) id, states.get(id, -1));
+        }
+    }
+
+    @Test
+    public void rehashKeepsEntries() {
+        final CheckedIdStates states = new CheckedIdStates();
+        final int initialCapacity = states.getCapacity();
+
+        final int count = initialCapacity * 4;
+        for (int i = 0; i < count; i++) {
+            states.put(i * 31L, i);
+        }
+
+        assertTrue(states.getCapacity() > initialCapacity);
+        assertEquals(count, states.size());
+        assertEquals(count, countUsedSlots(states));
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, states.get(i * 31L, -1));
+        }
+    }
+
+    @Test
+    public void slotAccessorsUpdateEntries() {
+        final CheckedIdStates states = new CheckedIdStates();
+        states.put(1L, 10);
+        states.put(2L, 20);
+
+        for (int slot = 0; slot < states.getCapacity(); slot++) {
+            if (!states.isUsedAt(slot)) {
+                continue;
+            }
+
+            if (states.keyAt(slot) == 1L) {
+                states.setValueAt(slot, 11);
+            } else {
+                states.removeAt(slot);
+            }
+        }
+
+        assertEquals(1, states.size());
+        assertEquals(11, states.get(1L, -1));
+        assertFalse(states.containsKey(2L));
+    }
+
+    @Test
+    public void clearDropsEntries() {
+        final CheckedIdStates states = new CheckedIdStates();
+        for (long id = 0; id < 100; id++) {
+            states.put(id, (int) id);
+        }
+
+        states.clear();
+
+        assertEquals(0, states.size());
+        assertEquals(0, countUsedSlots(states));
+        assertFalse(states.containsKey(5L));
+    }
+
+    @Test
+    public void matchesHashMap() {
+        final Random random = new Random(42);
+        final Map<Long, Integer> expected = new HashMap<Long, Integer>();
+        final CheckedIdStates states = new CheckedIdStates();
+
+        for (int i = 0; i < 20000; i++) {
+            final long id = random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                states.delete(id);
+                expected.remove(id);
+            } else {
+                states.put(id, i);
+                expected.put(id, i);
+            }
+        }
+
+        assertEquals(expected.size(), states.size());
+        for (long id = 0; id < 500; id++) {
+            final Integer value = expected.get(id);
+            assertEquals((value != null ? value : -1), states.get(id, -1));
+        }
+    }
+}
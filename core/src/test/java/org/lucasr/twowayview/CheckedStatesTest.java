@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CheckedStatesTest {
+    private static int[] getRanges(CheckedStates states) {
+        final int[] ranges = new int[states.getRangeCount() * 2];
+        for (int i = 0; i < states.getRangeCount(); i++) {
+            ranges[i * 2] = states.getRangeStart(i);
+            ranges[i * 2 + 1] = states.getRangeEnd(i);
+        }
+
+        return ranges;
+    }
+
+    @Test
+    public void setsSinglePositions() {
+        final CheckedStates states = new CheckedStates();
+        states.set(3, true);
+        states.set(5, true);
+
+        assertTrue(states.get(3));
+        assertFalse(states.get(4));
+        assertTrue(states.get(5));
+        assertEquals(2, states.getCheckedCount());
+        assertEquals(3, states.getFirstChecked());
+
+        states.set(4, true);
+        assertArrayEquals(new int[] { 3, 6 }, getRanges(states));
+    }
+
+    @Test
+    public void setRangeMergesOverlappingAndAdjacentRanges() {
+        final CheckedStates states = new CheckedStates();
+        states.setRange(0, 5, true);
+        states.setRange(10, 15, true);
+        states.setRange(20, 25, true);
+
+        states.setRange(5, 12, true);
+        assertArrayEquals(new int[] { 0, 15, 20, 25 }, getRanges(states));
+        assertEquals(20, states.getCheckedCount());
+
+        states.setRange(14, 30, true);
+        assertArrayEquals(new int[] { 0, 30 }, getRanges(states));
+        assertEquals(30, states.getCheckedCount());
+    }
+
+    @Test
+    public void clearingRangeSplitsRanges() {
+        final CheckedStates states = new CheckedStates();
+        states.setRange(0, 30, true);
+
+        states.setRange(10, 20, false);
+        assertArrayEquals(new int[] { 0, 10, 20, 30 }, getRanges(states));
+        assertEquals(20, states.getCheckedCount());
+
+        states.setRange(5, 25, false);
+        assertArrayEquals(new int[] { 0, 5, 25, 30 }, getRanges(states));
+        assertEquals(10, states.getCheckedCount());
+
+        states.setRange(0, 100, false);
+        assertEquals(0, states.getRangeCount());
+        assertEquals(0, states.getCheckedCount());
+        assertEquals(ItemSelectionSupport.INVALID_POSITION, states.getFirstChecked());
+    }
+
+    @Test
+    public void emptyRangeIsIgnored() {
+        final CheckedStates states = new CheckedStates();
+        states.setRange(5, 5, true);
+        states.invert(5, 5);
+
+        assertEquals(0, states.getRangeCount());
+    }
+
+    @Test
+    public void invertFlipsRanges() {
+        final CheckedStates states = new CheckedStates();
+        states.setRange(2, 4, true);
+        states.setRange(6, 8, true);
+
+        states.invert(0, 10);
+        assertArrayEquals(new int[] { 0, 2, 4, 6, 8, 10 }, getRanges(states));
+        assertEquals(6, states.getCheckedCount());
+    }
+
+    @Test
+    public void invertKeepsOuterPartsOfRanges() {
+        final CheckedStates states = new CheckedStates();
+        states.setRange(0, 10, true);
+        states.setRange(20, 30, true);
+
+        states.invert(5, 25);
+        assertArrayEquals(new int[] { 0, 5, 10, 20, 25, 30 }, getRanges(states));
+        assertEquals(20, states.getCheckedCount());
+    }
+
+    @Test
+    public void invertMergesWithAdjacentRanges() {
+        final CheckedStates states = new CheckedStates();
+        states.setRange(0, 5, true);
+        states.setRange(10, 15, true);
+
+        states.invert(5, 10);
+        assertArrayEquals(new int[] { 0, 15 }, getRanges(states));
+        assertEquals(15, states.getCheckedCount());
+    }
+
+    @Test
+    public void invertTwiceRestoresStates() {
+        final CheckedStates states = new CheckedStates();
+        states.setRange(3, 9, true);
+        states.setRange(12, 13, true);
+
+        final int[] ranges = getRanges(states);
+        states.invert(0, 20);
+        states.invert(0, 20);
+
+        assertArrayEquals(ranges, getRanges(states));
+        assertEquals(7, states.getCheckedCount());
+    }
+
+    @Test
+    public void setPositionsMergesUnsortedPositions() {
+        final CheckedStates states = new CheckedStates();
+        states.setRange(10, 12, true);
+
+        final int[] positions = new int[] { 7, 3, 12, 4, 3, 20, 9, 0 };
+        states.setPositions(positions, 7);
+
+        assertArrayEquals(new int[] { 3, 5, 7, 8, 9, 13, 20, 21 }, getRanges(states));
+        assertEquals(8, states.getCheckedCount());
+        assertFalse(states.get(0));
+    }
+
+    @Test
+    public void bulkSelectionFollowsInsertedItems() {
+        final CheckedStates states = new CheckedStates();
+        states.setRange(0, 100, true);
+        states.set(120, true);
+
+        states.offsetForAddition(10, 5);
+        assertArrayEquals(new int[] { 0, 10, 15, 105, 125, 126 }, getRanges(states));
+        assertEquals(101, states.getCheckedCount());
+
+        states.offsetForAddition(200, 5);
+        assertArrayEquals(new int[] { 0, 10, 15, 105, 125, 126 }, getRanges(states));
+
+        states.offsetForAddition(0, 1);
+        assertArrayEquals(new int[] { 1, 11, 16, 106, 126, 127 }, getRanges(states));
+    }
+
+    @Test
+    public void bulkSelectionFollowsRemovedItems() {
+        final CheckedStates states = new CheckedStates();
+        states.setRange(0, 10, true);
+        states.setRange(15, 105, true);
+        states.set(120, true);
+
+        // Removing the gap joins the ranges around it.
+        states.offsetForRemoval(10, 5);
+        assertArrayEquals(new int[] { 0, 100, 115, 116 }, getRanges(states));
+        assertEquals(101, states.getCheckedCount());
+
+        states.offsetForRemoval(90, 20);
+        assertArrayEquals(new int[] { 0, 90, 95, 96 }, getRanges(states));
+        assertEquals(91, states.getCheckedCount());
+    }
+
+    @Test
+    public void bulkSelectionFollowsMovedItems() {
+        final CheckedStates states = new CheckedStates();
+        states.setRange(0, 3, true);
+
+        states.offsetForMove(1, 5, 1);
+        assertArrayEquals(new int[] { 0, 2, 5, 6 }, getRanges(states));
+
+        states.offsetForMove(5, 0, 1);
+        assertArrayEquals(new int[] { 0, 3 }, getRanges(states));
+        assertEquals(3, states.getCheckedCount());
+
+        states.offsetForMove(4, 8, 1);
+        assertArrayEquals(new int[] { 0, 3 }, getRanges(states));
+    }
+
+    @Test
+    public void copyRangeReplacesStatesWithinRange() {
+        final CheckedStates source = new CheckedStates();
+        source.setRange(0, 4, true);
+        source.setRange(8, 12, true);
+
+        final CheckedStates states = new CheckedStates();
+        states.setRange(0, 20, true);
+        states.copyRange(source, 2, 10);
+
+        assertArrayEquals(new int[] { 0, 4, 8, 20 }, getRanges(states));
+        assertEquals(16, states.getCheckedCount());
+    }
+
+    @Test
+    public void copyConstructorCopiesStates() {
+        final CheckedStates states = new CheckedStates();
+        states.setRange(1, 3, true);
+
+        final CheckedStates copy = new CheckedStates(states);
+        states.setRange(5, 6, true);
+
+        assertArrayEquals(new int[] { 1, 3 }, getRanges(copy));
+        assertEquals(2, copy.getCheckedCount());
+    }
+
+    @Test
+    public void matchesPlainSetOfPositions() {
+        final Random random = new Random(42);
+        final boolean[] expected = new boolean[200];
+        final CheckedStates states = new CheckedStates();
+
+        for (int i = 0; i < 2000; i++) {
+            final int start = random.nextInt(expected.length);
+            final int end = start + random.nextInt(expected.length - start + 1);
+
+            final int op = random.nextInt(3);
+            for (int position = start; position < end; position++) {
+                expected[position] = (op == 2 ? !expected[position] : op == 0);
+            }
+
+            if (op == 2) {
+                states.invert(start, end);
+            } else {
+                states.setRange(start, end, op == 0);
+            }
+
+            int checkedCount = 0;
+            for (int position = 0; position < expected.length; position++) {
+                assertEquals(expected[position], states.get(position));
+                checkedCount += (expected[position] ? 1 : 0);
+            }
+
+            assertEquals(checkedCount, states.getCheckedCount());
+
+            // Ranges are sorted and never touch.
+            for (int range = 1; range < states.getRangeCount(); range++) {
+                assertTrue(states.getRangeEnd(range - 1) < states.getRangeStart(range));
+            }
+        }
+    }
+}
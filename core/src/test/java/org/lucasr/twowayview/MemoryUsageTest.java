@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MemoryUsageTest {
+    @Test
+    public void alignsObjectSizes() {
+        assertEquals(8, MemoryUsage.getObjectSize(0));
+        assertEquals(16, MemoryUsage.getObjectSize(MemoryUsage.INT_SIZE));
+        assertEquals(16, MemoryUsage.getObjectSize(2 * MemoryUsage.INT_SIZE));
+        assertEquals(24, MemoryUsage.getObjectSize(3 * MemoryUsage.INT_SIZE));
+    }
+
+    @Test
+    public void alignsArraySizes() {
+        assertEquals(16, MemoryUsage.getArraySize(0, MemoryUsage.INT_SIZE));
+        assertEquals(16, MemoryUsage.getArraySize(1, MemoryUsage.INT_SIZE));
+        assertEquals(24, MemoryUsage.getArraySize(2, MemoryUsage.INT_SIZE));
+        assertEquals(16, MemoryUsage.getArraySize(4, MemoryUsage.BOOLEAN_SIZE));
+        assertEquals(96, MemoryUsage.getArraySize(10, MemoryUsage.LONG_SIZE));
+    }
+
+    @Test
+    public void arraySizesDontOverflow() {
+        assertEquals(12L + 8L * Integer.MAX_VALUE + 4,
+                MemoryUsage.getArraySize(Integer.MAX_VALUE, MemoryUsage.LONG_SIZE));
+    }
+
+    @Test
+    public void accumulatesCategories() {
+        final MemoryUsage usage = new MemoryUsage();
+        usage.add("a", 16, 1);
+        usage.add("b", 32, 2);
+        usage.add("a", 8, 1);
+
+        assertEquals(2, usage.getCategoryCount());
+        assertEquals("a", usage.getCategoryName(0));
+        assertEquals("b", usage.getCategoryName(1));
+
+        assertEquals(24, usage.getBytes("a"));
+        assertEquals(2, usage.getObjectCount("a"));
+        assertEquals(32, usage.getBytes(1));
+        assertEquals(2, usage.getObjectCount(1));
+
+        assertEquals(56, usage.getTotalBytes());
+        assertEquals(4, usage.getTotalObjectCount());
+    }
+
+    @Test
+    public void unknownCategoryIsEmpty() {
+        final MemoryUsage usage = new MemoryUsage();
+        assertEquals(0, usage.getBytes("missing"));
+        assertEquals(0, usage.getObjectCount("missing"));
+    }
+
+    @Test
+    public void mergesOtherUsage() {
+        final MemoryUsage usage = new MemoryUsage();
+        usage.add("a", 16, 1);
+
+        final MemoryUsage other = new MemoryUsage();
+        other.add("a", 8, 1);
+        other.add("c", 40, 3);
+
+        usage.add(other);
+
+        assertEquals(2, usage.getCategoryCount());
+        assertEquals(24, usage.getBytes("a"));
+        assertEquals(40, usage.getBytes("c"));
+        assertEquals(5, usage.getTotalObjectCount());
+    }
+
+    @Test
+    public void clearDropsCategories() {
+        final MemoryUsage usage = new MemoryUsage();
+        usage.add("a", 16, 1);
+        usage.clear();
+
+        assertEquals(0, usage.getCategoryCount());
+        assertEquals(0, usage.getTotalBytes());
+    }
+}
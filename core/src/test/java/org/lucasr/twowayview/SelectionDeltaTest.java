@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview;
+
+import org.junit.Test;
+import org.lucasr.twowayview.ItemSelectionSupport.SelectionDelta;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SelectionDeltaTest {
+    private static int[] getAddedRanges(SelectionDelta delta) {
+        final int[] ranges = new int[delta.getAddedRangeCount() * 2];
+        for (int i = 0; i < delta.getAddedRangeCount(); i++) {
+            ranges[i * 2] = delta.getAddedRangeStart(i);
+            ranges[i * 2 + 1] = delta.getAddedRangeEnd(i);
+        }
+
+        return ranges;
+    }
+
+    private static int[] getRemovedRanges(SelectionDelta delta) {
+        final int[] ranges = new int[delta.getRemovedRangeCount() * 2];
+        for (int i = 0; i < delta.getRemovedRangeCount(); i++) {
+            ranges[i * 2] = delta.getRemovedRangeStart(i);
+            ranges[i * 2 + 1] = delta.getRemovedRangeEnd(i);
+        }
+
+        return ranges;
+    }
+
+    private static boolean isChecked(SelectionDelta delta, int position, boolean added) {
+        final int count = (added ? delta.getAddedRangeCount() : delta.getRemovedRangeCount());
+        for (int i = 0; i < count; i++) {
+            final int start = (added ? delta.getAddedRangeStart(i) : delta.getRemovedRangeStart(i));
+            final int end = (added ? delta.getAddedRangeEnd(i) : delta.getRemovedRangeEnd(i));
+            if (position >= start && position < end) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Test
+    public void reportsAddedAndRemovedRanges() {
+        final CheckedStates oldStates = new CheckedStates();
+        oldStates.setRange(0, 10, true);
+
+        final CheckedStates newStates = new CheckedStates();
+        newStates.setRange(5, 20, true);
+
+        final CheckedStates changed = new CheckedStates();
+        changed.setRange(0, Integer.MAX_VALUE, true);
+
+        final SelectionDelta delta = SelectionDelta.compute(oldStates, newStates, changed);
+
+        assertArrayEquals(new int[] { 10, 20 }, getAddedRanges(delta));
+        assertArrayEquals(new int[] { 0, 5 }, getRemovedRanges(delta));
+        assertEquals(10, delta.getAddedCount());
+        assertEquals(5, delta.getRemovedCount());
+    }
+
+    @Test
+    public void onlyComparesChangedPositions() {
+        final CheckedStates oldStates = new CheckedStates();
+        final CheckedStates newStates = new CheckedStates();
+        newStates.setRange(0, 100, true);
+
+        final CheckedStates changed = new CheckedStates();
+        changed.setRange(10, 20, true);
+        changed.setRange(50, 60, true);
+
+        final SelectionDelta delta = SelectionDelta.compute(oldStates, newStates, changed);
+
+        assertArrayEquals(new int[] { 10, 20, 50, 60 }, getAddedRanges(delta));
+        assertEquals(0, delta.getRemovedRangeCount());
+    }
+
+    @Test
+    public void changesThatCancelOutAreEmpty() {
+        final CheckedStates oldStates = new CheckedStates();
+        oldStates.setRange(3, 8, true);
+
+        final CheckedStates changed = new CheckedStates();
+        changed.setRange(0, 10, true);
+
+        final SelectionDelta delta =
+                SelectionDelta.compute(oldStates, new CheckedStates(oldStates), changed);
+        assertTrue(delta.isEmpty());
+    }
+
+    @Test
+    public void matchesPlainComparison() {
+        final Random random = new Random(42);
+        final int size = 300;
+
+        for (int round = 0; round < 50; round++) {
+            final CheckedStates oldStates = new CheckedStates();
+            final CheckedStates newStates = new CheckedStates();
+            final CheckedStates changed = new CheckedStates();
+
+            for (int i = 0; i < 10; i++) {
+                final int start = random.nextInt(size);
+                final int end = start + random.nextInt(size - start + 1);
+                oldStates.setRange(start, end, random.nextBoolean());
+                newStates.invert(random.nextInt(start + 1), end);
+                changed.setRange(start, end, true);
+            }
+
+            final SelectionDelta delta = SelectionDelta.compute(oldStates, newStates, changed);
+
+            for (int position = 0; position < size; position++) {
+                final boolean inChanged = changed.get(position);
+                final boolean wasChecked = oldStates.get(position);
+                final boolean isChecked = newStates.get(position);
+
+                assertEquals(inChanged && isChecked && !wasChecked,
+                        isChecked(delta, position, true));
+                assertEquals(inChanged && wasChecked && !isChecked,
+                        isChecked(delta, position, false));
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.RecyclerView.RecycledViewPool;
+import android.support.v7.widget.RecyclerView.ViewHolder;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+/**
+ * {@link RecycledViewPool} whose per view type limits are sized by the
+ * {@link BaseLayoutManager}s using it. Laned layouts recycle a whole row of
+ * views at once and need them again right away, so the limit for each view
+ * type is grown to hold a few rows worth of views of that type, based on the
+ * lane count and the mix of view types currently laid out. Limits never
+ * shrink on their own. The pool also counts requests, misses (requests that
+ * end up creating a new view) and views dropped because the pool was full.
+ *
+ * <p>Set it with {@link RecyclerView#setRecycledViewPool(RecycledViewPool)}.
+ * It can be shared between views.</p>
+ */
+public class AdaptiveRecycledViewPool extends RecycledViewPool {
+    // Same as RecycledViewPool's default limit.
+    private static final int DEFAULT_MAX_RECYCLED_VIEWS = 5;
+
+    // Number of rows of views worth keeping for each view type.
+    private static final int RECYCLED_ROWS = 2;
+
+    private static class TypeEntry {
+        int maxRecycledViews = DEFAULT_MAX_RECYCLED_VIEWS;
+        int recycledViews;
+
+        int requestCount;
+        int missCount;
+        int dropCount;
+    }
+
+    private final SparseArray<TypeEntry> mTypeEntries = new SparseArray<TypeEntry>();
+    private boolean mAutoSizing = true;
+
+    private TypeEntry getTypeEntry(int viewType) {
+        TypeEntry entry = mTypeEntries.get(viewType);
+        if (entry == null) {
+            entry = new TypeEntry();
+            mTypeEntries.put(viewType, entry);
+        }
+
+        return entry;
+    }
+
+    @Override
+    public ViewHolder getRecycledView(int viewType) {
+        final ViewHolder holder = super.getRecycledView(viewType);
+
+        final TypeEntry entry = getTypeEntry(viewType);
+        entry.requestCount++;
+
+        if (holder != null) {
+            entry.recycledViews = Math.max(0, entry.recycledViews - 1);
+        } else {
+            entry.missCount++;
+        }
+
+        return holder;
+    }
+
+    @Override
+    public void putRecycledView(ViewHolder holder) {
+        final TypeEntry entry = getTypeEntry(holder.getItemViewType());
+        if (entry.recycledViews < entry.maxRecycledViews) {
+            entry.recycledViews++;
+        } else {
+            entry.dropCount++;
+        }
+
+        super.putRecycledView(holder);
+    }
+
+    @Override
+    public void setMaxRecycledViews(int viewType, int max) {
+        final TypeEntry entry = getTypeEntry(viewType);
+        entry.maxRecycledViews = max;
+        entry.recycledViews = Math.min(entry.recycledViews, max);
+
+        super.setMaxRecycledViews(viewType, max);
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < mTypeEntries.size(); i++) {
+            mTypeEntries.valueAt(i).recycledViews = 0;
+        }
+
+        super.clear();
+    }
+
+    /**
+     * Grows the per view type limits to fit the given layout.
+     *
+     * @param laneCount number of lanes in the layout.
+     * @param childCount number of children currently laid out.
+     * @param childCountsByType number of children laid out for each view type.
+     */
+    void onLayout(int laneCount, int childCount, SparseIntArray childCountsByType) {
+        if (!mAutoSizing || laneCount == 0 || childCount == 0) {
+            return;
+        }
+
+        for (int i = 0; i < childCountsByType.size(); i++) {
+            final int viewType = childCountsByType.keyAt(i);
+            final int max =
+                    computeMaxRecycledViews(laneCount, childCount, childCountsByType.valueAt(i));
+
+            if (max > getTypeEntry(viewType).maxRecycledViews) {
+                setMaxRecycledViews(viewType, max);
+            }
+        }
+    }
+
+    /**
+     * Returns the limit for a view type with <code>typeCount</code> of the
+     * <code>childCount</code> children laid out in <code>laneCount</code>
+     * lanes: a few rows worth of views of that type, but never more than
+     * one row on top of the views of that type laid out.
+     */
+    static int computeMaxRecycledViews(int laneCount, int childCount, int typeCount) {
+        // Expected number of views of this type in a row of lanes.
+        final int perRow = (laneCount * typeCount + childCount - 1) / childCount;
+        return Math.min(perRow * RECYCLED_ROWS, typeCount + perRow);
+    }
+
+    /**
+     * Enables or disables automatic sizing of the per view type limits.
+     * Limits set so far are kept when disabled. Enabled by default.
+     */
+    public void setAutoSizing(boolean autoSizing) {
+        mAutoSizing = autoSizing;
+    }
+
+    public boolean isAutoSizing() {
+        return mAutoSizing;
+    }
+
+    public int getMaxRecycledViews(int viewType) {
+        final TypeEntry entry = mTypeEntries.get(viewType);
+        return (entry != null ? entry.maxRecycledViews : DEFAULT_MAX_RECYCLED_VIEWS);
+    }
+
+    /**
+     * Returns how many times a view of the given type was requested
+     * from the pool.
+     */
+    public int getRequestCount(int viewType) {
+        final TypeEntry entry = mTypeEntries.get(viewType);
+        return (entry != null ? entry.requestCount : 0);
+    }
+
+    /**
+     * Returns how many requests for the given view type found the pool
+     * empty, i.e. how many views of that type had to be created.
+     */
+    public int getMissCount(int viewType) {
+        final TypeEntry entry = mTypeEntries.get(viewType);
+        return (entry != null ? entry.missCount : 0);
+    }
+
+    public int getTotalMissCount() {
+        int missCount = 0;
+        for (int i = 0; i < mTypeEntries.size(); i++) {
+            missCount += mTypeEntries.valueAt(i).missCount;
+        }
+
+        return missCount;
+    }
+
+    /**
+     * Returns how many recycled views of the given type were discarded
+     * because the pool was already full for that type.
+     */
+    public int getDropCount(int viewType) {
+        final TypeEntry entry = mTypeEntries.get(viewType);
+        return (entry != null ? entry.dropCount : 0);
+    }
+
+    public void resetCounters() {
+        for (int i = 0; i < mTypeEntries.size(); i++) {
+            final TypeEntry entry = mTypeEntries.valueAt(i);
+            entry.requestCount = 0;
+            entry.missCount = 0;
+            entry.dropCount = 0;
+        }
+    }
+}
@@ -17,27 +17,106 @@
 package org.lucasr.twowayview.widget;
 
 import android.content.Context;
+import android.content.res.TypedArray;
 import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.RecyclerView.Adapter;
 import android.support.v7.widget.RecyclerView.LayoutParams;
+import android.support.v7.widget.RecyclerView.RecycledViewPool;
 import android.support.v7.widget.RecyclerView.Recycler;
 import android.support.v7.widget.RecyclerView.State;
 import android.util.AttributeSet;
+import android.util.SparseIntArray;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewGroup.MarginLayoutParams;
 
+import org.lucasr.twowayview.MemoryUsage;
 import org.lucasr.twowayview.TwoWayLayoutManager;
+import org.lucasr.twowayview.widget.ChildLaneIndex.ChildBounds;
 import org.lucasr.twowayview.widget.Lanes.LaneInfo;
 
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import static org.lucasr.twowayview.widget.ItemLaneFlags.FLAG_FIRST_IN_LANE;
+import static org.lucasr.twowayview.widget.ItemLaneFlags.FLAG_RESOLVED;
+import static org.lucasr.twowayview.widget.ItemLaneFlags.FLAG_SECOND_LANE;
 import static org.lucasr.twowayview.widget.Lanes.calculateLaneSize;
 
 public abstract class BaseLayoutManager extends TwoWayLayoutManager {
     private static final String LOGTAG = "BaseLayoutManager";
 
+    private static final int ITEM_SIZE_PREFETCH_PAGES = 3;
+
+    // Time without scrolling after which item entries are trimmed.
+    private static final long ITEM_ENTRIES_TRIM_SETTLE_DELAY = 200;
+
+    /**
+     * Memory usage categories, see {@link #getMemoryUsage()}.
+     */
+    public static final String MEMORY_ITEM_ENTRIES = "itemEntries";
+    public static final String MEMORY_SPAN_MARGINS = "spanMargins";
+    public static final String MEMORY_ITEM_ENTRIES_SPARE = "itemEntriesSpare";
+    public static final String MEMORY_LANES = "lanes";
+    public static final String MEMORY_PENDING_STATE = "pendingState";
+    public static final String MEMORY_ITEM_LANE_FLAGS = "itemLaneFlags";
+    public static final String MEMORY_MEASURE_CACHE = "measureCache";
+    public static final String MEMORY_CHILD_INDEX = "childIndex";
+    public static final String MEMORY_TRIMMED_ITEM_LANES = "trimmedItemLanes";
+
+    /**
+     * Where the layout should come to rest after a fling or a drag.
+     *
+     * @see #setSnapMode(SnapMode)
+     */
+    public static enum SnapMode {
+        NONE,
+        ITEM_START,
+        ITEM_CENTER,
+        PAGE
+    }
+
+    /**
+     * Adapters can implement this interface to identify the content bound
+     * to each position. Items with the same content key, lane span and lane
+     * size are assumed to have the same measured dimensions when the measure
+     * cache is enabled. Return {@link RecyclerView#NO_ID} for items that
+     * should always be measured.
+     *
+     * @see #setMeasureCacheEnabled(boolean)
+     */
+    public interface ItemContentKeyProvider {
+        long getItemContentKey(int position);
+    }
+
+    /**
+     * Provides item sizes computed from adapter data alone e.g. from known
+     * image aspect ratios or precomputed text layouts. All methods are called
+     * on the executor passed to {@link #setItemSizeProvider(ItemSizeProvider, Executor)}
+     * and must be safe to call off the main thread.
+     */
+    public interface ItemSizeProvider {
+        int NO_SIZE = -1;
+
+        /**
+         * Returns the number of lanes spanned by the item at the given position.
+         */
+        int getItemLaneSpan(int position);
+
+        /**
+         * Returns the size of the item at the given position along the
+         * scrolling direction, including margins and decorations, or
+         * {@link #NO_SIZE} if it can only be known by measuring its view.
+         */
+        int getItemSize(int position, int laneSpan, int laneSize);
+    }
+
     protected static class ItemEntry implements Parcelable {
         public int startLane;
         public int anchorLane;
@@ -95,7 +174,19 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
             return (spanMargins != null);
         }
 
-        private int getSpanMargin(int index) {
+        int getSpanMarginCount() {
+            return (spanMargins != null ? spanMargins.length : 0);
+        }
+
+        /**
+         * Returns the total size of the entry's fields, used to estimate
+         * its memory usage. Subclasses should add their own fields.
+         */
+        int getFieldsSize() {
+            return 2 * MemoryUsage.INT_SIZE + MemoryUsage.REFERENCE_SIZE;
+        }
+
+        int getSpanMargin(int index) {
             if (spanMargins == null) {
                 return 0;
             }
@@ -103,7 +194,7 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
             return spanMargins[index];
         }
 
-        private void setSpanMargin(int index, int margin, int span) {
+        void setSpanMargin(int index, int margin, int span) {
             if (spanMargins == null) {
                 spanMargins = new int[span];
             }
@@ -137,17 +228,156 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
 
     private ItemEntries mItemEntries;
     private ItemEntries mItemEntriesToRestore;
+    private int mItemEntriesWindow;
+    private long mLastScrollTime;
+    private boolean mTrimItemEntriesScheduled;
+
+    private final Runnable mTrimItemEntriesRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final long idleTime = SystemClock.uptimeMillis() - mLastScrollTime;
+            if (idleTime < ITEM_ENTRIES_TRIM_SETTLE_DELAY) {
+                mHandler.postDelayed(this, ITEM_ENTRIES_TRIM_SETTLE_DELAY - idleTime);
+                return;
+            }
+
+            mTrimItemEntriesScheduled = false;
+            trimItemEntries();
+        }
+    };
+
+    private final ItemLaneFlags mItemLaneFlags = new ItemLaneFlags();
+
+    private MeasureCache mMeasureCache;
+
+    private int mVerticalSpacing;
+    private int mHorizontalSpacing;
+    private int mEdgePadding;
+
+    private boolean mHasFixedItemSize;
+    private int mFixedItemSize;
+
+    // Measured sizes of the first child of each view type in fixed item
+    // size mode, see measureChildWithFixedItemSize().
+    private final SparseIntArray mFixedItemWidths = new SparseIntArray();
+    private final SparseIntArray mFixedItemHeights = new SparseIntArray();
+
+    private ItemSizeLoader mItemSizeLoader;
+
+    // Shared by all main thread callbacks of the layout and its helpers.
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final Executor mMainThreadExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mHandler.post(command);
+        }
+    };
+
+    private final ResizeDebouncer.Scheduler mMainThreadScheduler =
+            new ResizeDebouncer.Scheduler() {
+        @Override
+        public void schedule(Runnable runnable, long delayMillis) {
+            mHandler.postDelayed(runnable, delayMillis);
+        }
+
+        @Override
+        public void cancel(Runnable runnable) {
+            mHandler.removeCallbacks(runnable);
+        }
+    };
+
+    private final ResizeDebouncer<Lanes> mResizeDebouncer =
+            new ResizeDebouncer<Lanes>(mMainThreadScheduler, new Runnable() {
+        @Override
+        public void run() {
+            requestLayout();
+        }
+    });
+
+    private final ItemSnapper mItemSnapper = new ItemSnapper();
+
+    private final SmoothScrollJump.ItemExtents mKnownItemExtents =
+            new SmoothScrollJump.ItemExtents() {
+        @Override
+        public int getItemExtent(int position) {
+            return getKnownItemExtent(position);
+        }
+    };
 
     protected final Rect mChildFrame = new Rect();
     protected final Rect mTempRect = new Rect();
     protected final LaneInfo mTempLaneInfo = new LaneInfo();
 
+    private final LaneInfo mFlagsLaneInfo = new LaneInfo();
+    private final ChildLaneIndex<View> mChildLaneIndex = new ChildLaneIndex<View>();
+
+    // Children take whole lanes across, so the lanes they cover follow
+    // from their decorated edges.
+    private final ChildBounds<View> mChildBounds = new ChildBounds<View>() {
+        @Override
+        public int getChildCount() {
+            return BaseLayoutManager.this.getChildCount();
+        }
+
+        @Override
+        public View getChildAt(int index) {
+            return BaseLayoutManager.this.getChildAt(index);
+        }
+
+        @Override
+        public int getChildStart(View child) {
+            return (isVertical() ? getDecoratedTop(child) : getDecoratedLeft(child));
+        }
+
+        @Override
+        public int getChildEnd(View child) {
+            return (isVertical() ? getDecoratedBottom(child) : getDecoratedRight(child));
+        }
+
+        @Override
+        public int getLaneCount() {
+            return mLanes.getCount();
+        }
+
+        @Override
+        public int getStartLane(View child) {
+            final int crossStart = (isVertical() ? getDecoratedLeft(child) : getDecoratedTop(child));
+            return Math.max(0, mLanes.getLaneAt(crossStart));
+        }
+
+        @Override
+        public int getEndLane(View child) {
+            final int crossEnd =
+                    (isVertical() ? getDecoratedRight(child) : getDecoratedBottom(child));
+            return Math.max(getStartLane(child), mLanes.getLaneAt(crossEnd - 1));
+        }
+
+        @Override
+        public int getLaneAt(int crossCoordinate) {
+            return mLanes.getLaneAt(crossCoordinate);
+        }
+    };
+    private final SparseIntArray mTempChildCountsByType = new SparseIntArray();
+
     public BaseLayoutManager(Context context, AttributeSet attrs) {
         this(context, attrs, 0);
     }
 
     public BaseLayoutManager(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
+
+        final TypedArray a =
+                context.obtainStyledAttributes(attrs, R.styleable.twowayview_BaseLayoutManager, defStyle, 0);
+
+        mVerticalSpacing = Math.max(0,
+                a.getDimensionPixelSize(R.styleable.twowayview_BaseLayoutManager_twowayview_verticalSpacing, 0));
+        mHorizontalSpacing = Math.max(0,
+                a.getDimensionPixelSize(R.styleable.twowayview_BaseLayoutManager_twowayview_horizontalSpacing, 0));
+        mEdgePadding = Math.max(0,
+                a.getDimensionPixelSize(R.styleable.twowayview_BaseLayoutManager_twowayview_edgePadding, 0));
+
+        a.recycle();
     }
 
     public BaseLayoutManager(Orientation orientation) {
@@ -199,6 +429,109 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
         return (getOrientation() == Orientation.VERTICAL);
     }
 
+    /**
+     * Returns the gutter between adjacent lanes.
+     */
+    int getLaneSpacing() {
+        return (isVertical() ? mHorizontalSpacing : mVerticalSpacing);
+    }
+
+    /**
+     * Returns the spacing between consecutive items in the same lane.
+     */
+    int getItemSpacing() {
+        return (isVertical() ? mVerticalSpacing : mHorizontalSpacing);
+    }
+
+    int getEdgePadding() {
+        return mEdgePadding;
+    }
+
+    /**
+     * Returns the size shared by all items along the scrolling direction,
+     * or 0 if items don't have a fixed size or it's not known yet.
+     */
+    int getFixedItemSize() {
+        return (mHasFixedItemSize ? mFixedItemSize : 0);
+    }
+
+    private void resolveFixedItemSize(View child) {
+        if (!mHasFixedItemSize || mFixedItemSize > 0) {
+            return;
+        }
+
+        mFixedItemSize =
+                (isVertical() ? getDecoratedMeasuredHeight(child) : getDecoratedMeasuredWidth(child));
+    }
+
+    private void clearFixedItemSize() {
+        mFixedItemSize = 0;
+        mFixedItemWidths.clear();
+        mFixedItemHeights.clear();
+    }
+
+    /**
+     * Items have the same size along the scrolling direction in fixed item
+     * size mode, and they match the lane size across it, so children only
+     * have to be measured for real once per view type. The others are
+     * measured with the cached size as exact dimensions, which
+     * View.measure() skips if their specs didn't change since their last
+     * measure pass.
+     */
+    private void measureChildWithFixedItemSize(View child) {
+        final Adapter adapter = getAdapter();
+        final int viewType = (adapter != null ? adapter.getItemViewType(getPosition(child)) : 0);
+
+        final int index = mFixedItemWidths.indexOfKey(viewType);
+        if (index >= 0) {
+            measureChildFromCache(child, mFixedItemWidths.valueAt(index),
+                    mFixedItemHeights.valueAt(index));
+            resolveFixedItemSize(child);
+            return;
+        }
+
+        measureChildWithMargins(child);
+        resolveFixedItemSize(child);
+
+        mFixedItemWidths.put(viewType, child.getMeasuredWidth());
+        mFixedItemHeights.put(viewType, child.getMeasuredHeight());
+    }
+
+    private int getFixedItemPitch() {
+        return mFixedItemSize + mLanes.getItemSpacing();
+    }
+
+    private int getFixedItemRowCount(int itemCount) {
+        final int laneCount = mLanes.getCount();
+        return (itemCount + laneCount - 1) / laneCount;
+    }
+
+    private int computeFixedItemScrollOffset() {
+        if (getChildCount() == 0) {
+            return 0;
+        }
+
+        final int firstRow = getFirstVisiblePosition() / mLanes.getCount();
+        final int firstChildStart = getChildStart(getChildAt(0));
+
+        return (firstRow * getFixedItemPitch()) + getStartWithPadding() - firstChildStart;
+    }
+
+    private int computeFixedItemScrollExtent() {
+        if (getChildCount() == 0) {
+            return 0;
+        }
+
+        return getEndWithPadding() - getStartWithPadding();
+    }
+
+    private int computeFixedItemScrollRange(State state) {
+        // Lanes add the item spacing after every item, the last row
+        // doesn't have anything after it though.
+        final int rowCount = getFixedItemRowCount(state.getItemCount());
+        return Math.max(0, rowCount * getFixedItemPitch() - mLanes.getItemSpacing());
+    }
+
     Lanes getLanes() {
         return mLanes;
     }
@@ -213,28 +546,298 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
         return (mItemEntries != null ? mItemEntries.getItemEntry(position) : null);
     }
 
+    /**
+     * Sets the lanes the item at the given position was laid out in before
+     * its entry got trimmed out of the window on the given entry.
+     *
+     * @return <code>true</code> if they were known.
+     */
+    boolean restoreTrimmedItemLanes(int position, ItemEntry entry) {
+        return (mItemEntries != null && mItemEntries.restoreTrimmedLanes(position, entry));
+    }
+
     void clearItemEntries() {
         if (mItemEntries != null) {
             mItemEntries.clear();
         }
+
+        mItemLaneFlags.clear();
     }
 
     void invalidateItemLanesAfter(int position) {
         if (mItemEntries != null) {
             mItemEntries.invalidateItemLanesAfter(position);
         }
+
+        mItemLaneFlags.invalidateAfter(position);
     }
 
     void offsetForAddition(int positionStart, int itemCount) {
         if (mItemEntries != null) {
             mItemEntries.offsetForAddition(positionStart, itemCount);
         }
+
+        mItemLaneFlags.invalidateAfter(positionStart);
+
+        if (mItemSizeLoader != null) {
+            mItemSizeLoader.offsetForAddition(positionStart, itemCount);
+        }
     }
 
     void offsetForRemoval(int positionStart, int itemCount) {
         if (mItemEntries != null) {
             mItemEntries.offsetForRemoval(positionStart, itemCount);
         }
+
+        mItemLaneFlags.invalidateAfter(positionStart);
+
+        if (mItemSizeLoader != null) {
+            mItemSizeLoader.offsetForRemoval(positionStart, itemCount);
+        }
+    }
+
+    private int resolveItemLaneFlags(int position) {
+        final int laneCount = mLanes.getCount();
+        final LaneInfo laneInfo = mFlagsLaneInfo;
+
+        int flags = FLAG_RESOLVED;
+
+        // An item starts a lane if the items before it
+        // don't fill a whole row of lanes.
+        if (position < laneCount) {
+            int count = 0;
+            for (int i = 0; i < position && count < laneCount; i++) {
+                count += getLaneSpanForPosition(i);
+            }
+
+            if (count < laneCount) {
+                flags |= FLAG_FIRST_IN_LANE;
+            }
+        }
+
+        getLaneForPosition(laneInfo, position, Direction.END);
+        final int lane = laneInfo.startLane;
+        if (lane == Lanes.NO_LANE) {
+            flags &= ~FLAG_RESOLVED;
+        }
+
+        // An item is in the second lane if it's placed right after the
+        // item in the first lane, taking item spans into account.
+        if (lane > 0) {
+            int previousPosition = position - 1;
+            while (previousPosition >= 0) {
+                getLaneForPosition(laneInfo, previousPosition, Direction.END);
+                if (laneInfo.startLane != lane) {
+                    break;
+                }
+
+                previousPosition--;
+            }
+
+            if (previousPosition >= 0) {
+                final int previousLane = laneInfo.startLane;
+                if (previousLane == Lanes.NO_LANE) {
+                    flags &= ~FLAG_RESOLVED;
+                } else if (previousLane == 0 &&
+                        lane == getLaneSpanForPosition(previousPosition)) {
+                    flags |= FLAG_SECOND_LANE;
+                }
+            }
+        }
+
+        // Don't cache flags computed from unknown lanes, they'll be
+        // resolved again once the lanes are known.
+        if ((flags & FLAG_RESOLVED) != 0) {
+            mItemLaneFlags.setFlags(position, flags);
+        }
+
+        return flags;
+    }
+
+    private int getItemLaneFlags(int position) {
+        final int flags = mItemLaneFlags.getFlags(position);
+        if ((flags & FLAG_RESOLVED) != 0) {
+            return flags;
+        }
+
+        return resolveItemLaneFlags(position);
+    }
+
+    private int[] getLastPositionsInLanes(int itemCount) {
+        final int laneCount = mLanes.getCount();
+
+        int[] lastPositions = mItemLaneFlags.getLastPositions(laneCount, itemCount);
+        if (lastPositions != null) {
+            return lastPositions;
+        }
+
+        lastPositions = new int[laneCount];
+        Arrays.fill(lastPositions, RecyclerView.NO_POSITION);
+
+        int remaining = laneCount;
+        int blockedAt = RecyclerView.NO_POSITION;
+
+        for (int position = itemCount - 1; position >= 0 && remaining > 0; position--) {
+            getLaneForPosition(mFlagsLaneInfo, position, Direction.END);
+
+            final int lane = mFlagsLaneInfo.startLane;
+            if (lane == Lanes.NO_LANE) {
+                blockedAt = position;
+                break;
+            }
+
+            final int laneSpan = getLaneSpanForPosition(position);
+            for (int l = lane; l < lane + laneSpan; l++) {
+                if (lastPositions[l] == RecyclerView.NO_POSITION) {
+                    lastPositions[l] = position;
+                    remaining--;
+                }
+            }
+        }
+
+        mItemLaneFlags.setLastPositions(lastPositions, itemCount, blockedAt);
+        return lastPositions;
+    }
+
+    /**
+     * Checks whether the given position is placed at the start of a layout lane.
+     */
+    boolean isFirstChildInLane(int position) {
+        return ((getItemLaneFlags(position) & FLAG_FIRST_IN_LANE) != 0);
+    }
+
+    /**
+     * Checks whether the given position is placed just after the item in the
+     * first lane of the layout taking items spans into account.
+     */
+    boolean isSecondLane(int position) {
+        return ((getItemLaneFlags(position) & FLAG_SECOND_LANE) != 0);
+    }
+
+    /**
+     * Checks whether the given position is placed at the end of all the
+     * lanes it spans. Items whose lanes are not known yet are assumed not
+     * to be at the end.
+     */
+    boolean isLastChildInLane(int position, int itemCount) {
+        getLaneForPosition(mFlagsLaneInfo, position, Direction.END);
+
+        final int lane = mFlagsLaneInfo.startLane;
+        if (lane == Lanes.NO_LANE) {
+            return false;
+        }
+
+        final int laneSpan = getLaneSpanForPosition(position);
+        final int[] lastPositions = getLastPositionsInLanes(itemCount);
+
+        for (int l = lane; l < lane + laneSpan; l++) {
+            if (lastPositions[l] != position) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the size provided by the {@link ItemSizeProvider} for the given
+     * position, or {@link ItemSizeProvider#NO_SIZE} if it has not been loaded
+     * for the current lanes yet.
+     */
+    int getProvidedItemSize(int position) {
+        if (mItemSizeLoader == null || mLanes == null ||
+                mItemSizeLoader.getLaneSize() != mLanes.getLaneSize()) {
+            return ItemSizeProvider.NO_SIZE;
+        }
+
+        return mItemSizeLoader.getSize(position);
+    }
+
+    /**
+     * Returns the space taken by the item at the given position along the
+     * scrolling direction, including item spacing, multiplied by its lane
+     * span. Returns {@link ItemSizeProvider#NO_SIZE} if it can't be known
+     * without binding the item.
+     */
+    int getKnownItemExtent(int position) {
+        final int itemSpacing = mLanes.getItemSpacing();
+
+        final int fixedItemSize = getFixedItemSize();
+        if (fixedItemSize > 0) {
+            return fixedItemSize + itemSpacing;
+        }
+
+        final int size = getProvidedItemSize(position);
+        if (size == ItemSizeProvider.NO_SIZE) {
+            return ItemSizeProvider.NO_SIZE;
+        }
+
+        return (size + itemSpacing) * Math.max(1, getProvidedItemLaneSpan(position));
+    }
+
+    int getProvidedItemLaneSpan(int position) {
+        if (getProvidedItemSize(position) == ItemSizeProvider.NO_SIZE) {
+            return 0;
+        }
+
+        return mItemSizeLoader.getSpan(position);
+    }
+
+    Handler getMainHandler() {
+        return mHandler;
+    }
+
+    Executor getItemSizeExecutor() {
+        return (mItemSizeLoader != null ? mItemSizeLoader.getExecutor() : null);
+    }
+
+    private void loadItemSizes(State state) {
+        // Provided sizes are keyed by lane size, don't bother loading
+        // them for lanes that are about to be replaced.
+        if (mItemSizeLoader == null || mLanes == null || mResizeDebouncer.isResizing()) {
+            return;
+        }
+
+        mItemSizeLoader.setLanes(mLanes.getLaneSize(), mLanes.getCount());
+
+        // Request sizes a few screens ahead of the viewport in both
+        // directions so that they're available before views get bound.
+        final int childCount = getChildCount();
+        final int prefetchCount = Math.max(childCount, mLanes.getCount()) * ITEM_SIZE_PREFETCH_PAGES;
+
+        final int start = Math.max(0, getFirstVisiblePosition() - prefetchCount);
+        final int end = Math.min(state.getItemCount(),
+                getFirstVisiblePosition() + childCount + prefetchCount);
+
+        mItemSizeLoader.load(start, end);
+    }
+
+    private long getItemContentKey(int position) {
+        final Adapter adapter = getAdapter();
+        if (adapter == null) {
+            return RecyclerView.NO_ID;
+        }
+
+        if (adapter instanceof ItemContentKeyProvider) {
+            return ((ItemContentKeyProvider) adapter).getItemContentKey(position);
+        } else if (adapter.hasStableIds()) {
+            return adapter.getItemId(position);
+        }
+
+        return RecyclerView.NO_ID;
+    }
+
+    private void invalidateMeasureCache(int positionStart, int itemCount) {
+        if (mMeasureCache == null) {
+            return;
+        }
+
+        for (int i = positionStart; i < positionStart + itemCount; i++) {
+            final long key = getItemContentKey(i);
+            if (key != RecyclerView.NO_ID) {
+                mMeasureCache.invalidate(key);
+            }
+        }
     }
 
     private void requestMoveLayout() {
@@ -259,29 +862,116 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
 
         return (lanes.getOrientation() == getOrientation() &&
                  lanes.getCount() == laneCount &&
-                 lanes.getLaneSize() == laneSize);
+                 lanes.getLaneSize() == laneSize &&
+                 lanes.getLaneSpacing() == getLaneSpacing() &&
+                 lanes.getItemSpacing() == getItemSpacing() &&
+                 lanes.getEdgePadding() == getEdgePadding());
+    }
+
+    private boolean isLaneSizeOnlyChange(Lanes lanes) {
+        return (lanes.getOrientation() == getOrientation() &&
+                lanes.getCount() == getLaneCount() &&
+                lanes.getLaneSpacing() == getLaneSpacing() &&
+                lanes.getItemSpacing() == getItemSpacing() &&
+                lanes.getEdgePadding() == getEdgePadding());
+    }
+
+    /**
+     * Creates lanes for the current size starting where the current lanes
+     * start, so that the layout can be filled again from the first child
+     * without moving the layout to it.
+     */
+    private Lanes createProvisionalLanes() {
+        final Lanes lanes = new Lanes(this, mLanes.getCount());
+        final boolean isVertical = isVertical();
+
+        for (int i = 0; i < lanes.getCount(); i++) {
+            mLanes.getLane(i, mTempRect);
+            final int oldStart = (isVertical ? mTempRect.top : mTempRect.left);
+
+            lanes.getLane(i, mTempRect);
+            lanes.offset(i, oldStart - (isVertical ? mTempRect.top : mTempRect.left));
+        }
+
+        return lanes;
+    }
+
+    private void handleContinuousResize() {
+        if (!mResizeDebouncer.isEnabled() || mResizeDebouncer.isSettled() || mLanes == null ||
+                mLanesToRestore != null || getChildCount() == 0 || getWidth() == 0 ||
+                getHeight() == 0 || canUseLanes(mLanes) || !isLaneSizeOnlyChange(mLanes)) {
+            return;
+        }
+
+        // Restore provisional lanes and keep item entries untouched until
+        // the size settles, the layout is then refreshed once from the
+        // lanes we had before the resize started.
+        mLanesToRestore = createProvisionalLanes();
+        mItemEntriesToRestore = mItemEntries;
+
+        mResizeDebouncer.onResize(mLanes);
+    }
+
+    private void rescaleItemEntries(Lanes oldLanes) {
+        final int firstPosition = mItemEntries.getFirstPosition();
+        final int count = firstPosition + mItemEntries.size();
+        for (int i = firstPosition; i < count; i++) {
+            final ItemEntry entry = mItemEntries.getItemEntry(i);
+            if (entry != null && !rescaleItemEntry(entry, i, oldLanes)) {
+                mItemEntries.putItemEntry(i, null);
+            }
+        }
     }
 
     private boolean ensureLayoutState() {
         final int laneCount = getLaneCount();
-        if (laneCount == 0 || getWidth() == 0 || getHeight() == 0 || canUseLanes(mLanes)) {
+        if (laneCount == 0 || getWidth() == 0 || getHeight() == 0 ||
+                (canUseLanes(mLanes) && !mResizeDebouncer.isSettled())) {
             return false;
         }
 
-        final Lanes oldLanes = mLanes;
+        final Lanes lanesBeforeResize = mResizeDebouncer.finish();
+        final Lanes oldLanes = (lanesBeforeResize != null ? lanesBeforeResize : mLanes);
         mLanes = new Lanes(this, laneCount);
 
+        mItemLaneFlags.clear();
+
+        // Item sizes might depend on the lane size, resolve them again
+        // only if it changed.
+        if (oldLanes == null || oldLanes.getOrientation() != mLanes.getOrientation() ||
+                oldLanes.getLaneSize() != mLanes.getLaneSize()) {
+            clearFixedItemSize();
+        }
+
         requestMoveLayout();
 
         if (mItemEntries == null) {
             mItemEntries = new ItemEntries();
         }
 
-        if (oldLanes != null && oldLanes.getOrientation() == mLanes.getOrientation() &&
-                oldLanes.getLaneSize() == mLanes.getLaneSize()) {
+        final boolean sameLaneGeometry = (oldLanes != null &&
+                oldLanes.getOrientation() == mLanes.getOrientation() &&
+                oldLanes.getCount() == mLanes.getCount());
+
+        if (sameLaneGeometry && oldLanes.getLaneSize() == mLanes.getLaneSize()) {
+            invalidateItemLanesAfter(0);
+        } else if (sameLaneGeometry && canRescaleItemEntries()) {
+            rescaleItemEntries(oldLanes);
             invalidateItemLanesAfter(0);
         } else {
-            mItemEntries.clear();
+            clearItemEntries();
+        }
+
+        // Cached and provided dimensions are only keyed by lane size, so
+        // they can't be trusted anymore after an orientation change.
+        if (oldLanes != null && oldLanes.getOrientation() != mLanes.getOrientation()) {
+            if (mMeasureCache != null) {
+                mMeasureCache.clear();
+            }
+
+            if (mItemSizeLoader != null) {
+                mItemSizeLoader.clear();
+            }
         }
 
         return true;
@@ -332,8 +1022,25 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
         }
     }
 
+    @Override
+    protected boolean canKeepChildrenInPreLayout(State state) {
+        // Lanes and item entries have to be left untouched too, so bail if
+        // they're about to be replaced or refreshed.
+        return (super.canKeepChildrenInPreLayout(state) && mLanesToRestore == null &&
+                canUseLanes(mLanes));
+    }
+
     @Override
     public void onLayoutChildren(Recycler recycler, State state) {
+        mChildLaneIndex.invalidate();
+
+        if (state.isPreLayout() && canKeepChildrenInPreLayout(state)) {
+            super.onLayoutChildren(recycler, state);
+            return;
+        }
+
+        handleContinuousResize();
+
         final boolean restoringLanes = (mLanesToRestore != null);
         if (restoringLanes) {
             mLanes = mLanesToRestore;
@@ -341,6 +1048,8 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
 
             mLanesToRestore = null;
             mItemEntriesToRestore = null;
+
+            mItemLaneFlags.clear();
         }
 
         final boolean refreshingLanes = ensureLayoutState();
@@ -367,6 +1076,211 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
         mLanes.reset(Direction.START);
 
         super.onLayoutChildren(recycler, state);
+
+        loadItemSizes(state);
+
+        if (!state.isPreLayout()) {
+            trimItemEntries();
+            tuneRecycledViewPool();
+        }
+    }
+
+    /**
+     * Entries are allowed to cover up to twice the window on each side of
+     * the visible items before they're trimmed back to the window, so that
+     * the entries array isn't compacted every time a few items scroll by.
+     */
+    private boolean shouldTrimItemEntries() {
+        if (mItemEntriesWindow == 0 || mItemEntries == null || mItemEntries.size() == 0 ||
+                getChildCount() == 0) {
+            return false;
+        }
+
+        final long firstPosition = mItemEntries.getFirstPosition();
+        final long lastPosition = firstPosition + mItemEntries.size();
+
+        return (firstPosition < (long) getFirstVisiblePosition() - 2L * mItemEntriesWindow ||
+                lastPosition > (long) getLastVisiblePosition() + 1 + 2L * mItemEntriesWindow);
+    }
+
+    /**
+     * Trims item entries once scrolling settles, instead of on every
+     * scroll frame.
+     */
+    private void scheduleTrimItemEntries() {
+        mLastScrollTime = SystemClock.uptimeMillis();
+
+        if (!mTrimItemEntriesScheduled && shouldTrimItemEntries()) {
+            mTrimItemEntriesScheduled = true;
+            mHandler.postDelayed(mTrimItemEntriesRunnable, ITEM_ENTRIES_TRIM_SETTLE_DELAY);
+        }
+    }
+
+    private void trimItemEntries() {
+        if (!shouldTrimItemEntries()) {
+            return;
+        }
+
+        final int startPosition = getFirstVisiblePosition() - mItemEntriesWindow;
+        int endPosition = getLastVisiblePosition() + 1 + mItemEntriesWindow;
+        if (endPosition < 0) {
+            endPosition = Integer.MAX_VALUE;
+        }
+
+        mItemEntries.trim(startPosition, endPosition);
+    }
+
+    private void tuneRecycledViewPool() {
+        final RecycledViewPool pool = getRecycledViewPool();
+        if (!(pool instanceof AdaptiveRecycledViewPool)) {
+            return;
+        }
+
+        final Adapter adapter = getAdapter();
+        final int childCount = getChildCount();
+        if (adapter == null || childCount == 0) {
+            return;
+        }
+
+        final SparseIntArray childCountsByType = mTempChildCountsByType;
+        childCountsByType.clear();
+
+        for (int i = 0; i < childCount; i++) {
+            final int viewType = adapter.getItemViewType(getPosition(getChildAt(i)));
+            childCountsByType.put(viewType, childCountsByType.get(viewType) + 1);
+        }
+
+        ((AdaptiveRecycledViewPool) pool).onLayout(mLanes.getCount(), childCount,
+                childCountsByType);
+    }
+
+    @Override
+    public int scrollHorizontallyBy(int dx, Recycler recycler, State state) {
+        final int scrolled = super.scrollHorizontallyBy(dx, recycler, state);
+        loadItemSizes(state);
+        scheduleTrimItemEntries();
+        return scrolled;
+    }
+
+    @Override
+    public int scrollVerticallyBy(int dy, Recycler recycler, State state) {
+        final int scrolled = super.scrollVerticallyBy(dy, recycler, state);
+        loadItemSizes(state);
+        scheduleTrimItemEntries();
+        return scrolled;
+    }
+
+    @Override
+    public void onDetachedFromWindow(RecyclerView view, Recycler recycler) {
+        super.onDetachedFromWindow(view, recycler);
+        mChildLaneIndex.clear();
+
+        mHandler.removeCallbacks(mTrimItemEntriesRunnable);
+        mTrimItemEntriesScheduled = false;
+    }
+
+    /**
+     * Finds the child under the given point with a binary search in the
+     * lane containing it. The lookup index is built lazily after each
+     * layout pass and kept up to date as children are added and recycled
+     * while scrolling. Children are matched against their laid out bounds,
+     * so children translated out of their lane (e.g. while animating) might
+     * not be found.
+     */
+    @Override
+    public View findChildViewUnder(float x, float y) {
+        if (mLanes == null) {
+            return super.findChildViewUnder(x, y);
+        }
+
+        if (!mChildLaneIndex.isValid(mChildBounds)) {
+            mChildLaneIndex.build(mChildBounds);
+        }
+
+        final boolean isVertical = isVertical();
+        final int crossCoordinate = (int) (isVertical ? x : y);
+        final int coordinate = (int) (isVertical ? y : x);
+
+        View child = mChildLaneIndex.findChild(mChildBounds, crossCoordinate, coordinate);
+
+        // Children might be removed without going through the layout, e.g.
+        // by item animations, rebuild the index if it's holding one.
+        if (child != null && child.getParent() == null) {
+            mChildLaneIndex.build(mChildBounds);
+            child = mChildLaneIndex.findChild(mChildBounds, crossCoordinate, coordinate);
+        }
+
+        return (child != null && isChildUnder(child, x, y) ? child : null);
+    }
+
+    @Override
+    protected int getSmoothScrollJumpPosition(int targetPosition) {
+        final int jumpPosition = super.getSmoothScrollJumpPosition(targetPosition);
+        if (jumpPosition == RecyclerView.NO_POSITION || mLanes == null) {
+            return jumpPosition;
+        }
+
+        // Cover the screens we want to animate through with the known
+        // item extents, the item count estimate is used otherwise.
+        final int distance = (getEndWithPadding() - getStartWithPadding()) *
+                SMOOTH_SCROLL_JUMP_SCREENS * mLanes.getCount();
+
+        return SmoothScrollJump.findJumpPosition(mKnownItemExtents, targetPosition,
+                getFirstVisiblePosition(), getLastVisiblePosition(), distance, jumpPosition);
+    }
+
+    @Override
+    public int computeHorizontalScrollOffset(State state) {
+        if (getFixedItemSize() > 0 && !isVertical()) {
+            return computeFixedItemScrollOffset();
+        }
+
+        return super.computeHorizontalScrollOffset(state);
+    }
+
+    @Override
+    public int computeVerticalScrollOffset(State state) {
+        if (getFixedItemSize() > 0 && isVertical()) {
+            return computeFixedItemScrollOffset();
+        }
+
+        return super.computeVerticalScrollOffset(state);
+    }
+
+    @Override
+    public int computeHorizontalScrollExtent(State state) {
+        if (getFixedItemSize() > 0 && !isVertical()) {
+            return computeFixedItemScrollExtent();
+        }
+
+        return super.computeHorizontalScrollExtent(state);
+    }
+
+    @Override
+    public int computeVerticalScrollExtent(State state) {
+        if (getFixedItemSize() > 0 && isVertical()) {
+            return computeFixedItemScrollExtent();
+        }
+
+        return super.computeVerticalScrollExtent(state);
+    }
+
+    @Override
+    public int computeHorizontalScrollRange(State state) {
+        if (getFixedItemSize() > 0 && !isVertical()) {
+            return computeFixedItemScrollRange(state);
+        }
+
+        return super.computeHorizontalScrollRange(state);
+    }
+
+    @Override
+    public int computeVerticalScrollRange(State state) {
+        if (getFixedItemSize() > 0 && isVertical()) {
+            return computeFixedItemScrollRange(state);
+        }
+
+        return super.computeVerticalScrollRange(state);
     }
 
     @Override
@@ -390,6 +1304,12 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
 
     @Override
     public void onItemsUpdated(RecyclerView recyclerView, int positionStart, int itemCount) {
+        invalidateMeasureCache(positionStart, itemCount);
+
+        if (mItemSizeLoader != null) {
+            mItemSizeLoader.invalidate(positionStart, itemCount);
+        }
+
         handleUpdate(positionStart, itemCount, UpdateOp.UPDATE);
         super.onItemsUpdated(recyclerView, positionStart, itemCount);
     }
@@ -403,6 +1323,17 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
     @Override
     public void onItemsChanged(RecyclerView recyclerView) {
         clearItemEntries();
+
+        // Stable ids don't say anything about the bound content, only
+        // adapter-provided content keys survive a full data set change.
+        if (mMeasureCache != null && !(getAdapter() instanceof ItemContentKeyProvider)) {
+            mMeasureCache.clear();
+        }
+
+        if (mItemSizeLoader != null) {
+            mItemSizeLoader.clear();
+        }
+
         super.onItemsChanged(recyclerView);
     }
 
@@ -426,6 +1357,24 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
         return state;
     }
 
+    /**
+     * Same as {@link #onSaveInstanceState()} but the item entries are handed
+     * over to the returned state instead of being shared with it, so that
+     * the state stays untouched once this layout manager moves on to a
+     * different set of items e.g. when a nested view gets rebound.
+     */
+    Parcelable detachInstanceState() {
+        final Parcelable state = onSaveInstanceState();
+
+        if (mItemEntries != null) {
+            mItemEntries = new ItemEntries();
+            mItemEntries.setAdapterSize(getItemCount());
+            mItemLaneFlags.clear();
+        }
+
+        return state;
+    }
+
     @Override
     public void onRestoreInstanceState(Parcelable state) {
         final LanedSavedState ss = (LanedSavedState) state;
@@ -452,7 +1401,7 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
             return 0;
         }
 
-        final int size = getLanes().getLaneSize() * getLaneSpanForChild(child);
+        final int size = getLanes().getSpannedLaneSize(getLaneSpanForChild(child));
         return getWidth() - getPaddingLeft() - getPaddingRight() - size;
     }
 
@@ -461,7 +1410,7 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
             return 0;
         }
 
-        final int size = getLanes().getLaneSize() * getLaneSpanForChild(child);
+        final int size = getLanes().getSpannedLaneSize(getLaneSpanForChild(child));
         return getHeight() - getPaddingTop() - getPaddingBottom() - size;
     }
 
@@ -469,18 +1418,76 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
         measureChildWithMargins(child, getWidthUsed(child), getHeightUsed(child));
     }
 
+    private void measureChildFromCache(View child, int width, int height) {
+        // Item decoration insets are only refreshed while measuring with
+        // margins, so go through it anyway but with the cached size as
+        // exact dimensions. The child then doesn't have to resolve its
+        // size, and View.measure() skips measuring altogether if the specs
+        // didn't change and the child hasn't requested layout.
+        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+        final int lpWidth = lp.width;
+        final int lpHeight = lp.height;
+
+        lp.width = width;
+        lp.height = height;
+        measureChildWithMargins(child);
+
+        lp.width = lpWidth;
+        lp.height = lpHeight;
+    }
+
     @Override
     protected void measureChild(View child, Direction direction) {
         cacheChildLaneAndSpan(child, direction);
+        mItemLaneFlags.onItemLaneResolved(getPosition(child));
+
+        if (mHasFixedItemSize) {
+            measureChildWithFixedItemSize(child);
+            return;
+        }
+
+        if (mMeasureCache == null) {
+            measureChildWithMargins(child);
+            return;
+        }
+
+        final long key = getItemContentKey(getPosition(child));
+        final int span = getMeasureSpanForChild(child);
+        final int laneSize = mLanes.getLaneSize();
+
+        if (key != RecyclerView.NO_ID && mMeasureCache.contains(key, span, laneSize)) {
+            measureChildFromCache(child, mMeasureCache.getWidth(key, span, laneSize),
+                    mMeasureCache.getHeight(key, span, laneSize));
+            return;
+        }
+
         measureChildWithMargins(child);
+
+        if (key != RecyclerView.NO_ID) {
+            mMeasureCache.put(key, span, laneSize, child.getMeasuredWidth(),
+                    child.getMeasuredHeight());
+        }
     }
 
     @Override
     protected void layoutChild(View child, Direction direction) {
         getLaneForChild(mTempLaneInfo, child, direction);
 
-        mLanes.getChildFrame(mChildFrame, getDecoratedMeasuredWidth(child),
-                getDecoratedMeasuredHeight(child), mTempLaneInfo, direction);
+        int childWidth = getDecoratedMeasuredWidth(child);
+        int childHeight = getDecoratedMeasuredHeight(child);
+
+        // Keep rows aligned to the fixed item size so that item
+        // frames can always be computed from their positions.
+        final int fixedItemSize = getFixedItemSize();
+        if (fixedItemSize > 0) {
+            if (isVertical()) {
+                childHeight = fixedItemSize;
+            } else {
+                childWidth = fixedItemSize;
+            }
+        }
+
+        mLanes.getChildFrame(mChildFrame, childWidth, childHeight, mTempLaneInfo, direction);
         final ItemEntry entry = cacheChildFrame(child, mChildFrame);
 
         layoutDecorated(child, mChildFrame.left, mChildFrame.top, mChildFrame.right,
@@ -490,6 +1497,7 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
         if (!lp.isItemRemoved()) {
             pushChildFrame(entry, mChildFrame, mTempLaneInfo.startLane,
                     getLaneSpanForChild(child), direction);
+            mChildLaneIndex.addChild(mChildBounds, child, direction);
         }
     }
 
@@ -501,6 +1509,7 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
 
         popChildFrame(getItemEntryForPosition(position), mChildFrame, mTempLaneInfo.startLane,
                 getLaneSpanForChild(child), direction);
+        mChildLaneIndex.removeChild(mChildBounds, child, direction);
     }
 
     void getLaneForChild(LaneInfo outInfo, View child, Direction direction) {
@@ -515,6 +1524,41 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
         return 1;
     }
 
+    int getMeasureSpanForChild(View child) {
+        return getLaneSpanForChild(child);
+    }
+
+    boolean supportsFixedItemSize() {
+        return false;
+    }
+
+    /**
+     * Returns whether item entries should be rescaled instead of dropped
+     * when the lane size changes.
+     */
+    boolean canRescaleItemEntries() {
+        return false;
+    }
+
+    /**
+     * Rescales the cached geometry of the given entry from the old lanes
+     * to the current ones.
+     *
+     * @return <code>false</code> if the entry can't be rescaled and should
+     *         be dropped.
+     */
+    boolean rescaleItemEntry(ItemEntry entry, int position, Lanes oldLanes) {
+        return false;
+    }
+
+    /**
+     * Returns whether item entries can be dropped and resolved again
+     * later, see {@link #setItemEntriesWindow(int)}.
+     */
+    boolean canTrimItemEntries() {
+        return true;
+    }
+
     ItemEntry cacheChildLaneAndSpan(View child, Direction direction) {
         // Do nothing by default.
         return null;
@@ -525,6 +1569,310 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
         return null;
     }
 
+    /**
+     * Sets the spacing between items. Spacing is built into the lanes: lanes
+     * are separated by gutters and items in the same lane are separated by
+     * the spacing along the scrolling direction, so all lanes keep exactly
+     * the same size without adjusting item offsets. This should be used
+     * instead of {@link SpacingItemDecoration}, not along with it. Spacing
+     * can also be set with the <code>twowayview_verticalSpacing</code> and
+     * <code>twowayview_horizontalSpacing</code> layout attributes, which are
+     * separate from the <code>android:</code> ones read by the decoration.
+     */
+    public void setSpacing(int verticalSpacing, int horizontalSpacing) {
+        if (verticalSpacing < 0 || horizontalSpacing < 0) {
+            throw new IllegalArgumentException("Spacings should be equal or greater than 0");
+        }
+
+        if (mVerticalSpacing == verticalSpacing && mHorizontalSpacing == horizontalSpacing) {
+            return;
+        }
+
+        mVerticalSpacing = verticalSpacing;
+        mHorizontalSpacing = horizontalSpacing;
+        onSpacingChanged();
+    }
+
+    public int getVerticalSpacing() {
+        return mVerticalSpacing;
+    }
+
+    public int getHorizontalSpacing() {
+        return mHorizontalSpacing;
+    }
+
+    /**
+     * Sets the padding before the first lane and after the last lane. Unlike
+     * the layout padding, it's applied along the lanes only.
+     */
+    public void setEdgePadding(int edgePadding) {
+        if (edgePadding < 0) {
+            throw new IllegalArgumentException("Edge padding should be equal or greater than 0");
+        }
+
+        if (mEdgePadding == edgePadding) {
+            return;
+        }
+
+        mEdgePadding = edgePadding;
+        onSpacingChanged();
+    }
+
+    private void onSpacingChanged() {
+        // Items spanning multiple lanes change size with the gutters
+        // even if the lane size stays the same.
+        invalidateMeasureCache();
+
+        if (mItemSizeLoader != null) {
+            mItemSizeLoader.clear();
+        }
+
+        requestLayout();
+    }
+
+    /**
+     * Indicates that all items have the same size along the scrolling
+     * direction. The size is resolved from the first measured child and
+     * item frames are then computed from their positions, making jumps
+     * to arbitrary positions cheap and scrollbars pixel-accurate. Only the
+     * first child of each view type is fully measured, the others are
+     * measured to its size. Item decorations should not change the item
+     * size along the scrolling direction in this mode.
+     *
+     * Layouts that place items dynamically, like staggered and spannable
+     * grids, can't honor a fixed item size and ignore this setting, in
+     * which case {@link #hasFixedItemSize()} keeps returning false.
+     */
+    public void setHasFixedItemSize(boolean hasFixedItemSize) {
+        if (!supportsFixedItemSize() || mHasFixedItemSize == hasFixedItemSize) {
+            return;
+        }
+
+        mHasFixedItemSize = hasFixedItemSize;
+        clearFixedItemSize();
+        requestLayout();
+    }
+
+    public boolean hasFixedItemSize() {
+        return mHasFixedItemSize;
+    }
+
+    /**
+     * Sets a provider to compute item sizes from adapter data on the given
+     * executor. Sizes are requested ahead of the viewport and are used instead
+     * of binding and measuring views when the layout needs to know the size
+     * of items that are not attached yet e.g. when jumping to a position.
+     * Pass <code>null</code> to stop using the current provider.
+     */
+    public void setItemSizeProvider(ItemSizeProvider provider, Executor executor) {
+        if (mItemSizeLoader != null) {
+            mItemSizeLoader.clear();
+            mItemSizeLoader = null;
+        }
+
+        if (provider == null) {
+            return;
+        }
+
+        if (executor == null) {
+            throw new IllegalArgumentException("An executor is required to load item sizes");
+        }
+
+        mItemSizeLoader = new ItemSizeLoader(provider, executor, mMainThreadExecutor);
+    }
+
+    public ItemSizeProvider getItemSizeProvider() {
+        return (mItemSizeLoader != null ? mItemSizeLoader.getProvider() : null);
+    }
+
+    /**
+     * Enables the continuous resize mode e.g. for split-screen drags or
+     * fold transitions. While the layout size keeps changing, lanes are
+     * only resized and the layout is filled again from the first child,
+     * keeping item lanes and cached sizes. The full relayout only happens
+     * once the size hasn't changed for the given delay. A delay of 0,
+     * the default, disables the mode.
+     */
+    public void setResizeDebounceDelay(long delayMillis) {
+        if (delayMillis < 0) {
+            throw new IllegalArgumentException("Resize debounce delay should be equal " +
+                    "or greater than 0");
+        }
+
+        mResizeDebouncer.setDelay(delayMillis);
+    }
+
+    public long getResizeDebounceDelay() {
+        return mResizeDebouncer.getDelay();
+    }
+
+    /**
+     * Bounds the memory used by item entries (the lane and size cached for
+     * each laid out item) on very long adapters. Entries for up to twice
+     * the given number of positions before and after the visible items are
+     * kept, they're trimmed back to the window after layout passes and once
+     * scrolling settles. Layouts keep compact lane checkpoints for the rest so that jumping
+     * to a distant position doesn't need to place every item before it.
+     * Lanes of dropped items are resolved again when scrolled back into
+     * view. A window of 0, the default, keeps all entries.
+     */
+    public void setItemEntriesWindow(int window) {
+        if (window < 0) {
+            throw new IllegalArgumentException("Item entries window should be equal " +
+                    "or greater than 0");
+        }
+
+        if (window > 0 && !canTrimItemEntries()) {
+            throw new IllegalStateException(getClass().getSimpleName() +
+                    " can't drop item entries");
+        }
+
+        mItemEntriesWindow = window;
+        trimItemEntries();
+    }
+
+    public int getItemEntriesWindow() {
+        return mItemEntriesWindow;
+    }
+
+    /**
+     * Returns the number of item entries currently kept in memory.
+     */
+    public int getItemEntryCount() {
+        return (mItemEntries != null ? mItemEntries.getEntryCount() : 0);
+    }
+
+    /**
+     * Returns an estimate of the memory retained by the layout state,
+     * broken down by the <code>MEMORY_*</code> categories:
+     *
+     * <ul>
+     * <li>{@link #MEMORY_ITEM_ENTRIES}: the item entries and their array.</li>
+     * <li>{@link #MEMORY_SPAN_MARGINS}: span margins held by item entries.</li>
+     * <li>{@link #MEMORY_ITEM_ENTRIES_SPARE}: unused slots in the item
+     * entries array.</li>
+     * <li>{@link #MEMORY_LANES}: the current lanes and the ones kept while
+     * resizing.</li>
+     * <li>{@link #MEMORY_PENDING_STATE}: lanes and item entries restored
+     * from a saved state and not laid out yet.</li>
+     * <li>{@link #MEMORY_ITEM_LANE_FLAGS}: per-position lane flags used for
+     * item spacing.</li>
+     * <li>{@link #MEMORY_MEASURE_CACHE}: cached measured sizes.</li>
+     * <li>{@link #MEMORY_CHILD_INDEX}: per-lane index of the attached
+     * children used for hit-testing.</li>
+     * <li>{@link #MEMORY_TRIMMED_ITEM_LANES}: lanes kept for item entries
+     * trimmed out of the window.</li>
+     * </ul>
+     *
+     * Subclasses might add their own categories.
+     */
+    public MemoryUsage getMemoryUsage() {
+        final LayoutMemoryCollector collector = new LayoutMemoryCollector();
+        collectMemoryUsage(collector);
+        return collector.getUsage();
+    }
+
+    void collectMemoryUsage(LayoutMemoryCollector collector) {
+        collector.addItemEntries(mItemEntries);
+        collector.addLanes(mLanes);
+        collector.addLanes(mResizeDebouncer.getLanesBeforeResize());
+        collector.addPendingLanes(mLanesToRestore);
+
+        // Item entries are kept in place during continuous resizes.
+        if (mItemEntriesToRestore != mItemEntries) {
+            collector.addPendingItemEntries(mItemEntriesToRestore);
+        }
+
+        collector.addItemLaneFlags(mItemLaneFlags);
+        collector.addMeasureCache(mMeasureCache);
+        collector.addChildLaneIndex(mChildLaneIndex);
+    }
+
+    /**
+     * Makes the layout rest on item or page boundaries after flings and
+     * drags. Snapping is applied by {@link TwoWayView}.
+     */
+    public void setSnapMode(SnapMode snapMode) {
+        if (snapMode == null) {
+            throw new IllegalArgumentException("Snap mode cannot be null");
+        }
+
+        mItemSnapper.setSnapMode(snapMode);
+    }
+
+    public SnapMode getSnapMode() {
+        return mItemSnapper.getSnapMode();
+    }
+
+    /**
+     * Returns how far the layout should scroll to rest on a snap point,
+     * given how far it would have scrolled without snapping e.g. the
+     * distance a fling would travel, or 0 when a drag ends without a fling.
+     * Snap points are resolved once from the laid out items and
+     * extrapolated from their average size past them. A fling always moves
+     * the layout by at least one snap point in its direction, and by about
+     * a screen, aligned to an item start, in {@link SnapMode#PAGE} mode.
+     */
+    public int getSnapScrollDistance(int distance) {
+        final int childCount = getChildCount();
+        if (!mItemSnapper.isEnabled() || mLanes == null || childCount == 0) {
+            return distance;
+        }
+
+        final int start = getStartWithPadding();
+        final int end = getEndWithPadding();
+
+        mItemSnapper.reset(mLanes, getFixedItemSize(), childCount);
+        for (int i = 0; i < childCount; i++) {
+            final View child = getChildAt(i);
+            mItemSnapper.addChild(getChildStart(child), getChildEnd(child), start, end);
+        }
+
+        return mItemSnapper.getScrollDistance(distance, end - start);
+    }
+
+    /**
+     * Enables or disables the measure cache. When enabled, child views are
+     * not measured again if their content key, lane span and lane size match
+     * a previous measurement. The content key is provided by the adapter via
+     * {@link ItemContentKeyProvider} or falls back to the item id when the
+     * adapter has stable ids. The cache is bounded, the least recently used
+     * entries are evicted once it's full.
+     *
+     * @see #invalidateMeasureCache(int)
+     */
+    public void setMeasureCacheEnabled(boolean enabled) {
+        if (enabled && mMeasureCache == null) {
+            mMeasureCache = new MeasureCache();
+        } else if (!enabled) {
+            mMeasureCache = null;
+        }
+    }
+
+    public boolean isMeasureCacheEnabled() {
+        return (mMeasureCache != null);
+    }
+
+    /**
+     * Drops the cached dimensions for the item at the given position. This
+     * should be called whenever the content bound to an item changes in a
+     * way that is not reflected by its content key.
+     */
+    public void invalidateMeasureCache(int position) {
+        invalidateMeasureCache(position, 1);
+    }
+
+    /**
+     * Drops all cached child dimensions.
+     */
+    public void invalidateMeasureCache() {
+        if (mMeasureCache != null) {
+            mMeasureCache.clear();
+        }
+
+        clearFixedItemSize();
+    }
+
     @Override
     public boolean checkLayoutParams(LayoutParams lp) {
         if (isVertical()) {
@@ -592,12 +1940,15 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
                 }
             }
 
+            final int itemEntriesFirstPosition = in.readInt();
             final int itemEntriesCount = in.readInt();
             if (itemEntriesCount > 0) {
                 itemEntries = new ItemEntries();
                 for (int i = 0; i < itemEntriesCount; i++) {
                     final ItemEntry entry = in.readParcelable(getClass().getClassLoader());
-                    itemEntries.restoreItemEntry(i, entry);
+                    if (entry != null) {
+                        itemEntries.restoreItemEntry(itemEntriesFirstPosition + i, entry);
+                    }
                 }
             }
         }
@@ -616,11 +1967,14 @@ public abstract class BaseLayoutManager extends TwoWayLayoutManager {
                 lanes[i].writeToParcel(out, Rect.PARCELABLE_WRITE_RETURN_VALUE);
             }
 
+            final int itemEntriesFirstPosition =
+                    (itemEntries != null ? itemEntries.getFirstPosition() : 0);
             final int itemEntriesCount = (itemEntries != null ? itemEntries.size() : 0);
+            out.writeInt(itemEntriesFirstPosition);
             out.writeInt(itemEntriesCount);
 
             for (int i = 0; i < itemEntriesCount; i++) {
-                out.writeParcelable(itemEntries.getItemEntry(i), flags);
+                out.writeParcelable(itemEntries.getItemEntry(itemEntriesFirstPosition + i), flags);
             }
         }
 
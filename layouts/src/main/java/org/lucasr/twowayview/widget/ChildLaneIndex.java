@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import org.lucasr.twowayview.MemoryUsage;
+import org.lucasr.twowayview.TwoWayLayoutManager.Direction;
+
+import java.util.Arrays;
+
+/**
+ * Attached children grouped by the lanes they cover, each lane sorted by
+ * the start edge of its children along the scroll axis. Children within a
+ * lane don't overlap, so finding the child under a point is a binary search
+ * in the lane containing it. Children are kept by reference and their edges
+ * are read as needed, so offsetting children doesn't affect the index. It's
+ * built once after a layout pass and then kept up to date as children are
+ * added and recycled at both ends while scrolling.
+ */
+class ChildLaneIndex<C> {
+    private static final int MIN_SIZE = 8;
+
+    /**
+     * Where the indexed children are, along and across the lanes.
+     */
+    interface ChildBounds<C> {
+        int getChildCount();
+        C getChildAt(int index);
+
+        int getChildStart(C child);
+        int getChildEnd(C child);
+
+        int getLaneCount();
+        int getStartLane(C child);
+        int getEndLane(C child);
+        int getLaneAt(int crossCoordinate);
+    }
+
+    private Object[][] mLaneChildren;
+    private int[] mLaneChildCounts;
+
+    // Number of children in the index, a cheap check that no child was
+    // added or removed behind the index's back.
+    private int mChildCount;
+    private boolean mValid;
+
+    public void invalidate() {
+        mValid = false;
+    }
+
+    public boolean isValid(ChildBounds<C> bounds) {
+        if (!mValid || mLaneChildren.length != bounds.getLaneCount()) {
+            return false;
+        }
+
+        return (bounds.getChildCount() == mChildCount);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <C> C childAt(Object[] children, int index) {
+        return (C) children[index];
+    }
+
+    public void build(ChildBounds<C> bounds) {
+        final int laneCount = bounds.getLaneCount();
+        if (mLaneChildren == null || mLaneChildren.length != laneCount) {
+            mLaneChildren = new Object[laneCount][];
+            mLaneChildCounts = new int[laneCount];
+        } else {
+            clearLanes();
+        }
+
+        final int childCount = bounds.getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            final C child = bounds.getChildAt(i);
+            final int start = bounds.getChildStart(child);
+
+            final int endLane = bounds.getEndLane(child);
+            for (int lane = bounds.getStartLane(child); lane <= endLane; lane++) {
+                insertChild(bounds, lane, child, start, Direction.END);
+            }
+        }
+
+        mChildCount = childCount;
+        mValid = true;
+    }
+
+    /**
+     * Adds a child just laid out towards the given direction, if the index
+     * is up to date.
+     */
+    public void addChild(ChildBounds<C> bounds, C child, Direction direction) {
+        if (!mValid) {
+            return;
+        }
+
+        if (mLaneChildren.length != bounds.getLaneCount()) {
+            mValid = false;
+            return;
+        }
+
+        final int start = bounds.getChildStart(child);
+        final int endLane = bounds.getEndLane(child);
+        for (int lane = bounds.getStartLane(child); lane <= endLane; lane++) {
+            insertChild(bounds, lane, child, start, direction);
+        }
+
+        mChildCount++;
+    }
+
+    private void insertChild(ChildBounds<C> bounds, int lane, C child, int start,
+                             Direction direction) {
+        Object[] children = mLaneChildren[lane];
+        final int count = mLaneChildCounts[lane];
+
+        if (children == null) {
+            children = new Object[MIN_SIZE];
+            mLaneChildren[lane] = children;
+        } else if (count == children.length) {
+            children = Arrays.copyOf(children, count * 2);
+            mLaneChildren[lane] = children;
+        }
+
+        // Children are added at either end of their lanes, look for their
+        // index from that end so that this rarely has to shift anything.
+        int index;
+        if (direction == Direction.END) {
+            index = count;
+            while (index > 0 &&
+                    bounds.getChildStart(ChildLaneIndex.<C>childAt(children, index - 1)) > start) {
+                index--;
+            }
+        } else {
+            index = 0;
+            while (index < count &&
+                    bounds.getChildStart(ChildLaneIndex.<C>childAt(children, index)) < start) {
+                index++;
+            }
+        }
+
+        System.arraycopy(children, index, children, index + 1, count - index);
+        children[index] = child;
+        mLaneChildCounts[lane] = count + 1;
+    }
+
+    /**
+     * Removes a child about to be recycled while scrolling towards the
+     * given direction, i.e. from the opposite end of its lanes, if the
+     * index is up to date.
+     */
+    public void removeChild(ChildBounds<C> bounds, C child, Direction direction) {
+        if (!mValid) {
+            return;
+        }
+
+        if (mLaneChildren.length != bounds.getLaneCount()) {
+            mValid = false;
+            return;
+        }
+
+        final int endLane = bounds.getEndLane(child);
+        for (int lane = bounds.getStartLane(child); lane <= endLane; lane++) {
+            if (!deleteChild(lane, child, direction)) {
+                mValid = false;
+                return;
+            }
+        }
+
+        mChildCount--;
+    }
+
+    private boolean deleteChild(int lane, C child, Direction direction) {
+        final Object[] children = mLaneChildren[lane];
+        final int count = mLaneChildCounts[lane];
+
+        int index = -1;
+        if (direction == Direction.END) {
+            for (int i = 0; i < count; i++) {
+                if (children[i] == child) {
+                    index = i;
+                    break;
+                }
+            }
+        } else {
+            for (int i = count - 1; i >= 0; i--) {
+                if (children[i] == child) {
+                    index = i;
+                    break;
+                }
+            }
+        }
+
+        if (index == -1) {
+            return false;
+        }
+
+        System.arraycopy(children, index + 1, children, index, count - index - 1);
+        children[count - 1] = null;
+        mLaneChildCounts[lane] = count - 1;
+
+        return true;
+    }
+
+    /**
+     * Returns the child whose bounds contain the given point, in
+     * coordinates across and along lanes, or null if there's none.
+     */
+    public C findChild(ChildBounds<C> bounds, int crossCoordinate, int coordinate) {
+        final int lane = bounds.getLaneAt(crossCoordinate);
+        if (lane == Lanes.NO_LANE || lane >= mLaneChildren.length) {
+            return null;
+        }
+
+        final Object[] children = mLaneChildren[lane];
+        final int count = mLaneChildCounts[lane];
+
+        // Find the last child starting at or before the coordinate.
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (bounds.getChildStart(ChildLaneIndex.<C>childAt(children, mid)) > coordinate) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+
+        if (lo == 0) {
+            return null;
+        }
+
+        final C child = childAt(children, lo - 1);
+        return (bounds.getChildEnd(child) >= coordinate ? child : null);
+    }
+
+    private void clearLanes() {
+        for (int i = 0; i < mLaneChildren.length; i++) {
+            if (mLaneChildren[i] != null) {
+                Arrays.fill(mLaneChildren[i], 0, mLaneChildCounts[i], null);
+            }
+
+            mLaneChildCounts[i] = 0;
+        }
+    }
+
+    /**
+     * Drops all references to children.
+     */
+    public void clear() {
+        mLaneChildren = null;
+        mLaneChildCounts = null;
+
+        mChildCount = 0;
+        mValid = false;
+    }
+
+    void collectMemoryUsage(MemoryUsage usage, String name) {
+        if (mLaneChildren == null) {
+            return;
+        }
+
+        long bytes = MemoryUsage.getObjectSize(2 * MemoryUsage.REFERENCE_SIZE +
+                MemoryUsage.INT_SIZE + MemoryUsage.BOOLEAN_SIZE) +
+                MemoryUsage.getArraySize(mLaneChildren.length, MemoryUsage.REFERENCE_SIZE) +
+                MemoryUsage.getArraySize(mLaneChildCounts.length, MemoryUsage.INT_SIZE);
+        int objects = 3;
+
+        for (int i = 0; i < mLaneChildren.length; i++) {
+            if (mLaneChildren[i] != null) {
+                bytes += MemoryUsage.getArraySize(mLaneChildren[i].length,
+                        MemoryUsage.REFERENCE_SIZE);
+                objects++;
+            }
+        }
+
+        usage.add(name, bytes, objects);
+    }
+}
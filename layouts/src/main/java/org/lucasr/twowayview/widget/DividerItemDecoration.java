@@ -1,16 +1,22 @@
 package org.lucasr.twowayview.widget;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.RecyclerView.ItemDecoration;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewGroup.MarginLayoutParams;
 
+import static android.os.Build.VERSION_CODES.HONEYCOMB;
+
 /**
  * {@link android.support.v7.widget.RecyclerView.ItemDecoration} that draws
  * vertical and horizontal dividers between the items of the target
@@ -22,6 +28,15 @@ public class DividerItemDecoration extends ItemDecoration {
     private final Drawable mVerticalDivider;
     private final Drawable mHorizontalDivider;
 
+    private final DividerRuns mHorizontalRuns = new DividerRuns(false);
+    private final DividerRuns mVerticalRuns = new DividerRuns(true);
+
+    private final Paint mColorPaint = new Paint();
+    private float[] mLinePoints = new float[0];
+
+    private final Rect mClipRect = new Rect();
+    private final Rect mTempRect = new Rect();
+
     public DividerItemDecoration(Context context, AttributeSet attrs) {
         this(context, attrs, 0);
     }
@@ -79,6 +94,19 @@ public class DividerItemDecoration extends ItemDecoration {
     public void onDrawOver(Canvas c, RecyclerView parent) {
         final BaseLayoutManager lm = (BaseLayoutManager) parent.getLayoutManager();
 
+        final Lanes lanes = lm.getLanes();
+        if (lanes == null) {
+            return;
+        }
+
+        final boolean isVertical = lm.isVertical();
+        final int laneCount = lanes.getCount();
+
+        // Dividers between lanes are merged per lane, dividers between
+        // items of the same lane are merged as they line up e.g. per row.
+        mHorizontalRuns.reset(isVertical ? 1 : laneCount);
+        mVerticalRuns.reset(isVertical ? laneCount : 1);
+
         final int rightWithPadding = parent.getWidth() - parent.getPaddingRight();
         final int bottomWithPadding = parent.getHeight() - parent.getPaddingBottom();
 
@@ -95,26 +123,110 @@ public class DividerItemDecoration extends ItemDecoration {
 
             final int bottomOffset = childBottom - child.getBottom() - lp.bottomMargin;
             if (bottomOffset > 0 && childBottom < bottomWithPadding) {
-                final int left = childLeft;
                 final int top = childBottom - bottomOffset;
-                final int right = childRight;
                 final int bottom = top + mHorizontalDivider.getIntrinsicHeight();
+                final int slot = (isVertical ? 0 : getLaneAt(lanes, top));
 
-                mHorizontalDivider.setBounds(left, top, right, bottom);
-                mHorizontalDivider.draw(c);
+                mHorizontalRuns.add(slot, childLeft, top, childRight, bottom);
             }
 
             final int rightOffset = childRight - child.getRight() - lp.rightMargin;
             if (rightOffset > 0 && childRight < rightWithPadding) {
                 final int left = childRight - rightOffset;
-                final int top = childTop;
                 final int right = left + mVerticalDivider.getIntrinsicWidth();
-                final int bottom = childBottom;
+                final int slot = (isVertical ? getLaneAt(lanes, left) : 0);
+
+                mVerticalRuns.add(slot, left, childTop, right, childBottom);
+            }
+        }
+
+        c.getClipBounds(mClipRect);
+
+        drawRuns(c, mHorizontalRuns, mHorizontalDivider);
+        drawRuns(c, mVerticalRuns, mVerticalDivider);
+    }
 
-                mVerticalDivider.setBounds(left, top, right, bottom);
-                mVerticalDivider.draw(c);
+    private static int getLaneAt(Lanes lanes, int coordinate) {
+        // Dividers start at the end edge of their item, which is within
+        // the item's lane even with gutters and edge padding around it.
+        return Math.max(0, lanes.getLaneAt(coordinate));
+    }
+
+    private void drawRuns(Canvas c, DividerRuns runs, Drawable divider) {
+        // ColorDrawable.getColor() is only available from Honeycomb.
+        if (divider instanceof ColorDrawable && Build.VERSION.SDK_INT >= HONEYCOMB) {
+            drawColorRuns(c, runs, (ColorDrawable) divider);
+            return;
+        }
+
+        final int runCount = runs.size();
+        for (int i = 0; i < runCount; i++) {
+            runs.getRun(i, mTempRect);
+            if (!mTempRect.intersect(mClipRect)) {
+                continue;
+            }
+
+            divider.setBounds(mTempRect);
+            divider.draw(c);
+        }
+    }
+
+    /**
+     * Draws all runs of a color divider as lines with a single call
+     * instead of drawing the divider once per run.
+     */
+    @TargetApi(HONEYCOMB)
+    private void drawColorRuns(Canvas c, DividerRuns runs, ColorDrawable divider) {
+        final int runCount = runs.size();
+        if (mLinePoints.length < runCount * 4) {
+            mLinePoints = new float[runCount * 4];
+        }
+
+        final boolean mergesVertically = runs.mergesVertically();
+
+        int pointCount = 0;
+        int thickness = 0;
+        for (int i = 0; i < runCount; i++) {
+            runs.getRun(i, mTempRect);
+
+            if (mergesVertically) {
+                final float x = (mTempRect.left + mTempRect.right) / 2f;
+                final int top = Math.max(mTempRect.top, mClipRect.top);
+                final int bottom = Math.min(mTempRect.bottom, mClipRect.bottom);
+                if (top >= bottom) {
+                    continue;
+                }
+
+                mLinePoints[pointCount++] = x;
+                mLinePoints[pointCount++] = top;
+                mLinePoints[pointCount++] = x;
+                mLinePoints[pointCount++] = bottom;
+
+                thickness = mTempRect.right - mTempRect.left;
+            } else {
+                final float y = (mTempRect.top + mTempRect.bottom) / 2f;
+                final int left = Math.max(mTempRect.left, mClipRect.left);
+                final int right = Math.min(mTempRect.right, mClipRect.right);
+                if (left >= right) {
+                    continue;
+                }
+
+                mLinePoints[pointCount++] = left;
+                mLinePoints[pointCount++] = y;
+                mLinePoints[pointCount++] = right;
+                mLinePoints[pointCount++] = y;
+
+                thickness = mTempRect.bottom - mTempRect.top;
             }
         }
+
+        if (pointCount == 0) {
+            return;
+        }
+
+        mColorPaint.setColor(divider.getColor());
+        mColorPaint.setStrokeWidth(thickness);
+        c.drawLines(mLinePoints, 0, pointCount, mColorPaint);
     }
 
     @Override
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import android.graphics.Rect;
+
+import java.util.Arrays;
+
+/**
+ * Divider segments merged into continuous runs. Each slot holds the
+ * run that can still be extended by the next segment added to it.
+ */
+class DividerRuns {
+    private static final int NO_RUN = -1;
+
+    private final boolean mMergeVertically;
+
+    private int[] mRuns = new int[64];
+    private int mRunCount;
+    private int[] mOpenRuns = new int[0];
+
+    DividerRuns(boolean mergeVertically) {
+        mMergeVertically = mergeVertically;
+    }
+
+    boolean mergesVertically() {
+        return mMergeVertically;
+    }
+
+    void reset(int slotCount) {
+        mRunCount = 0;
+
+        if (mOpenRuns.length < slotCount) {
+            mOpenRuns = new int[slotCount];
+        }
+
+        Arrays.fill(mOpenRuns, NO_RUN);
+    }
+
+    void add(int slot, int l, int t, int r, int b) {
+        final int openRun = mOpenRuns[slot];
+        if (openRun != NO_RUN) {
+            final int offset = openRun * 4;
+
+            if (mMergeVertically && mRuns[offset] == l && mRuns[offset + 2] == r &&
+                    t <= mRuns[offset + 3] && b >= mRuns[offset + 1]) {
+                mRuns[offset + 1] = Math.min(mRuns[offset + 1], t);
+                mRuns[offset + 3] = Math.max(mRuns[offset + 3], b);
+                return;
+            }
+
+            if (!mMergeVertically && mRuns[offset + 1] == t && mRuns[offset + 3] == b &&
+                    l <= mRuns[offset + 2] && r >= mRuns[offset]) {
+                mRuns[offset] = Math.min(mRuns[offset], l);
+                mRuns[offset + 2] = Math.max(mRuns[offset + 2], r);
+                return;
+            }
+        }
+
+        if ((mRunCount + 1) * 4 > mRuns.length) {
+            mRuns = Arrays.copyOf(mRuns, mRuns.length * 2);
+        }
+
+        final int offset = mRunCount * 4;
+        mRuns[offset] = l;
+        mRuns[offset + 1] = t;
+        mRuns[offset + 2] = r;
+        mRuns[offset + 3] = b;
+
+        mOpenRuns[slot] = mRunCount++;
+    }
+
+    int size() {
+        return mRunCount;
+    }
+
+    int getLeft(int index) {
+        return mRuns[index * 4];
+    }
+
+    int getTop(int index) {
+        return mRuns[index * 4 + 1];
+    }
+
+    int getRight(int index) {
+        return mRuns[index * 4 + 2];
+    }
+
+    int getBottom(int index) {
+        return mRuns[index * 4 + 3];
+    }
+
+    void getRun(int index, Rect outRect) {
+        outRect.set(getLeft(index), getTop(index), getRight(index), getBottom(index));
+    }
+}
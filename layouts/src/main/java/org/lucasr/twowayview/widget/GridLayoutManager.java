@@ -76,6 +76,11 @@ public class GridLayoutManager extends BaseLayoutManager {
         return (isVertical() ? mNumColumns : mNumRows);
     }
 
+    @Override
+    boolean supportsFixedItemSize() {
+        return true;
+    }
+
     @Override
     void getLaneForPosition(LaneInfo outInfo, int position, Direction direction) {
         final int lane = (position % getLaneCount());
@@ -93,14 +98,25 @@ public class GridLayoutManager extends BaseLayoutManager {
             return;
         }
 
-        final View child = recycler.getViewForPosition(position);
-        measureChild(child, Direction.END);
+        int dimension = getFixedItemSize();
+        if (dimension == 0) {
+            dimension = getProvidedItemSize(position);
+        }
 
-        final int dimension =
-                (isVertical() ? getDecoratedMeasuredHeight(child) : getDecoratedMeasuredWidth(child));
+        if (dimension == ItemSizeProvider.NO_SIZE) {
+            final View child = recycler.getViewForPosition(position);
+            measureChild(child, Direction.END);
+
+            dimension =
+                    (isVertical() ? getDecoratedMeasuredHeight(child) : getDecoratedMeasuredWidth(child));
+
+            // The child was only needed for its size, it's bound again
+            // when laid out.
+            recycler.recycleView(child);
+        }
 
         for (int i = lane - 1; i >= 0; i--) {
-            lanes.offset(i, dimension);
+            lanes.offset(i, dimension + lanes.getItemSpacing());
         }
     }
 
@@ -21,29 +21,39 @@
 
 package org.lucasr.twowayview.widget;
 
-import android.util.Log;
-
 import java.util.Arrays;
 
+import org.lucasr.twowayview.MemoryUsage;
 import org.lucasr.twowayview.widget.BaseLayoutManager.ItemEntry;
 
+/**
+ * Item entries indexed by adapter position. Entries are kept in a single
+ * array covering a contiguous range of positions, starting at the first
+ * position an entry was put for. The range can be trimmed to a window
+ * around the visible items to bound memory use on very long adapters,
+ * in which case the lanes of the dropped entries are kept apart so that
+ * items are laid out in the same lanes when scrolling back to them.
+ */
 class ItemEntries {
     private static final int MIN_SIZE = 10;
 
     private ItemEntry[] mItemEntries;
+    private int mFirstPosition;
     private int mAdapterSize;
     private boolean mRestoringItem;
 
-    private int sizeForPosition(int position) {
+    private final TrimmedItemLanes mTrimmedLanes = new TrimmedItemLanes();
+
+    private int sizeForIndex(int index) {
         int len = mItemEntries.length;
-        while (len <= position) {
+        while (len <= index) {
             len *= 2;
         }
 
         // We don't apply any constraints while restoring
         // item entries.
-        if (!mRestoringItem && len > mAdapterSize) {
-            len = mAdapterSize;
+        if (!mRestoringItem && len > mAdapterSize - mFirstPosition) {
+            len = Math.max(mAdapterSize - mFirstPosition, index + 1);
         }
 
         return len;
@@ -51,27 +61,37 @@ class ItemEntries {
 
     private void ensureSize(int position) {
         if (mItemEntries == null) {
-            mItemEntries = new ItemEntry[Math.max(position, MIN_SIZE) + 1];
-            Arrays.fill(mItemEntries, null);
-        } else if (position >= mItemEntries.length) {
+            mItemEntries = new ItemEntry[MIN_SIZE];
+            mFirstPosition = (position < MIN_SIZE ? 0 : position);
+        } else if (position < mFirstPosition) {
+            // Grow towards the start as well to avoid copying the
+            // entries for every position laid out before the first one.
             ItemEntry[] oldItemEntries = mItemEntries;
-            mItemEntries = new ItemEntry[sizeForPosition(position)];
+            final int firstPosition =
+                    Math.max(0, Math.min(position, mFirstPosition - oldItemEntries.length));
+            final int shift = mFirstPosition - firstPosition;
+            mItemEntries = new ItemEntry[oldItemEntries.length + shift];
+            System.arraycopy(oldItemEntries, 0, mItemEntries, shift, oldItemEntries.length);
+            mFirstPosition = firstPosition;
+        } else if (position - mFirstPosition >= mItemEntries.length) {
+            ItemEntry[] oldItemEntries = mItemEntries;
+            mItemEntries = new ItemEntry[sizeForIndex(position - mFirstPosition)];
             System.arraycopy(oldItemEntries, 0, mItemEntries, 0, oldItemEntries.length);
-            Arrays.fill(mItemEntries, oldItemEntries.length, mItemEntries.length, null);
         }
     }
 
     public ItemEntry getItemEntry(int position) {
-        if (mItemEntries == null || position >= mItemEntries.length) {
+        final int index = position - mFirstPosition;
+        if (mItemEntries == null || index < 0 || index >= mItemEntries.length) {
             return null;
         }
 
-        return mItemEntries[position];
+        return mItemEntries[index];
     }
 
     public void putItemEntry(int position, ItemEntry entry) {
         ensureSize(position);
-        mItemEntries[position] = entry;
+        mItemEntries[position - mFirstPosition] = entry;
     }
 
     public void restoreItemEntry(int position, ItemEntry entry) {
@@ -80,20 +100,61 @@ class ItemEntries {
         mRestoringItem = false;
     }
 
+    /**
+     * First position covered by the entries, see {@link #size()}.
+     */
+    public int getFirstPosition() {
+        return mFirstPosition;
+    }
+
+    /**
+     * Number of positions covered by the entries, starting at
+     * {@link #getFirstPosition()}. Some of them might have no entry.
+     */
     public int size() {
         return (mItemEntries != null ? mItemEntries.length : 0);
     }
 
+    /**
+     * Number of positions that actually have an entry.
+     */
+    public int getEntryCount() {
+        if (mItemEntries == null) {
+            return 0;
+        }
+
+        int count = 0;
+        for (int i = 0; i < mItemEntries.length; i++) {
+            if (mItemEntries[i] != null) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
     public void setAdapterSize(int adapterSize) {
         mAdapterSize = adapterSize;
     }
 
+    /**
+     * Sets the lanes the item at the given position had when its entry
+     * was trimmed on the given entry.
+     *
+     * @return <code>true</code> if they were known.
+     */
+    public boolean restoreTrimmedLanes(int position, ItemEntry entry) {
+        return mTrimmedLanes.restore(position, entry);
+    }
+
     public void invalidateItemLanesAfter(int position) {
-        if (mItemEntries == null || position >= mItemEntries.length) {
+        mTrimmedLanes.invalidateAfter(position);
+
+        if (mItemEntries == null) {
             return;
         }
 
-        for (int i = position; i < mItemEntries.length; i++) {
+        for (int i = Math.max(0, position - mFirstPosition); i < mItemEntries.length; i++) {
             final ItemEntry entry = mItemEntries[i];
             if (entry != null) {
                 entry.invalidateLane();
@@ -101,33 +162,135 @@ class ItemEntries {
         }
     }
 
+    /**
+     * Drops all entries outside the given range of positions. The end
+     * position is exclusive.
+     */
+    public void trim(int startPosition, int endPosition) {
+        if (mItemEntries == null) {
+            return;
+        }
+
+        final int lastPosition = mFirstPosition + mItemEntries.length;
+        startPosition = Math.max(startPosition, mFirstPosition);
+        endPosition = Math.min(endPosition, lastPosition);
+
+        for (int i = 0; i < mItemEntries.length; i++) {
+            final int position = mFirstPosition + i;
+            final ItemEntry entry = mItemEntries[i];
+            if (entry != null && (position < startPosition || position >= endPosition)) {
+                mTrimmedLanes.put(position, entry);
+            }
+        }
+
+        if (startPosition >= endPosition) {
+            mItemEntries = null;
+            mFirstPosition = 0;
+        } else if (startPosition > mFirstPosition || endPosition < lastPosition) {
+            mItemEntries = Arrays.copyOfRange(mItemEntries,
+                    startPosition - mFirstPosition, endPosition - mFirstPosition);
+            mFirstPosition = startPosition;
+        }
+    }
+
     public void clear() {
+        mTrimmedLanes.clear();
+
         if (mItemEntries != null) {
             Arrays.fill(mItemEntries, null);
         }
     }
 
     void offsetForRemoval(int positionStart, int itemCount) {
-        if (mItemEntries == null || positionStart >= mItemEntries.length) {
+        mTrimmedLanes.offsetForRemoval(positionStart, itemCount);
+
+        if (mItemEntries == null || positionStart >= mFirstPosition + mItemEntries.length) {
+            return;
+        }
+
+        // Removed range is before the entries, just shift them.
+        if (positionStart + itemCount <= mFirstPosition) {
+            mFirstPosition -= itemCount;
+            return;
+        }
+
+        // Removed range overlaps the head of the entries.
+        if (positionStart < mFirstPosition) {
+            final int removed = Math.min(positionStart + itemCount - mFirstPosition,
+                    mItemEntries.length);
+            System.arraycopy(mItemEntries, removed, mItemEntries, 0,
+                    mItemEntries.length - removed);
+            Arrays.fill(mItemEntries, mItemEntries.length - removed, mItemEntries.length, null);
+            mFirstPosition = positionStart;
             return;
         }
 
         ensureSize(positionStart + itemCount);
 
-        System.arraycopy(mItemEntries, positionStart + itemCount, mItemEntries, positionStart,
-                mItemEntries.length - positionStart - itemCount);
+        final int index = positionStart - mFirstPosition;
+        System.arraycopy(mItemEntries, index + itemCount, mItemEntries, index,
+                mItemEntries.length - index - itemCount);
         Arrays.fill(mItemEntries, mItemEntries.length - itemCount, mItemEntries.length, null);
     }
 
     void offsetForAddition(int positionStart, int itemCount) {
-        if (mItemEntries == null || positionStart >= mItemEntries.length) {
+        mTrimmedLanes.offsetForAddition(positionStart, itemCount);
+
+        if (mItemEntries == null || positionStart >= mFirstPosition + mItemEntries.length) {
+            return;
+        }
+
+        // Added range is before the entries, just shift them.
+        if (positionStart <= mFirstPosition) {
+            mFirstPosition += itemCount;
             return;
         }
 
         ensureSize(positionStart + itemCount);
 
-        System.arraycopy(mItemEntries, positionStart, mItemEntries, positionStart + itemCount,
-                mItemEntries.length - positionStart - itemCount);
-        Arrays.fill(mItemEntries, positionStart, positionStart + itemCount, null);
+        final int index = positionStart - mFirstPosition;
+        System.arraycopy(mItemEntries, index, mItemEntries, index + itemCount,
+                mItemEntries.length - index - itemCount);
+        Arrays.fill(mItemEntries, index, index + itemCount, null);
+    }
+
+    /**
+     * Adds the memory retained by the entries array, the entries and their
+     * span margins, the unused array slots and the lanes kept for trimmed
+     * entries to the given categories.
+     */
+    void collectMemoryUsage(MemoryUsage usage, String entriesName, String spanMarginsName,
+                            String spareName, String trimmedLanesName) {
+        mTrimmedLanes.collectMemoryUsage(usage, trimmedLanesName);
+
+        if (mItemEntries == null) {
+            return;
+        }
+
+        long entriesBytes = MemoryUsage.getArraySize(0, MemoryUsage.REFERENCE_SIZE);
+        int entryCount = 0;
+        long spanMarginsBytes = 0;
+        int spanMarginsCount = 0;
+
+        for (int i = 0; i < mItemEntries.length; i++) {
+            final ItemEntry entry = mItemEntries[i];
+            if (entry == null) {
+                continue;
+            }
+
+            entriesBytes += MemoryUsage.REFERENCE_SIZE +
+                    MemoryUsage.getObjectSize(entry.getFieldsSize());
+            entryCount++;
+
+            final int marginCount = entry.getSpanMarginCount();
+            if (marginCount > 0) {
+                spanMarginsBytes += MemoryUsage.getArraySize(marginCount, MemoryUsage.INT_SIZE);
+                spanMarginsCount++;
+            }
+        }
+
+        usage.add(entriesName, entriesBytes, entryCount + 1);
+        usage.add(spanMarginsName, spanMarginsBytes, spanMarginsCount);
+        usage.add(spareName, (long) (mItemEntries.length - entryCount) * MemoryUsage.REFERENCE_SIZE, 0);
     }
 }
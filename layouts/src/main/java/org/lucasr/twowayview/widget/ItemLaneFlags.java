@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import android.support.v7.widget.RecyclerView;
+
+import org.lucasr.twowayview.MemoryUsage;
+
+import java.util.Arrays;
+
+/**
+ * Caches per-position lane metadata used to compute item spacing: whether
+ * an item starts a lane or sits right after the first lane. Flags of an item
+ * only depend on the items before it, so they're invalidated from a given
+ * position onwards. It also keeps the last position laid out in each lane,
+ * which depends on the items at the end of the adapter instead.
+ */
+class ItemLaneFlags {
+    private static final int MIN_SIZE = 10;
+
+    public static final int FLAG_RESOLVED = 1;
+    public static final int FLAG_FIRST_IN_LANE = 1 << 1;
+    public static final int FLAG_SECOND_LANE = 1 << 2;
+
+    private byte[] mFlags;
+
+    private int[] mLastPositions;
+    private int mLastPositionsItemCount = -1;
+    private int mLastPositionsBlockedAt = RecyclerView.NO_POSITION;
+
+    private void ensureSize(int position) {
+        if (mFlags == null) {
+            mFlags = new byte[Math.max(position, MIN_SIZE) + 1];
+        } else if (position >= mFlags.length) {
+            int len = mFlags.length;
+            while (len <= position) {
+                len *= 2;
+            }
+
+            mFlags = Arrays.copyOf(mFlags, len);
+        }
+    }
+
+    public int getFlags(int position) {
+        if (mFlags == null || position >= mFlags.length) {
+            return 0;
+        }
+
+        return mFlags[position];
+    }
+
+    public void setFlags(int position, int flags) {
+        ensureSize(position);
+        mFlags[position] = (byte) flags;
+    }
+
+    /**
+     * Returns the last position in each lane if they were resolved for
+     * the given lane and item counts, <code>null</code> otherwise.
+     */
+    public int[] getLastPositions(int laneCount, int itemCount) {
+        if (mLastPositions == null || mLastPositions.length != laneCount ||
+                mLastPositionsItemCount != itemCount) {
+            return null;
+        }
+
+        return mLastPositions;
+    }
+
+    /**
+     * Stores the last position in each lane. The blocked position is the one
+     * whose lane was unknown when resolving them, lanes without a resolved
+     * position are resolved again once its lane is known.
+     */
+    public void setLastPositions(int[] lastPositions, int itemCount, int blockedAt) {
+        mLastPositions = lastPositions;
+        mLastPositionsItemCount = itemCount;
+        mLastPositionsBlockedAt = blockedAt;
+    }
+
+    public void onItemLaneResolved(int position) {
+        if (mLastPositionsBlockedAt != RecyclerView.NO_POSITION &&
+                position >= mLastPositionsBlockedAt) {
+            invalidateLastPositions();
+        }
+    }
+
+    private void invalidateLastPositions() {
+        mLastPositionsItemCount = -1;
+        mLastPositionsBlockedAt = RecyclerView.NO_POSITION;
+    }
+
+    public void invalidateAfter(int position) {
+        if (mFlags != null && position < mFlags.length) {
+            Arrays.fill(mFlags, Math.max(0, position), mFlags.length, (byte) 0);
+        }
+
+        invalidateLastPositions();
+    }
+
+    public void clear() {
+        invalidateAfter(0);
+    }
+
+    void collectMemoryUsage(MemoryUsage usage, String name) {
+        long bytes = 0;
+        int objectCount = 0;
+
+        if (mFlags != null) {
+            bytes += MemoryUsage.getArraySize(mFlags.length, 1);
+            objectCount++;
+        }
+
+        if (mLastPositions != null) {
+            bytes += MemoryUsage.getArraySize(mLastPositions.length, MemoryUsage.INT_SIZE);
+            objectCount++;
+        }
+
+        usage.add(name, bytes, objectCount);
+    }
+}
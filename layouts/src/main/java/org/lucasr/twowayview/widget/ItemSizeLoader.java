@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import org.lucasr.twowayview.widget.BaseLayoutManager.ItemSizeProvider;
+
+/**
+ * Loads item sizes from an {@link ItemSizeProvider} on a worker executor.
+ * Results are handed back to the main thread through the layout's result
+ * executor, so the loaded sizes are only ever read and written on the
+ * layout thread.
+ * Positions being loaded are marked as such, so that requests for ranges
+ * overlapping in-flight loads only submit the positions still missing.
+ * Results computed against an outdated data set or lane size are dropped.
+ */
+class ItemSizeLoader {
+    private static final int MIN_SIZE = 10;
+
+    // Marks positions that haven't been handed to the provider yet, as
+    // opposed to NO_SIZE which the provider returns for unknown sizes.
+    private static final int NOT_LOADED = Integer.MIN_VALUE;
+
+    // Marks positions handed to the provider whose sizes haven't been
+    // published yet.
+    private static final int LOADING = Integer.MIN_VALUE + 1;
+
+    private final ItemSizeProvider mProvider;
+    private final Executor mExecutor;
+    private final Executor mResultExecutor;
+
+    private int[] mSizes;
+    private int[] mSpans;
+
+    private int mLaneSize;
+    private int mLaneCount;
+    private int mGeneration;
+
+    public ItemSizeLoader(ItemSizeProvider provider, Executor executor,
+                          Executor resultExecutor) {
+        mProvider = provider;
+        mExecutor = executor;
+        mResultExecutor = resultExecutor;
+    }
+
+    public ItemSizeProvider getProvider() {
+        return mProvider;
+    }
+
+    public Executor getExecutor() {
+        return mExecutor;
+    }
+
+    private void ensureSize(int position) {
+        if (mSizes == null) {
+            mSizes = new int[Math.max(position, MIN_SIZE) + 1];
+            mSpans = new int[mSizes.length];
+            Arrays.fill(mSizes, NOT_LOADED);
+        } else if (position >= mSizes.length) {
+            int len = mSizes.length;
+            while (len <= position) {
+                len *= 2;
+            }
+
+            final int[] oldSizes = mSizes;
+            mSizes = new int[len];
+            System.arraycopy(oldSizes, 0, mSizes, 0, oldSizes.length);
+            Arrays.fill(mSizes, oldSizes.length, len, NOT_LOADED);
+
+            final int[] oldSpans = mSpans;
+            mSpans = new int[len];
+            System.arraycopy(oldSpans, 0, mSpans, 0, oldSpans.length);
+        }
+    }
+
+    /**
+     * Drops the results of all in-flight loads. Only needed when they might
+     * be outdated i.e. on data set, lane size or orientation changes.
+     */
+    private void cancelPendingLoads() {
+        mGeneration++;
+
+        if (mSizes == null) {
+            return;
+        }
+
+        for (int i = 0; i < mSizes.length; i++) {
+            if (mSizes[i] == LOADING) {
+                mSizes[i] = NOT_LOADED;
+            }
+        }
+    }
+
+    private boolean isLoaded(int position) {
+        return (mSizes != null && position < mSizes.length &&
+                mSizes[position] != NOT_LOADED && mSizes[position] != LOADING);
+    }
+
+    private boolean isRequested(int position) {
+        return (mSizes != null && position < mSizes.length && mSizes[position] != NOT_LOADED);
+    }
+
+    public int getSize(int position) {
+        if (!isLoaded(position)) {
+            return ItemSizeProvider.NO_SIZE;
+        }
+
+        return mSizes[position];
+    }
+
+    public int getSpan(int position) {
+        if (getSize(position) == ItemSizeProvider.NO_SIZE) {
+            return 0;
+        }
+
+        return mSpans[position];
+    }
+
+    public int getLaneSize() {
+        return mLaneSize;
+    }
+
+    public void setLanes(int laneSize, int laneCount) {
+        if (mLaneSize == laneSize && mLaneCount == laneCount) {
+            return;
+        }
+
+        mLaneSize = laneSize;
+        mLaneCount = laneCount;
+        clear();
+    }
+
+    /**
+     * Requests sizes for all positions within the given range that are
+     * neither known nor being loaded yet. Loads already in flight are left
+     * alone, only the missing sub-ranges are submitted, one task each.
+     */
+    public void load(int positionStart, int positionEnd) {
+        if (mLaneSize <= 0 || positionStart >= positionEnd) {
+            return;
+        }
+
+        int start = positionStart;
+        while (start < positionEnd) {
+            while (start < positionEnd && isRequested(start)) {
+                start++;
+            }
+
+            int end = start;
+            while (end < positionEnd && !isRequested(end)) {
+                end++;
+            }
+
+            if (start < end) {
+                ensureSize(end - 1);
+                Arrays.fill(mSizes, start, end, LOADING);
+
+                mExecutor.execute(new LoadTask(mGeneration, start, end, mLaneSize, mLaneCount));
+            }
+
+            start = end;
+        }
+    }
+
+    private void publish(int generation, int positionStart, int[] sizes, int[] spans) {
+        if (generation != mGeneration) {
+            return;
+        }
+
+        ensureSize(positionStart + sizes.length - 1);
+        System.arraycopy(sizes, 0, mSizes, positionStart, sizes.length);
+        System.arraycopy(spans, 0, mSpans, positionStart, spans.length);
+    }
+
+    public void invalidate(int positionStart, int itemCount) {
+        if (mSizes == null || positionStart >= mSizes.length) {
+            return;
+        }
+
+        cancelPendingLoads();
+
+        final int end = Math.min(positionStart + itemCount, mSizes.length);
+        Arrays.fill(mSizes, positionStart, end, NOT_LOADED);
+    }
+
+    public void offsetForAddition(int positionStart, int itemCount) {
+        cancelPendingLoads();
+
+        if (mSizes == null || positionStart >= mSizes.length) {
+            return;
+        }
+
+        // Grow enough to keep the sizes shifted past the current end.
+        final int moveCount = mSizes.length - positionStart;
+        ensureSize(mSizes.length - 1 + itemCount);
+
+        System.arraycopy(mSizes, positionStart, mSizes, positionStart + itemCount, moveCount);
+        System.arraycopy(mSpans, positionStart, mSpans, positionStart + itemCount, moveCount);
+        Arrays.fill(mSizes, positionStart, positionStart + itemCount, NOT_LOADED);
+    }
+
+    public void offsetForRemoval(int positionStart, int itemCount) {
+        cancelPendingLoads();
+
+        if (mSizes == null || positionStart >= mSizes.length) {
+            return;
+        }
+
+        final int count = Math.min(itemCount, mSizes.length - positionStart);
+        final int moveCount = mSizes.length - positionStart - count;
+        System.arraycopy(mSizes, positionStart + count, mSizes, positionStart, moveCount);
+        System.arraycopy(mSpans, positionStart + count, mSpans, positionStart, moveCount);
+        Arrays.fill(mSizes, mSizes.length - count, mSizes.length, NOT_LOADED);
+    }
+
+    public void clear() {
+        cancelPendingLoads();
+
+        if (mSizes != null) {
+            Arrays.fill(mSizes, NOT_LOADED);
+        }
+    }
+
+    private class LoadTask implements Runnable {
+        private final int mTaskGeneration;
+        private final int mStart;
+        private final int mEnd;
+        private final int mTaskLaneSize;
+        private final int mTaskLaneCount;
+
+        LoadTask(int generation, int start, int end, int laneSize, int laneCount) {
+            mTaskGeneration = generation;
+            mStart = start;
+            mEnd = end;
+            mTaskLaneSize = laneSize;
+            mTaskLaneCount = laneCount;
+        }
+
+        @Override
+        public void run() {
+            final int count = mEnd - mStart;
+            final int[] sizes = new int[count];
+            final int[] spans = new int[count];
+
+            for (int i = 0; i < count; i++) {
+                final int position = mStart + i;
+                final int span =
+                        Math.max(1, Math.min(mProvider.getItemLaneSpan(position), mTaskLaneCount));
+
+                spans[i] = span;
+                sizes[i] = mProvider.getItemSize(position, span, mTaskLaneSize);
+            }
+
+            mResultExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    publish(mTaskGeneration, mStart, sizes, spans);
+                }
+            });
+        }
+    }
+}
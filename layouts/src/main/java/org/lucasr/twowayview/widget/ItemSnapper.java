@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import android.graphics.Rect;
+
+import org.lucasr.twowayview.TwoWayLayoutManager.Orientation;
+import org.lucasr.twowayview.widget.BaseLayoutManager.SnapMode;
+
+/**
+ * Resolves where the layout should come to rest for the current
+ * {@link SnapMode}. The layout feeds the laid out children between
+ * {@link #reset(Lanes, int, int)} and {@link #getScrollDistance(int, int)}.
+ */
+class ItemSnapper {
+    private final SnapPoints mSnapPoints = new SnapPoints();
+    private final Rect mTempRect = new Rect();
+
+    private SnapMode mSnapMode = SnapMode.NONE;
+
+    public void setSnapMode(SnapMode snapMode) {
+        mSnapMode = snapMode;
+    }
+
+    public SnapMode getSnapMode() {
+        return mSnapMode;
+    }
+
+    public boolean isEnabled() {
+        return (mSnapMode != SnapMode.NONE);
+    }
+
+    private int getPitch(Lanes lanes, int fixedItemSize, int childCount) {
+        if (fixedItemSize > 0) {
+            return fixedItemSize + lanes.getItemSpacing();
+        }
+
+        // Average item size along the lanes, including item spacing.
+        final Rect laneRect = mTempRect;
+        final boolean isVertical = (lanes.getOrientation() == Orientation.VERTICAL);
+
+        int extent = 0;
+        for (int i = 0; i < lanes.getCount(); i++) {
+            lanes.getLane(i, laneRect);
+            extent += (isVertical ? laneRect.height() : laneRect.width());
+        }
+
+        return extent / childCount;
+    }
+
+    public void reset(Lanes lanes, int fixedItemSize, int childCount) {
+        mSnapPoints.reset(getPitch(lanes, fixedItemSize, childCount));
+    }
+
+    /**
+     * Adds the snap point for a laid out child, given its edges and the
+     * edges of the layout, padding excluded.
+     */
+    public void addChild(int childStart, int childEnd, int start, int end) {
+        if (mSnapMode == SnapMode.ITEM_CENTER) {
+            mSnapPoints.add((childStart + childEnd) / 2 - (start + end) / 2);
+        } else {
+            mSnapPoints.add(childStart - start);
+        }
+    }
+
+    /**
+     * Returns how far the layout should scroll to rest on a snap point
+     * given how far it would have scrolled without snapping.
+     */
+    public int getScrollDistance(int distance, int pageSize) {
+        final SnapPoints snapPoints = mSnapPoints;
+        snapPoints.sort();
+
+        int snapPoint;
+        if (mSnapMode == SnapMode.PAGE && distance > 0) {
+            snapPoint = snapPoints.floor(pageSize);
+        } else if (mSnapMode == SnapMode.PAGE && distance < 0) {
+            snapPoint = snapPoints.ceiling(-pageSize);
+        } else {
+            snapPoint = snapPoints.nearest(distance);
+        }
+
+        if (distance > 0 && snapPoint <= 0) {
+            snapPoint = snapPoints.ceiling(1);
+        } else if (distance < 0 && snapPoint >= 0) {
+            snapPoint = snapPoints.floor(-1);
+        }
+
+        return snapPoint;
+    }
+}
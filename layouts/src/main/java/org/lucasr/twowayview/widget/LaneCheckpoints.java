@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import android.graphics.Rect;
+
+import org.lucasr.twowayview.MemoryUsage;
+import org.lucasr.twowayview.TwoWayLayoutManager.Orientation;
+
+import java.util.Arrays;
+
+/**
+ * Compact summary of the lane ends right before every few positions, recorded
+ * while items are laid out towards the end. Lane ends are stored relative to
+ * the shortest lane, which is all it takes to resume placing items from a
+ * checkpoint once their item entries are gone. Lane ends are in pixels, so
+ * checkpoints only hold for the lane geometry they were recorded with.
+ */
+class LaneCheckpoints {
+    public static final int CHECKPOINT_INTERVAL = 32;
+
+    private static final int MIN_SIZE = 16;
+
+    private final Orientation mOrientation;
+    private final int mLaneCount;
+    private final int mLaneSize;
+    private int[] mLaneEnds;
+    private boolean[] mRecorded;
+
+    private final Rect mTempRect = new Rect();
+
+    public LaneCheckpoints(Lanes lanes) {
+        mOrientation = lanes.getOrientation();
+        mLaneCount = lanes.getCount();
+        mLaneSize = lanes.getLaneSize();
+    }
+
+    /**
+     * Whether the checkpoints were recorded with the same lane geometry
+     * as the given lanes.
+     */
+    public boolean matches(Lanes lanes) {
+        return (lanes.getOrientation() == mOrientation &&
+                lanes.getCount() == mLaneCount &&
+                lanes.getLaneSize() == mLaneSize);
+    }
+
+    private void ensureSize(int checkpoint) {
+        if (mRecorded == null) {
+            final int size = Math.max(checkpoint + 1, MIN_SIZE);
+            mRecorded = new boolean[size];
+            mLaneEnds = new int[size * mLaneCount];
+        } else if (checkpoint >= mRecorded.length) {
+            int len = mRecorded.length;
+            while (len <= checkpoint) {
+                len *= 2;
+            }
+
+            mRecorded = Arrays.copyOf(mRecorded, len);
+            mLaneEnds = Arrays.copyOf(mLaneEnds, len * mLaneCount);
+        }
+    }
+
+    /**
+     * Records the current lane ends as the ones right before the given
+     * position, if it falls on a checkpoint.
+     */
+    public void record(int position, Lanes lanes) {
+        if (position % CHECKPOINT_INTERVAL != 0 || lanes.getCount() != mLaneCount) {
+            return;
+        }
+
+        final int checkpoint = position / CHECKPOINT_INTERVAL;
+        ensureSize(checkpoint);
+
+        final boolean isVertical = (lanes.getOrientation() == Orientation.VERTICAL);
+        final int offset = checkpoint * mLaneCount;
+
+        int minLaneEnd = Integer.MAX_VALUE;
+        for (int i = 0; i < mLaneCount; i++) {
+            lanes.getLane(i, mTempRect);
+            mLaneEnds[offset + i] = (isVertical ? mTempRect.bottom : mTempRect.right);
+            minLaneEnd = Math.min(minLaneEnd, mLaneEnds[offset + i]);
+        }
+
+        for (int i = 0; i < mLaneCount; i++) {
+            mLaneEnds[offset + i] -= minLaneEnd;
+        }
+
+        mRecorded[checkpoint] = true;
+    }
+
+    /**
+     * Fills <code>outLaneEnds</code> with the lane ends recorded for the
+     * closest checkpoint at or before the given position.
+     *
+     * @return the checkpoint position or 0 if there's none, in which case
+     *         <code>outLaneEnds</code> is left untouched.
+     */
+    public int getLaneEndsBefore(int position, int[] outLaneEnds) {
+        if (mRecorded == null) {
+            return 0;
+        }
+
+        int checkpoint = Math.min(position / CHECKPOINT_INTERVAL, mRecorded.length - 1);
+        while (checkpoint > 0 && !mRecorded[checkpoint]) {
+            checkpoint--;
+        }
+
+        if (checkpoint == 0) {
+            return 0;
+        }
+
+        System.arraycopy(mLaneEnds, checkpoint * mLaneCount, outLaneEnds, 0, mLaneCount);
+        return checkpoint * CHECKPOINT_INTERVAL;
+    }
+
+    /**
+     * Drops the checkpoints that depend on the item at the given position.
+     */
+    public void invalidateAfter(int position) {
+        if (mRecorded == null) {
+            return;
+        }
+
+        // The checkpoint at a position only depends on the items before it.
+        final int checkpoint = (position + CHECKPOINT_INTERVAL) / CHECKPOINT_INTERVAL;
+        if (checkpoint < mRecorded.length) {
+            Arrays.fill(mRecorded, checkpoint, mRecorded.length, false);
+        }
+    }
+
+    public void clear() {
+        if (mRecorded != null) {
+            Arrays.fill(mRecorded, false);
+        }
+    }
+
+    void collectMemoryUsage(MemoryUsage usage, String name) {
+        if (mRecorded == null) {
+            return;
+        }
+
+        final long bytes = MemoryUsage.getArraySize(mRecorded.length, MemoryUsage.BOOLEAN_SIZE) +
+                MemoryUsage.getArraySize(mLaneEnds.length, MemoryUsage.INT_SIZE);
+        usage.add(name, bytes, 2);
+    }
+}
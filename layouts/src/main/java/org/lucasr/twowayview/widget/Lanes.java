@@ -18,6 +18,7 @@ package org.lucasr.twowayview.widget;
 
 import android.graphics.Rect;
 
+import org.lucasr.twowayview.MemoryUsage;
 import org.lucasr.twowayview.TwoWayLayoutManager.Direction;
 import org.lucasr.twowayview.TwoWayLayoutManager.Orientation;
 
@@ -30,6 +31,10 @@ class Lanes {
     private final Rect[] mSavedLanes;
     private final int mLaneSize;
 
+    private final int mLaneSpacing;
+    private final int mItemSpacing;
+    private final int mEdgePadding;
+
     private final Rect mTempRect = new Rect();
     private final LaneInfo mTempLaneInfo = new LaneInfo();
 
@@ -61,6 +66,10 @@ class Lanes {
         mLanes = lanes;
         mLaneSize = laneSize;
 
+        mLaneSpacing = layout.getLaneSpacing();
+        mItemSpacing = layout.getItemSpacing();
+        mEdgePadding = layout.getEdgePadding();
+
         mSavedLanes = new Rect[mLanes.length];
         for (int i = 0; i < mLanes.length; i++) {
             mSavedLanes[i] = new Rect();
@@ -80,11 +89,15 @@ class Lanes {
 
         mLaneSize = calculateLaneSize(layout, laneCount);
 
+        mLaneSpacing = layout.getLaneSpacing();
+        mItemSpacing = layout.getItemSpacing();
+        mEdgePadding = layout.getEdgePadding();
+
         final int paddingLeft = layout.getPaddingLeft();
         final int paddingTop = layout.getPaddingTop();
 
         for (int i = 0; i < laneCount; i++) {
-            final int laneStart = i * mLaneSize;
+            final int laneStart = mEdgePadding + i * (mLaneSize + mLaneSpacing);
 
             final int l = paddingLeft + (mIsVertical ? laneStart : 0);
             final int t = paddingTop + (mIsVertical ? 0 : laneStart);
@@ -96,16 +109,21 @@ class Lanes {
     }
 
     public static int calculateLaneSize(BaseLayoutManager layout, int laneCount) {
+        // Gutters between lanes and the edge padding are taken out of
+        // the available space first so that all lanes have the same size.
+        final int spacing =
+                2 * layout.getEdgePadding() + (laneCount - 1) * layout.getLaneSpacing();
+
         if (layout.isVertical()) {
             final int paddingLeft = layout.getPaddingLeft();
             final int paddingRight = layout.getPaddingRight();
-            final int width = layout.getWidth() - paddingLeft - paddingRight;
-            return width / laneCount;
+            final int width = layout.getWidth() - paddingLeft - paddingRight - spacing;
+            return Math.max(0, width / laneCount);
         } else {
             final int paddingTop = layout.getPaddingTop();
             final int paddingBottom = layout.getPaddingBottom();
-            final int height = layout.getHeight() - paddingTop - paddingBottom;
-            return height / laneCount;
+            final int height = layout.getHeight() - paddingTop - paddingBottom - spacing;
+            return Math.max(0, height / laneCount);
         }
     }
 
@@ -134,6 +152,26 @@ class Lanes {
         return mLaneSize;
     }
 
+    /**
+     * Returns the size of an item spanning the given number of lanes,
+     * including the gutters between them.
+     */
+    public int getSpannedLaneSize(int laneSpan) {
+        return mLaneSize * laneSpan + mLaneSpacing * (laneSpan - 1);
+    }
+
+    public int getLaneSpacing() {
+        return mLaneSpacing;
+    }
+
+    public int getItemSpacing() {
+        return mItemSpacing;
+    }
+
+    public int getEdgePadding() {
+        return mEdgePadding;
+    }
+
     public int getCount() {
         return mLanes.length;
     }
@@ -160,24 +198,47 @@ class Lanes {
         laneRect.set(mLanes[lane]);
     }
 
+    /**
+     * Returns the last lane starting at or before the given coordinate
+     * across lanes, so that gutters map to the lane right before them, or
+     * {@link #NO_LANE} if it's before the first lane.
+     */
+    public int getLaneAt(int coordinate) {
+        int lo = 0;
+        int hi = mLanes.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int laneStart = (mIsVertical ? mLanes[mid].left : mLanes[mid].top);
+            if (laneStart > coordinate) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+
+        return (lo > 0 ? lo - 1 : NO_LANE);
+    }
+
     public int pushChildFrame(Rect outRect, int lane, int margin, Direction direction) {
         final int delta;
 
+        // Items take the item spacing after their end edge, no
+        // matter the direction they're laid out in.
         final Rect laneRect = mLanes[lane];
         if (mIsVertical) {
             if (direction == Direction.END) {
                 delta = outRect.top - laneRect.bottom;
-                laneRect.bottom = outRect.bottom + margin;
+                laneRect.bottom = outRect.bottom + mItemSpacing + margin;
             } else {
-                delta = outRect.bottom - laneRect.top;
+                delta = outRect.bottom + mItemSpacing - laneRect.top;
                 laneRect.top = outRect.top - margin;
             }
         } else {
             if (direction == Direction.END) {
                 delta = outRect.left - laneRect.right;
-                laneRect.right = outRect.right + margin;
+                laneRect.right = outRect.right + mItemSpacing + margin;
             } else {
-                delta = outRect.right - laneRect.left;
+                delta = outRect.right + mItemSpacing - laneRect.left;
                 laneRect.left = outRect.left - margin;
             }
         }
@@ -191,13 +252,13 @@ class Lanes {
         final Rect laneRect = mLanes[lane];
         if (mIsVertical) {
             if (direction == Direction.END) {
-                laneRect.top = outRect.bottom - margin;
+                laneRect.top = outRect.bottom + mItemSpacing - margin;
             } else {
                 laneRect.bottom = outRect.top + margin;
             }
         } else {
             if (direction == Direction.END) {
-                laneRect.left = outRect.right - margin;
+                laneRect.left = outRect.right + mItemSpacing - margin;
             } else {
                 laneRect.right = outRect.left + margin;
             }
@@ -219,12 +280,12 @@ class Lanes {
 
         if (mIsVertical) {
             outRect.left = startRect.left;
-            outRect.top =
-                    (direction == Direction.END ? anchorRect.bottom : anchorRect.top - childHeight);
+            outRect.top = (direction == Direction.END ?
+                    anchorRect.bottom : anchorRect.top - mItemSpacing - childHeight);
         } else {
             outRect.top = startRect.top;
-            outRect.left =
-                    (direction == Direction.END ? anchorRect.right : anchorRect.left - childWidth);
+            outRect.left = (direction == Direction.END ?
+                    anchorRect.right : anchorRect.left - mItemSpacing - childWidth);
         }
 
         outRect.right = outRect.left + childWidth;
@@ -247,8 +308,8 @@ class Lanes {
         for (int l = findStart; l < findEnd; l++) {
             mTempLaneInfo.set(l, anchorLane);
 
-            getChildFrame(mTempRect, mIsVertical ? laneSpan * mLaneSize : 1,
-                    mIsVertical ? 1 : laneSpan * mLaneSize, mTempLaneInfo, direction);
+            getChildFrame(mTempRect, mIsVertical ? getSpannedLaneSize(laneSpan) : 1,
+                    mIsVertical ? 1 : getSpannedLaneSize(laneSpan), mTempLaneInfo, direction);
 
             if (!intersects(l, laneSpan, mTempRect)) {
                 return l;
@@ -347,4 +408,15 @@ class Lanes {
 
         return mInnerEnd;
     }
+
+    void collectMemoryUsage(MemoryUsage usage, String name) {
+        final long rectSize = MemoryUsage.getObjectSize(4 * MemoryUsage.INT_SIZE);
+        final long bytes = MemoryUsage.getObjectSize(7 * MemoryUsage.REFERENCE_SIZE +
+                4 * MemoryUsage.INT_SIZE + MemoryUsage.BOOLEAN_SIZE) +
+                2 * MemoryUsage.getArraySize(mLanes.length, MemoryUsage.REFERENCE_SIZE) +
+                (2 * mLanes.length + 1) * rectSize +
+                MemoryUsage.getObjectSize(2 * MemoryUsage.INT_SIZE);
+
+        usage.add(name, bytes, 2 * mLanes.length + 5);
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import org.lucasr.twowayview.MemoryUsage;
+
+import static org.lucasr.twowayview.widget.BaseLayoutManager.MEMORY_CHILD_INDEX;
+import static org.lucasr.twowayview.widget.BaseLayoutManager.MEMORY_ITEM_ENTRIES;
+import static org.lucasr.twowayview.widget.BaseLayoutManager.MEMORY_ITEM_ENTRIES_SPARE;
+import static org.lucasr.twowayview.widget.BaseLayoutManager.MEMORY_ITEM_LANE_FLAGS;
+import static org.lucasr.twowayview.widget.BaseLayoutManager.MEMORY_LANES;
+import static org.lucasr.twowayview.widget.BaseLayoutManager.MEMORY_MEASURE_CACHE;
+import static org.lucasr.twowayview.widget.BaseLayoutManager.MEMORY_PENDING_STATE;
+import static org.lucasr.twowayview.widget.BaseLayoutManager.MEMORY_SPAN_MARGINS;
+import static org.lucasr.twowayview.widget.BaseLayoutManager.MEMORY_TRIMMED_ITEM_LANES;
+import static org.lucasr.twowayview.widget.StaggeredGridLayoutManager.MEMORY_LANE_CHECKPOINTS;
+import static org.lucasr.twowayview.widget.StaggeredGridLayoutManager.MEMORY_PLACEMENT;
+
+/**
+ * Accounts the memory retained by the parts of a layout's state under the
+ * <code>MEMORY_*</code> categories of the layout managers. Parts that are
+ * not allocated are passed as <code>null</code> and ignored.
+ */
+class LayoutMemoryCollector {
+    private final MemoryUsage mUsage = new MemoryUsage();
+
+    public MemoryUsage getUsage() {
+        return mUsage;
+    }
+
+    public void addItemEntries(ItemEntries itemEntries) {
+        if (itemEntries != null) {
+            itemEntries.collectMemoryUsage(mUsage, MEMORY_ITEM_ENTRIES, MEMORY_SPAN_MARGINS,
+                    MEMORY_ITEM_ENTRIES_SPARE, MEMORY_TRIMMED_ITEM_LANES);
+        }
+    }
+
+    public void addPendingItemEntries(ItemEntries itemEntries) {
+        if (itemEntries != null) {
+            itemEntries.collectMemoryUsage(mUsage, MEMORY_PENDING_STATE, MEMORY_PENDING_STATE,
+                    MEMORY_PENDING_STATE, MEMORY_PENDING_STATE);
+        }
+    }
+
+    public void addLanes(Lanes lanes) {
+        if (lanes != null) {
+            lanes.collectMemoryUsage(mUsage, MEMORY_LANES);
+        }
+    }
+
+    public void addPendingLanes(Lanes lanes) {
+        if (lanes != null) {
+            lanes.collectMemoryUsage(mUsage, MEMORY_PENDING_STATE);
+        }
+    }
+
+    public void addItemLaneFlags(ItemLaneFlags itemLaneFlags) {
+        itemLaneFlags.collectMemoryUsage(mUsage, MEMORY_ITEM_LANE_FLAGS);
+    }
+
+    public void addMeasureCache(MeasureCache measureCache) {
+        if (measureCache != null) {
+            measureCache.collectMemoryUsage(mUsage, MEMORY_MEASURE_CACHE);
+        }
+    }
+
+    public void addChildLaneIndex(ChildLaneIndex<?> childLaneIndex) {
+        childLaneIndex.collectMemoryUsage(mUsage, MEMORY_CHILD_INDEX);
+    }
+
+    public void addLaneCheckpoints(LaneCheckpoints laneCheckpoints) {
+        if (laneCheckpoints != null) {
+            laneCheckpoints.collectMemoryUsage(mUsage, MEMORY_LANE_CHECKPOINTS);
+        }
+    }
+
+    public void addPlacement(StaggeredPlacement placement) {
+        if (placement != null) {
+            placement.collectMemoryUsage(mUsage, MEMORY_PLACEMENT);
+        }
+    }
+}
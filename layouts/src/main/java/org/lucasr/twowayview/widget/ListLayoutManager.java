@@ -43,6 +43,11 @@ public class ListLayoutManager extends BaseLayoutManager {
         return 1;
     }
 
+    @Override
+    boolean supportsFixedItemSize() {
+        return true;
+    }
+
     @Override
     void getLaneForPosition(LaneInfo outInfo, int position, Direction direction) {
         outInfo.set(0, 0);
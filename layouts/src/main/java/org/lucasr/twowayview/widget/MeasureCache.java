@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import android.support.v4.util.LongSparseArray;
+
+import org.lucasr.twowayview.MemoryUsage;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the measured dimensions of child views keyed by a content key
+ * (stable id or adapter-provided key), lane span and lane size. An entry
+ * only matches if all three are the same as when the child was measured.
+ * The cache holds at most a fixed number of entries, the least recently
+ * used ones are evicted in bulk once it's full.
+ */
+class MeasureCache {
+    public static final int DEFAULT_MAX_SIZE = 512;
+
+    private static class MeasureEntry {
+        int span;
+        int laneSize;
+        int width;
+        int height;
+        int lastUsed;
+    }
+
+    private final LongSparseArray<MeasureEntry> mEntries = new LongSparseArray<MeasureEntry>();
+    private final int mMaxSize;
+
+    // Increases on every access, entries record it to tell which ones
+    // were used least recently.
+    private int mClock;
+
+    public MeasureCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public MeasureCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size should be positive");
+        }
+
+        mMaxSize = maxSize;
+    }
+
+    private MeasureEntry getMatchingEntry(long key, int span, int laneSize) {
+        final MeasureEntry entry = mEntries.get(key);
+        if (entry == null || entry.span != span || entry.laneSize != laneSize) {
+            return null;
+        }
+
+        entry.lastUsed = tick();
+        return entry;
+    }
+
+    public boolean contains(long key, int span, int laneSize) {
+        return (getMatchingEntry(key, span, laneSize) != null);
+    }
+
+    public int getWidth(long key, int span, int laneSize) {
+        final MeasureEntry entry = getMatchingEntry(key, span, laneSize);
+        return (entry != null ? entry.width : 0);
+    }
+
+    public int getHeight(long key, int span, int laneSize) {
+        final MeasureEntry entry = getMatchingEntry(key, span, laneSize);
+        return (entry != null ? entry.height : 0);
+    }
+
+    public void put(long key, int span, int laneSize, int width, int height) {
+        MeasureEntry entry = mEntries.get(key);
+        if (entry == null) {
+            if (mEntries.size() >= mMaxSize) {
+                evict();
+            }
+
+            entry = new MeasureEntry();
+            mEntries.put(key, entry);
+        }
+
+        entry.span = span;
+        entry.laneSize = laneSize;
+        entry.width = width;
+        entry.height = height;
+        entry.lastUsed = tick();
+    }
+
+    private int tick() {
+        if (mClock == Integer.MAX_VALUE) {
+            // Start over rather than wrapping around, entries then look
+            // equally old until they're used again.
+            for (int i = 0; i < mEntries.size(); i++) {
+                mEntries.valueAt(i).lastUsed = 0;
+            }
+
+            mClock = 0;
+        }
+
+        return ++mClock;
+    }
+
+    /**
+     * Drops the least recently used quarter of the entries, so that the
+     * cost of finding them is spread over many insertions.
+     */
+    private void evict() {
+        final int size = mEntries.size();
+        final int[] lastUsed = new int[size];
+        for (int i = 0; i < size; i++) {
+            lastUsed[i] = mEntries.valueAt(i).lastUsed;
+        }
+
+        Arrays.sort(lastUsed);
+        final int cutoff = lastUsed[Math.max(0, size / 4 - 1)];
+
+        for (int i = size - 1; i >= 0; i--) {
+            if (mEntries.valueAt(i).lastUsed <= cutoff) {
+                mEntries.removeAt(i);
+            }
+        }
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    public void invalidate(long key) {
+        mEntries.delete(key);
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    public void clear() {
+        mEntries.clear();
+        mClock = 0;
+    }
+
+    void collectMemoryUsage(MemoryUsage usage, String name) {
+        // LongSparseArray keeps parallel key and value arrays.
+        final int size = mEntries.size();
+        final long bytes = MemoryUsage.getArraySize(size, MemoryUsage.LONG_SIZE) +
+                MemoryUsage.getArraySize(size, MemoryUsage.REFERENCE_SIZE) +
+                size * MemoryUsage.getObjectSize(5 * MemoryUsage.INT_SIZE);
+
+        usage.add(name, bytes, size + 2);
+    }
+}
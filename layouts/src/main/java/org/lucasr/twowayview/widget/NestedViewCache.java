@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import android.os.Parcelable;
+import android.support.v4.util.LruCache;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.RecyclerView.LayoutManager;
+import android.support.v7.widget.RecyclerView.RecycledViewPool;
+
+/**
+ * Shares state between {@link RecyclerView}s nested in the rows of an outer
+ * one e.g. horizontal carousels inside a vertical list. All nested views
+ * attached to the cache share a single {@link RecycledViewPool}, and the
+ * layout state of each row (anchor, lanes and item entries) is kept by row
+ * id so that a rebound row is restored where it was left without running
+ * lane placement again.
+ *
+ * <p>Typical usage from the outer adapter:</p>
+ * <pre>
+ * onCreateViewHolder(): cache.attach(innerView);
+ * onBindViewHolder():   innerView.swapAdapter(rowAdapter, false);
+ *                       cache.restoreLayoutState(rowId, innerView);
+ * onViewRecycled():     cache.saveLayoutState(rowId, innerView);
+ * </pre>
+ */
+public class NestedViewCache {
+    private static final int DEFAULT_MAX_LAYOUT_STATES = 64;
+
+    private final RecycledViewPool mViewPool;
+    private final LruCache<Long, Parcelable> mLayoutStates;
+
+    public NestedViewCache() {
+        this(new RecycledViewPool(), DEFAULT_MAX_LAYOUT_STATES);
+    }
+
+    public NestedViewCache(RecycledViewPool viewPool, int maxLayoutStates) {
+        if (viewPool == null) {
+            throw new IllegalArgumentException("View pool should not be null");
+        }
+
+        if (maxLayoutStates < 1) {
+            throw new IllegalArgumentException("Max layout states should be at least 1");
+        }
+
+        mViewPool = viewPool;
+        mLayoutStates = new LruCache<Long, Parcelable>(maxLayoutStates);
+    }
+
+    public RecycledViewPool getRecycledViewPool() {
+        return mViewPool;
+    }
+
+    /**
+     * Makes the given nested view use the shared view pool.
+     */
+    public void attach(RecyclerView view) {
+        view.setRecycledViewPool(mViewPool);
+    }
+
+    /**
+     * Stores the layout state of the nested view currently showing the
+     * given row. It should be called before the view is rebound to
+     * another row.
+     */
+    public void saveLayoutState(long rowId, RecyclerView view) {
+        final LayoutManager layout = view.getLayoutManager();
+        if (layout == null) {
+            return;
+        }
+
+        final Parcelable state;
+        if (layout instanceof BaseLayoutManager) {
+            state = ((BaseLayoutManager) layout).detachInstanceState();
+        } else {
+            state = layout.onSaveInstanceState();
+        }
+
+        if (state != null) {
+            putLayoutState(rowId, state);
+        }
+    }
+
+    void putLayoutState(long rowId, Parcelable state) {
+        mLayoutStates.put(rowId, state);
+    }
+
+    /**
+     * Returns the layout state stored for the given row, if any, and
+     * removes it from the cache.
+     */
+    Parcelable takeLayoutState(long rowId) {
+        return mLayoutStates.remove(rowId);
+    }
+
+    /**
+     * Restores the layout state stored for the given row into the nested
+     * view. The stored state is handed over to the view's layout manager
+     * and removed from the cache. If there's no state for the row, the
+     * view is scrolled back to its first item.
+     *
+     * @return <code>true</code> if a layout state was restored.
+     */
+    public boolean restoreLayoutState(long rowId, RecyclerView view) {
+        final Parcelable state = takeLayoutState(rowId);
+        final LayoutManager layout = view.getLayoutManager();
+
+        if (state == null || layout == null) {
+            view.scrollToPosition(0);
+            return false;
+        }
+
+        layout.onRestoreInstanceState(state);
+        return true;
+    }
+
+    public void removeLayoutState(long rowId) {
+        mLayoutStates.remove(rowId);
+    }
+
+    /**
+     * Drops all stored layout states and recycled views.
+     */
+    public void clear() {
+        mLayoutStates.evictAll();
+        mViewPool.clear();
+    }
+}
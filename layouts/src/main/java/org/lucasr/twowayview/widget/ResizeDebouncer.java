@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+/**
+ * Tracks continuous resizes e.g. split-screen drags. The lanes from before
+ * the resize started are kept until the size hasn't changed for the
+ * debounce delay, the settle callback then runs through the given scheduler.
+ */
+class ResizeDebouncer<T> {
+    interface Scheduler {
+        void schedule(Runnable runnable, long delayMillis);
+        void cancel(Runnable runnable);
+    }
+
+    private final Scheduler mScheduler;
+    private final Runnable mOnSettled;
+
+    private long mDelay;
+    private T mLanesBeforeResize;
+    private boolean mSettled;
+
+    private final Runnable mSettleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mLanesBeforeResize != null) {
+                mSettled = true;
+                mOnSettled.run();
+            }
+        }
+    };
+
+    public ResizeDebouncer(Scheduler scheduler, Runnable onSettled) {
+        mScheduler = scheduler;
+        mOnSettled = onSettled;
+    }
+
+    public void setDelay(long delayMillis) {
+        mDelay = delayMillis;
+
+        if (delayMillis == 0 && mLanesBeforeResize != null) {
+            mScheduler.cancel(mSettleRunnable);
+            mSettleRunnable.run();
+        }
+    }
+
+    public long getDelay() {
+        return mDelay;
+    }
+
+    public boolean isEnabled() {
+        return (mDelay > 0);
+    }
+
+    public boolean isResizing() {
+        return (mLanesBeforeResize != null);
+    }
+
+    public boolean isSettled() {
+        return mSettled;
+    }
+
+    public T getLanesBeforeResize() {
+        return mLanesBeforeResize;
+    }
+
+    /**
+     * Called on every size change while resizing, the given lanes are kept
+     * if the resize just started. Restarts the debounce delay.
+     */
+    public void onResize(T lanes) {
+        if (mLanesBeforeResize == null) {
+            mLanesBeforeResize = lanes;
+        }
+
+        mScheduler.cancel(mSettleRunnable);
+        mScheduler.schedule(mSettleRunnable, mDelay);
+    }
+
+    /**
+     * Ends the current resize, if any. Returns the lanes from before it
+     * started or <code>null</code> if there was none.
+     */
+    public T finish() {
+        final T lanes = mLanesBeforeResize;
+        mLanesBeforeResize = null;
+        mSettled = false;
+
+        return lanes;
+    }
+}
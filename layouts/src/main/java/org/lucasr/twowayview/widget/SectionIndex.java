@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import java.util.Arrays;
+
+import org.lucasr.twowayview.widget.SectionedLayoutManager.SectionAdapter;
+
+/**
+ * Sorted table of section header positions and lane counts. Sections
+ * are looked up with a binary search over the header positions. The
+ * layout lane count is the least common multiple of all section lane
+ * counts so that every section can split it evenly. It's capped at
+ * {@link #MAX_TOTAL_LANE_COUNT} as every layout lane has its own geometry
+ * and the space left over by dividing the layout in lanes grows with
+ * their number.
+ */
+final class SectionIndex {
+    public static final int NO_SECTION = -1;
+    public static final int MAX_TOTAL_LANE_COUNT = 24;
+
+    static final SectionIndex EMPTY = new SectionIndex(new int[0], new int[0], 1);
+
+    private final int[] mHeaderPositions;
+    private final int[] mLaneCounts;
+    private final int mTotalLaneCount;
+
+    private SectionIndex(int[] headerPositions, int[] laneCounts, int totalLaneCount) {
+        mHeaderPositions = headerPositions;
+        mLaneCounts = laneCounts;
+        mTotalLaneCount = totalLaneCount;
+    }
+
+    public static SectionIndex build(SectionAdapter adapter, int itemCount) {
+        final int sectionCount = (itemCount > 0 ? adapter.getSectionCount() : 0);
+        if (sectionCount == 0) {
+            if (itemCount > 0) {
+                throw new IllegalStateException("Adapter items must belong to a section");
+            }
+
+            return EMPTY;
+        }
+
+        final int[] headerPositions = new int[sectionCount];
+        final int[] laneCounts = new int[sectionCount];
+
+        int totalLaneCount = 1;
+        for (int i = 0; i < sectionCount; i++) {
+            final int headerPosition = adapter.getSectionHeaderPosition(i);
+            if (i == 0 && headerPosition != 0) {
+                throw new IllegalStateException("First section must start at position 0");
+            }
+
+            if (i > 0 && headerPosition <= headerPositions[i - 1]) {
+                throw new IllegalStateException("Section " + i + " does not start after " +
+                        "the previous section");
+            }
+
+            if (headerPosition >= itemCount) {
+                throw new IllegalStateException("Section " + i + " starts after the last item");
+            }
+
+            final int laneCount = adapter.getSectionLaneCount(i);
+            if (laneCount < 1) {
+                throw new IllegalStateException("Section " + i + " must have at least 1 lane");
+            }
+
+            headerPositions[i] = headerPosition;
+            laneCounts[i] = laneCount;
+
+            final long lanesNeeded = leastCommonMultiple(totalLaneCount, laneCount);
+            if (lanesNeeded > MAX_TOTAL_LANE_COUNT) {
+                throw new IllegalStateException("Section lane counts need " + lanesNeeded +
+                        " layout lanes to line up, at most " + MAX_TOTAL_LANE_COUNT +
+                        " are supported");
+            }
+
+            totalLaneCount = (int) lanesNeeded;
+        }
+
+        return new SectionIndex(headerPositions, laneCounts, totalLaneCount);
+    }
+
+    private static long leastCommonMultiple(int a, int b) {
+        int x = a;
+        int y = b;
+        while (y != 0) {
+            final int t = x % y;
+            x = y;
+            y = t;
+        }
+
+        return (long) (a / x) * b;
+    }
+
+    public int getSectionCount() {
+        return mHeaderPositions.length;
+    }
+
+    public int getSectionForPosition(int position) {
+        final int index = Arrays.binarySearch(mHeaderPositions, position);
+        if (index >= 0) {
+            return index;
+        }
+
+        // The insertion point is the first section starting after
+        // the position, the one before it holds the position.
+        final int section = -index - 2;
+        return (section >= 0 ? section : NO_SECTION);
+    }
+
+    public int getHeaderPosition(int section) {
+        return mHeaderPositions[section];
+    }
+
+    public boolean isHeader(int position) {
+        return (Arrays.binarySearch(mHeaderPositions, position) >= 0);
+    }
+
+    public int getLaneCount(int section) {
+        return mLaneCounts[section];
+    }
+
+    /**
+     * Returns the number of layout lanes spanned by each item of the given
+     * section, excluding its header.
+     */
+    public int getLaneSpan(int section) {
+        return mTotalLaneCount / mLaneCounts[section];
+    }
+
+    public int getTotalLaneCount() {
+        return mTotalLaneCount;
+    }
+}
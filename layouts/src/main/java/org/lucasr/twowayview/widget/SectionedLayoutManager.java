@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.RecyclerView.Adapter;
+import android.support.v7.widget.RecyclerView.Recycler;
+import android.support.v7.widget.RecyclerView.State;
+import android.util.AttributeSet;
+import android.view.View;
+
+import org.lucasr.twowayview.widget.Lanes.LaneInfo;
+
+/**
+ * Lays out items in sections, each one starting with a header spanning
+ * the whole layout and followed by items arranged in the section's own
+ * number of lanes. The adapter describes its sections by implementing
+ * {@link SectionAdapter}.
+ *
+ * @see StickyHeaderItemDecoration
+ */
+public class SectionedLayoutManager extends BaseLayoutManager {
+    private static final String LOGTAG = "SectionedLayoutManager";
+
+    /**
+     * Adapters used with {@link SectionedLayoutManager} must implement this
+     * interface. Sections are listed in adapter order, the first one starting
+     * at position 0. Each section header is followed by the section items
+     * up to the next section header.
+     *
+     * Sections are laid out on a shared set of lanes, as many as the least
+     * common multiple of all section lane counts. Combinations needing more
+     * than 24 lanes e.g. sections with 5 and 7 lanes are not supported.
+     * Updated items are assumed to keep their sections, notify structural
+     * changes for sections to be looked up again.
+     */
+    public interface SectionAdapter {
+        int getSectionCount();
+        int getSectionHeaderPosition(int section);
+        int getSectionLaneCount(int section);
+    }
+
+    private SectionIndex mSectionIndex;
+
+    public SectionedLayoutManager(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public SectionedLayoutManager(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+    }
+
+    public SectionedLayoutManager(Context context, Orientation orientation) {
+        super(orientation);
+    }
+
+    private SectionIndex getSectionIndex() {
+        if (mSectionIndex != null) {
+            return mSectionIndex;
+        }
+
+        final Adapter adapter = getAdapter();
+        if (adapter == null) {
+            return SectionIndex.EMPTY;
+        }
+
+        if (!(adapter instanceof SectionAdapter)) {
+            throw new IllegalStateException("SectionedLayoutManager can only be used with " +
+                    "adapters implementing SectionAdapter");
+        }
+
+        mSectionIndex = SectionIndex.build((SectionAdapter) adapter, adapter.getItemCount());
+        return mSectionIndex;
+    }
+
+    private void invalidateSectionIndex() {
+        mSectionIndex = null;
+    }
+
+    @Override
+    int getLaneCount() {
+        return getSectionIndex().getTotalLaneCount();
+    }
+
+    @Override
+    int getLaneSpanForChild(View child) {
+        return getLaneSpanForPosition(getPosition(child));
+    }
+
+    @Override
+    int getLaneSpanForPosition(int position) {
+        final SectionIndex index = getSectionIndex();
+        final int section = index.getSectionForPosition(position);
+
+        if (index.getHeaderPosition(section) == position) {
+            return index.getTotalLaneCount();
+        }
+
+        return index.getLaneSpan(section);
+    }
+
+    @Override
+    void getLaneForPosition(LaneInfo outInfo, int position, Direction direction) {
+        final SectionIndex index = getSectionIndex();
+        final int section = index.getSectionForPosition(position);
+        final int headerPosition = index.getHeaderPosition(section);
+
+        // Headers span all lanes and are anchored to the longest lane
+        // of the previous section when laid out towards the end.
+        if (position == headerPosition) {
+            getLanes().findLane(outInfo, index.getTotalLaneCount(), direction);
+            return;
+        }
+
+        final int column = (position - headerPosition - 1) % index.getLaneCount(section);
+        final int lane = column * index.getLaneSpan(section);
+        outInfo.set(lane, lane);
+    }
+
+    @Override
+    void moveLayoutToPosition(int position, int offset, Recycler recycler, State state) {
+        final Lanes lanes = getLanes();
+        lanes.reset(offset);
+
+        if (isSectionHeader(position)) {
+            return;
+        }
+
+        getLaneForPosition(mTempLaneInfo, position, Direction.END);
+        final int lane = mTempLaneInfo.startLane;
+        if (lane == 0) {
+            return;
+        }
+
+        int dimension = getProvidedItemSize(position);
+        if (dimension == ItemSizeProvider.NO_SIZE) {
+            final View child = recycler.getViewForPosition(position);
+            measureChild(child, Direction.END);
+
+            dimension =
+                    (isVertical() ? getDecoratedMeasuredHeight(child) : getDecoratedMeasuredWidth(child));
+        }
+
+        for (int i = lane - 1; i >= 0; i--) {
+            lanes.offset(i, dimension + lanes.getItemSpacing());
+        }
+    }
+
+    @Override
+    ItemEntry cacheChildLaneAndSpan(View child, Direction direction) {
+        final int position = getPosition(child);
+        if (!isSectionHeader(position)) {
+            return null;
+        }
+
+        // Header lanes are always resolved from the current lane edges,
+        // the entry only keeps the span margins needed to restore the
+        // ragged end of the previous section when scrolling back.
+        ItemEntry entry = getItemEntryForPosition(position);
+        if (entry == null) {
+            entry = new ItemEntry(Lanes.NO_LANE, Lanes.NO_LANE);
+            setItemEntryForPosition(position, entry);
+        }
+
+        return entry;
+    }
+
+    @Override
+    ItemEntry cacheChildFrame(View child, Rect childFrame) {
+        final int position = getPosition(child);
+        return (isSectionHeader(position) ? getItemEntryForPosition(position) : null);
+    }
+
+    @Override
+    public void onAdapterChanged(Adapter oldAdapter, Adapter newAdapter) {
+        invalidateSectionIndex();
+        super.onAdapterChanged(oldAdapter, newAdapter);
+    }
+
+    @Override
+    public void onItemsAdded(RecyclerView recyclerView, int positionStart, int itemCount) {
+        invalidateSectionIndex();
+        super.onItemsAdded(recyclerView, positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemsRemoved(RecyclerView recyclerView, int positionStart, int itemCount) {
+        invalidateSectionIndex();
+        super.onItemsRemoved(recyclerView, positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemsMoved(RecyclerView recyclerView, int from, int to, int itemCount) {
+        invalidateSectionIndex();
+        super.onItemsMoved(recyclerView, from, to, itemCount);
+    }
+
+    @Override
+    public void onItemsChanged(RecyclerView recyclerView) {
+        invalidateSectionIndex();
+        super.onItemsChanged(recyclerView);
+    }
+
+    public int getSectionCount() {
+        return getSectionIndex().getSectionCount();
+    }
+
+    /**
+     * Returns the section holding the given adapter position. Sections are
+     * looked up in O(log n) time on the number of sections.
+     */
+    public int getSectionForPosition(int position) {
+        return getSectionIndex().getSectionForPosition(position);
+    }
+
+    public int getSectionHeaderPosition(int section) {
+        return getSectionIndex().getHeaderPosition(section);
+    }
+
+    public boolean isSectionHeader(int position) {
+        return getSectionIndex().isHeader(position);
+    }
+
+    /**
+     * Returns the adapter position of the header that should stick to the
+     * start of the layout i.e. the header of the section holding the first
+     * visible item, or {@link RecyclerView#NO_POSITION} if there are no
+     * items laid out.
+     */
+    public int getStickyHeaderPosition() {
+        if (getChildCount() == 0) {
+            return RecyclerView.NO_POSITION;
+        }
+
+        final SectionIndex index = getSectionIndex();
+        final int section = index.getSectionForPosition(getFirstVisiblePosition());
+        if (section == SectionIndex.NO_SECTION) {
+            return RecyclerView.NO_POSITION;
+        }
+
+        return index.getHeaderPosition(section);
+    }
+
+    /**
+     * Returns where the sticky header with the given size should start
+     * along the scrolling direction. The header sticks to the start of the
+     * layout until the header of the next section pushes it out.
+     */
+    public int getStickyHeaderStart(int headerSize) {
+        final int start = getStartWithPadding();
+        if (getChildCount() == 0) {
+            return start;
+        }
+
+        final SectionIndex index = getSectionIndex();
+        final int nextSection = index.getSectionForPosition(getFirstVisiblePosition()) + 1;
+        if (nextSection >= index.getSectionCount()) {
+            return start;
+        }
+
+        final View nextHeader = findViewByPosition(index.getHeaderPosition(nextSection));
+        if (nextHeader == null) {
+            return start;
+        }
+
+        return Math.min(start, getChildStart(nextHeader) - headerSize);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import android.support.v7.widget.RecyclerView;
+
+import org.lucasr.twowayview.widget.BaseLayoutManager.ItemSizeProvider;
+
+/**
+ * Finds where to jump to before smoothly scrolling to a distant position,
+ * from the known extents of the items right before the target.
+ */
+final class SmoothScrollJump {
+    /**
+     * Extents of the items along the scrolling direction, multiplied by
+     * their lane span, or {@link ItemSizeProvider#NO_SIZE} when unknown.
+     */
+    interface ItemExtents {
+        int getItemExtent(int position);
+    }
+
+    private SmoothScrollJump() {
+    }
+
+    /**
+     * Walks from the target towards the visible items adding up the known
+     * item extents until they cover the given distance, and returns the
+     * position reached. Returns <code>estimate</code> as soon as an item
+     * extent is not known, and {@link RecyclerView#NO_POSITION} if the
+     * visible items are reached first.
+     */
+    static int findJumpPosition(ItemExtents extents, int targetPosition, int firstPosition,
+                                int lastPosition, int distance, int estimate) {
+        final boolean towardsEnd = (estimate < targetPosition);
+
+        int extent = 0;
+        int position = targetPosition;
+        while (extent < distance) {
+            final int itemPosition = (towardsEnd ? position - 1 : position);
+            position += (towardsEnd ? -1 : 1);
+
+            if (position <= lastPosition && position >= firstPosition) {
+                return RecyclerView.NO_POSITION;
+            }
+
+            final int itemExtent = extents.getItemExtent(itemPosition);
+            if (itemExtent == ItemSizeProvider.NO_SIZE) {
+                return estimate;
+            }
+
+            extent += itemExtent;
+        }
+
+        return position;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import java.util.Arrays;
+
+/**
+ * Sorted scroll distances at which the layout rests on a snap point. Known
+ * points come from the laid out items, points past them are extrapolated
+ * every <code>pitch</code> pixels in both directions.
+ */
+class SnapPoints {
+    private static final int MIN_SIZE = 16;
+
+    private int[] mPoints = new int[MIN_SIZE];
+    private int mCount;
+    private int mPitch;
+
+    public void reset(int pitch) {
+        mCount = 0;
+        mPitch = Math.max(1, pitch);
+    }
+
+    public void add(int point) {
+        if (mCount == mPoints.length) {
+            mPoints = Arrays.copyOf(mPoints, mCount * 2);
+        }
+
+        mPoints[mCount++] = point;
+    }
+
+    public void sort() {
+        Arrays.sort(mPoints, 0, mCount);
+    }
+
+    /**
+     * Returns the largest snap point equal or smaller than the given distance.
+     */
+    public int floor(int distance) {
+        final int first = mPoints[0];
+        final int last = mPoints[mCount - 1];
+
+        if (distance >= last) {
+            return last + ((distance - last) / mPitch) * mPitch;
+        } else if (distance < first) {
+            return first - ((first - distance + mPitch - 1) / mPitch) * mPitch;
+        }
+
+        final int index = Arrays.binarySearch(mPoints, 0, mCount, distance);
+        return (index >= 0 ? mPoints[index] : mPoints[-index - 2]);
+    }
+
+    /**
+     * Returns the smallest snap point equal or bigger than the given distance.
+     */
+    public int ceiling(int distance) {
+        final int first = mPoints[0];
+        final int last = mPoints[mCount - 1];
+
+        if (distance <= first) {
+            return first - ((first - distance) / mPitch) * mPitch;
+        } else if (distance > last) {
+            return last + ((distance - last + mPitch - 1) / mPitch) * mPitch;
+        }
+
+        final int index = Arrays.binarySearch(mPoints, 0, mCount, distance);
+        return (index >= 0 ? mPoints[index] : mPoints[-index - 1]);
+    }
+
+    public int nearest(int distance) {
+        final int floor = floor(distance);
+        final int ceiling = ceiling(distance);
+        return (distance - floor <= ceiling - distance ? floor : ceiling);
+    }
+}
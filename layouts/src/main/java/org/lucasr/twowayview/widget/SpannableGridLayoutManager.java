@@ -28,6 +28,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewGroup.MarginLayoutParams;
 
+import org.lucasr.twowayview.MemoryUsage;
 import org.lucasr.twowayview.widget.Lanes.LaneInfo;
 
 public class SpannableGridLayoutManager extends GridLayoutManager {
@@ -52,6 +53,11 @@ public class SpannableGridLayoutManager extends GridLayoutManager {
             this.rowSpan = in.readInt();
         }
 
+        @Override
+        int getFieldsSize() {
+            return super.getFieldsSize() + 2 * MemoryUsage.INT_SIZE;
+        }
+
         @Override
         public void writeToParcel(Parcel out, int flags) {
             super.writeToParcel(out, flags);
@@ -92,11 +98,19 @@ public class SpannableGridLayoutManager extends GridLayoutManager {
     }
 
     private int getChildWidth(int colSpan) {
-        return getLanes().getLaneSize() * colSpan;
+        return getCellSpanSize(colSpan, isVertical());
     }
 
     private int getChildHeight(int rowSpan) {
-        return getLanes().getLaneSize() * rowSpan;
+        return getCellSpanSize(rowSpan, !isVertical());
+    }
+
+    private int getCellSpanSize(int span, boolean acrossLanes) {
+        // Cells spanning lanes include the gutters between them, cells
+        // spanning along the lanes include the item spacing instead.
+        final Lanes lanes = getLanes();
+        final int spacing = (acrossLanes ? lanes.getLaneSpacing() : lanes.getItemSpacing());
+        return lanes.getLaneSize() * span + spacing * (span - 1);
     }
 
     private static int getLaneSpan(LayoutParams lp, boolean isVertical) {
@@ -117,11 +131,23 @@ public class SpannableGridLayoutManager extends GridLayoutManager {
         return super.canScrollVertically() && !mMeasuring;
     }
 
+    @Override
+    boolean supportsFixedItemSize() {
+        return false;
+    }
+
     @Override
     int getLaneSpanForChild(View child) {
         return getLaneSpan((LayoutParams) child.getLayoutParams(), isVertical());
     }
 
+    @Override
+    int getMeasureSpanForChild(View child) {
+        // Child frames depend on both spans here.
+        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+        return (lp.rowSpan << 16) | lp.colSpan;
+    }
+
     @Override
     int getLaneSpanForPosition(int position) {
         final SpannableItemEntry entry = (SpannableItemEntry) getItemEntryForPosition(position);
@@ -132,6 +158,13 @@ public class SpannableGridLayoutManager extends GridLayoutManager {
         return getLaneSpan(entry, isVertical());
     }
 
+    @Override
+    boolean canTrimItemEntries() {
+        // Spans are only known from the item entries, they can't
+        // be resolved again once dropped.
+        return false;
+    }
+
     @Override
     void getLaneForPosition(LaneInfo outInfo, int position, Direction direction) {
         final SpannableItemEntry entry = (SpannableItemEntry) getItemEntryForPosition(position);
@@ -22,20 +22,46 @@ import android.graphics.Rect;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.RecyclerView.Adapter;
 import android.support.v7.widget.RecyclerView.Recycler;
 import android.support.v7.widget.RecyclerView.State;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewGroup;
 
+import org.lucasr.twowayview.MemoryUsage;
 import org.lucasr.twowayview.widget.Lanes.LaneInfo;
 
+import java.util.concurrent.Executor;
+
 public class StaggeredGridLayoutManager extends GridLayoutManager {
     private static final String LOGTAG = "StaggeredGridLayoutManager";
 
     private static final int DEFAULT_NUM_COLS = 2;
     private static final int DEFAULT_NUM_ROWS = 2;
 
+    public static final int PLACEMENT_PRECOMPUTE_NONE = 0;
+    public static final int PLACEMENT_PRECOMPUTE_ALL = Integer.MAX_VALUE;
+
+    /**
+     * Memory usage categories added to the ones in {@link BaseLayoutManager},
+     * see {@link #getMemoryUsage()}.
+     */
+    public static final String MEMORY_LANE_CHECKPOINTS = "laneCheckpoints";
+    public static final String MEMORY_PLACEMENT = "placement";
+
+    /**
+     * Adapters can implement this interface to flag items whose size along
+     * the scrolling direction doesn't scale with the lane size e.g. items
+     * with text content. Such items are measured again after the lane size
+     * changes, even if item size rescaling is enabled.
+     *
+     * @see #setItemSizeRescalingEnabled(boolean)
+     */
+    public interface ItemScalingProvider {
+        boolean isItemSizeScalable(int position);
+    }
+
     protected static class StaggeredItemEntry extends BaseLayoutManager.ItemEntry {
         private final int span;
         private int width;
@@ -53,6 +79,45 @@ public class StaggeredGridLayoutManager extends GridLayoutManager {
             this.height = in.readInt();
         }
 
+        @Override
+        int getFieldsSize() {
+            return super.getFieldsSize() + 3 * MemoryUsage.INT_SIZE;
+        }
+
+        int getWidth() {
+            return width;
+        }
+
+        int getHeight() {
+            return height;
+        }
+
+        void setSize(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Scales the cached size to the new spanned lane size, keeping its
+         * aspect ratio. Returns <code>false</code> if there's no size to
+         * scale.
+         */
+        boolean rescale(int oldLaneSize, int laneSize, boolean isVertical) {
+            if (width <= 0 || height <= 0 || oldLaneSize <= 0) {
+                return false;
+            }
+
+            if (isVertical) {
+                height = Math.round((float) height * laneSize / oldLaneSize);
+                width = laneSize;
+            } else {
+                width = Math.round((float) width * laneSize / oldLaneSize);
+                height = laneSize;
+            }
+
+            return true;
+        }
+
         @Override
         public void writeToParcel(Parcel out, int flags) {
             super.writeToParcel(out, flags);
@@ -75,6 +140,17 @@ public class StaggeredGridLayoutManager extends GridLayoutManager {
         };
     }
 
+    private boolean mItemSizeRescaling;
+
+    private int mPlacementLimit = PLACEMENT_PRECOMPUTE_NONE;
+    private StaggeredPlacement mPlacement;
+    private int mPlacementGeneration;
+    private boolean mComputingPlacement;
+    private int[] mTempLaneEnds;
+
+    private LaneCheckpoints mLaneCheckpoints;
+    private boolean mInPreLayout;
+
     public StaggeredGridLayoutManager(Context context) {
         this(context, null);
     }
@@ -91,6 +167,11 @@ public class StaggeredGridLayoutManager extends GridLayoutManager {
         super(orientation, numColumns, numRows);
     }
 
+    @Override
+    boolean supportsFixedItemSize() {
+        return false;
+    }
+
     @Override
     int getLaneSpanForChild(View child) {
         LayoutParams lp = (LayoutParams) child.getLayoutParams();
@@ -100,11 +181,35 @@ public class StaggeredGridLayoutManager extends GridLayoutManager {
     @Override
     int getLaneSpanForPosition(int position) {
         final StaggeredItemEntry entry = (StaggeredItemEntry) getItemEntryForPosition(position);
-        if (entry == null) {
-            throw new IllegalStateException("Could not find span for position " + position);
+        if (entry != null) {
+            return entry.span;
         }
 
-        return entry.span;
+        final StaggeredPlacement placement = getPlacement();
+        if (placement != null && position < placement.getCount()) {
+            return placement.getSpan(position);
+        }
+
+        throw new IllegalStateException("Could not find span for position " + position);
+    }
+
+    @Override
+    int getKnownItemExtent(int position) {
+        final int itemSpacing = getLanes().getItemSpacing();
+
+        // Entries only get a size once their item has been measured.
+        final StaggeredItemEntry entry = (StaggeredItemEntry) getItemEntryForPosition(position);
+        if (entry != null && entry.width > 0 && entry.height > 0) {
+            final int size = (isVertical() ? entry.height : entry.width);
+            return (size + itemSpacing) * entry.span;
+        }
+
+        final StaggeredPlacement placement = getPlacement();
+        if (placement != null && position < placement.getCount()) {
+            return (placement.getSize(position) + itemSpacing) * placement.getSpan(position);
+        }
+
+        return super.getKnownItemExtent(position);
     }
 
     @Override
@@ -115,6 +220,12 @@ public class StaggeredGridLayoutManager extends GridLayoutManager {
             return;
         }
 
+        final StaggeredPlacement placement = getPlacement();
+        if (placement != null && position < placement.getCount()) {
+            outInfo.set(placement.getStartLane(position), placement.getAnchorLane(position));
+            return;
+        }
+
         outInfo.setUndefined();
     }
 
@@ -131,10 +242,37 @@ public class StaggeredGridLayoutManager extends GridLayoutManager {
         final boolean isVertical = isVertical();
         final Lanes lanes = getLanes();
 
+        final StaggeredPlacement placement = getPlacement();
+        if (placement != null && position < placement.getCount()) {
+            moveLayoutToPlacedPosition(placement, position, offset);
+            return;
+        }
+
         lanes.reset(0);
 
-        for (int i = 0; i <= position; i++) {
+        // Resume from the closest lane checkpoint, if any, instead of
+        // placing all the items from the top of the adapter.
+        int startPosition = 0;
+        final LaneCheckpoints checkpoints = getLaneCheckpoints();
+        if (checkpoints != null) {
+            final int[] laneEnds = getTempLaneEnds(lanes.getCount());
+            startPosition = checkpoints.getLaneEndsBefore(position, laneEnds);
+            if (startPosition > 0) {
+                for (int i = 0; i < laneEnds.length; i++) {
+                    lanes.offset(i, laneEnds[i]);
+                }
+            }
+        }
+
+        for (int i = startPosition; i <= position; i++) {
+            if (checkpoints != null) {
+                checkpoints.record(i, lanes);
+            }
+
             StaggeredItemEntry entry = (StaggeredItemEntry) getItemEntryForPosition(i);
+            if (entry == null) {
+                entry = cacheProvidedItemEntry(i);
+            }
 
             if (entry != null) {
                 mTempLaneInfo.set(entry.startLane, entry.anchorLane);
@@ -179,6 +317,154 @@ public class StaggeredGridLayoutManager extends GridLayoutManager {
         lanes.offset(offset - (isVertical ? mTempRect.bottom : mTempRect.right));
     }
 
+    private void moveLayoutToPlacedPosition(StaggeredPlacement placement, int position,
+                                            int offset) {
+        final Lanes lanes = getLanes();
+        final int laneCount = lanes.getCount();
+
+        final int[] laneEnds = getTempLaneEnds(laneCount);
+        placement.getLaneEndsBefore(position, laneEnds);
+
+        lanes.reset(0);
+        for (int i = 0; i < laneCount; i++) {
+            lanes.offset(i, laneEnds[i]);
+        }
+
+        lanes.getLane(placement.getStartLane(position), mTempRect);
+        lanes.reset(Direction.END);
+        lanes.offset(offset - (isVertical() ? mTempRect.bottom : mTempRect.right));
+    }
+
+    private int[] getTempLaneEnds(int laneCount) {
+        if (mTempLaneEnds == null || mTempLaneEnds.length != laneCount) {
+            mTempLaneEnds = new int[laneCount];
+        }
+
+        return mTempLaneEnds;
+    }
+
+    private StaggeredPlacement getPlacement() {
+        final Lanes lanes = getLanes();
+        if (mPlacement == null || lanes == null ||
+                !mPlacement.matches(lanes.getCount(), lanes.getLaneSize(),
+                        lanes.getItemSpacing(), isVertical())) {
+            return null;
+        }
+
+        return mPlacement;
+    }
+
+    private void computePlacementIfNeeded(int itemCount) {
+        final Lanes lanes = getLanes();
+        final ItemSizeProvider provider = getItemSizeProvider();
+        final Executor executor = getItemSizeExecutor();
+
+        if (mPlacementLimit == PLACEMENT_PRECOMPUTE_NONE || mComputingPlacement ||
+                lanes == null || provider == null || executor == null) {
+            return;
+        }
+
+        final int count = Math.min(itemCount, mPlacementLimit);
+        final StaggeredPlacement placement = getPlacement();
+        if (count == 0 || (placement != null && placement.getRequestedCount() == count)) {
+            return;
+        }
+
+        final int generation = ++mPlacementGeneration;
+        final int laneCount = lanes.getCount();
+        final int laneSize = lanes.getLaneSize();
+        final int itemSpacing = lanes.getItemSpacing();
+        final boolean isVertical = isVertical();
+
+        mComputingPlacement = true;
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final StaggeredPlacement placement =
+                        StaggeredPlacement.compute(provider, count, laneCount, laneSize,
+                                itemSpacing, isVertical);
+
+                getMainHandler().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        adoptPlacement(generation, placement);
+                    }
+                });
+            }
+        });
+    }
+
+    private void adoptPlacement(int generation, StaggeredPlacement placement) {
+        if (generation != mPlacementGeneration) {
+            return;
+        }
+
+        mComputingPlacement = false;
+
+        final Lanes lanes = getLanes();
+        if (lanes != null && placement.matches(lanes.getCount(), lanes.getLaneSize(),
+                lanes.getItemSpacing(), isVertical())) {
+            mPlacement = placement;
+        }
+    }
+
+    private void invalidatePlacement(int position) {
+        mPlacementGeneration++;
+        mComputingPlacement = false;
+
+        if (mPlacement != null) {
+            mPlacement = (position > 0 ? mPlacement.truncate(position) : null);
+        }
+    }
+
+    private StaggeredItemEntry cachePlacedItemEntry(StaggeredPlacement placement, int position) {
+        final int startLane = placement.getStartLane(position);
+        final int span = placement.getSpan(position);
+        final int size = placement.getSize(position);
+        final int laneSize = getLanes().getSpannedLaneSize(span);
+
+        final StaggeredItemEntry entry =
+                new StaggeredItemEntry(startLane, placement.getAnchorLane(position), span);
+        entry.width = (isVertical() ? laneSize : size);
+        entry.height = (isVertical() ? size : laneSize);
+
+        // Restore the span margins that would have been recorded
+        // if the item had been laid out towards the end.
+        if (span > 1) {
+            final int[] laneEnds = getTempLaneEnds(getLanes().getCount());
+            placement.getLaneEndsBefore(position, laneEnds);
+
+            final int start = placement.getStart(position);
+            for (int i = 0; i < span; i++) {
+                entry.setSpanMargin(i, start - laneEnds[startLane + i], span);
+            }
+        }
+
+        setItemEntryForPosition(position, entry);
+        return entry;
+    }
+
+    private StaggeredItemEntry cacheProvidedItemEntry(int position) {
+        final int size = getProvidedItemSize(position);
+        if (size == ItemSizeProvider.NO_SIZE) {
+            return null;
+        }
+
+        final int span = getProvidedItemLaneSpan(position);
+        final int laneSize = getLanes().getSpannedLaneSize(span);
+
+        // Lanes are resolved when the entry gets placed, unless the item
+        // was laid out before its entry got trimmed.
+        final StaggeredItemEntry entry = new StaggeredItemEntry(Lanes.NO_LANE, Lanes.NO_LANE, span);
+        restoreTrimmedItemLanes(position, entry);
+        entry.width = (isVertical() ? laneSize : size);
+        entry.height = (isVertical() ? size : laneSize);
+        setItemEntryForPosition(position, entry);
+
+        return entry;
+    }
+
     @Override
     ItemEntry cacheChildLaneAndSpan(View child, Direction direction) {
         final int position = getPosition(child);
@@ -186,6 +472,24 @@ public class StaggeredGridLayoutManager extends GridLayoutManager {
         mTempLaneInfo.setUndefined();
 
         StaggeredItemEntry entry = (StaggeredItemEntry) getItemEntryForPosition(position);
+        if (entry == null) {
+            final StaggeredPlacement placement = getPlacement();
+            if (placement != null && position < placement.getCount()) {
+                entry = cachePlacedItemEntry(placement, position);
+            }
+        }
+
+        // Items trimmed out of the window go back to the lanes they were
+        // first laid out in.
+        if (entry == null) {
+            final StaggeredItemEntry trimmedEntry = new StaggeredItemEntry(Lanes.NO_LANE,
+                    Lanes.NO_LANE, getLaneSpanForChild(child));
+            if (restoreTrimmedItemLanes(position, trimmedEntry)) {
+                entry = trimmedEntry;
+                setItemEntryForPosition(position, entry);
+            }
+        }
+
         if (entry != null) {
             mTempLaneInfo.set(entry.startLane, entry.anchorLane);
         }
@@ -221,6 +525,140 @@ public class StaggeredGridLayoutManager extends GridLayoutManager {
         return entry;
     }
 
+    @Override
+    void invalidateItemLanesAfter(int position) {
+        super.invalidateItemLanesAfter(position);
+        invalidatePlacement(position);
+
+        if (mLaneCheckpoints != null) {
+            mLaneCheckpoints.invalidateAfter(position);
+        }
+    }
+
+    @Override
+    void clearItemEntries() {
+        super.clearItemEntries();
+        invalidatePlacement(0);
+
+        if (mLaneCheckpoints != null) {
+            mLaneCheckpoints.clear();
+        }
+    }
+
+    @Override
+    protected void layoutChild(View child, Direction direction) {
+        // Children laid out towards the end come in adapter order, so the
+        // lanes hold the ends right before the child's position.
+        final LaneCheckpoints checkpoints = getLaneCheckpoints();
+        if (checkpoints != null && direction == Direction.END && !mInPreLayout) {
+            checkpoints.record(getPosition(child), getLanes());
+        }
+
+        super.layoutChild(child, direction);
+    }
+
+    @Override
+    public void onLayoutChildren(Recycler recycler, State state) {
+        mInPreLayout = state.isPreLayout();
+        super.onLayoutChildren(recycler, state);
+        mInPreLayout = false;
+
+        computePlacementIfNeeded(state.getItemCount());
+    }
+
+    @Override
+    void collectMemoryUsage(LayoutMemoryCollector collector) {
+        super.collectMemoryUsage(collector);
+        collector.addLaneCheckpoints(mLaneCheckpoints);
+        collector.addPlacement(mPlacement);
+    }
+
+    private LaneCheckpoints getLaneCheckpoints() {
+        final Lanes lanes = getLanes();
+        if (getItemEntriesWindow() == 0 || lanes == null) {
+            mLaneCheckpoints = null;
+            return null;
+        }
+
+        if (mLaneCheckpoints == null || !mLaneCheckpoints.matches(lanes)) {
+            mLaneCheckpoints = new LaneCheckpoints(lanes);
+        }
+
+        return mLaneCheckpoints;
+    }
+
+    /**
+     * Sets how many leading items should have their lane placement computed
+     * ahead of time using sizes from the {@link ItemSizeProvider}. The table
+     * is built on the provider's executor and adopted as a whole once it's
+     * ready, allowing the layout to jump to any placed position without
+     * binding, measuring or placing the items before it. Placed sizes are
+     * expected to match the measured item sizes.
+     *
+     * @param limit The number of items to place, {@link #PLACEMENT_PRECOMPUTE_ALL}
+     *              for the whole data set or {@link #PLACEMENT_PRECOMPUTE_NONE}
+     *              to disable precomputation.
+     *
+     * @see #setItemSizeProvider(ItemSizeProvider, Executor)
+     */
+    public void setPlacementPrecomputeLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Placement precompute limit must not be negative");
+        }
+
+        if (mPlacementLimit == limit) {
+            return;
+        }
+
+        mPlacementLimit = limit;
+        invalidatePlacement(0);
+        requestLayout();
+    }
+
+    public int getPlacementPrecomputeLimit() {
+        return mPlacementLimit;
+    }
+
+    /**
+     * Enables rescaling of the cached item sizes when the lane size changes
+     * e.g. on rotation, instead of dropping them. Items are assumed to keep
+     * their aspect ratio, so the layout can be restored without measuring
+     * the items before the first visible one. Adapters can opt specific
+     * items out by implementing {@link ItemScalingProvider}. Disabled by
+     * default.
+     */
+    public void setItemSizeRescalingEnabled(boolean enabled) {
+        mItemSizeRescaling = enabled;
+    }
+
+    public boolean isItemSizeRescalingEnabled() {
+        return mItemSizeRescaling;
+    }
+
+    @Override
+    boolean canRescaleItemEntries() {
+        return mItemSizeRescaling;
+    }
+
+    @Override
+    boolean rescaleItemEntry(ItemEntry entry, int position, Lanes oldLanes) {
+        final StaggeredItemEntry staggeredEntry = (StaggeredItemEntry) entry;
+        if (staggeredEntry.width <= 0 || staggeredEntry.height <= 0) {
+            return false;
+        }
+
+        final Adapter adapter = getAdapter();
+        if (adapter instanceof ItemScalingProvider &&
+                !((ItemScalingProvider) adapter).isItemSizeScalable(position)) {
+            return false;
+        }
+
+        final int oldLaneSize = oldLanes.getSpannedLaneSize(staggeredEntry.span);
+        final int laneSize = getLanes().getSpannedLaneSize(staggeredEntry.span);
+
+        return staggeredEntry.rescale(oldLaneSize, laneSize, isVertical());
+    }
+
     @Override
     public boolean checkLayoutParams(RecyclerView.LayoutParams lp) {
         boolean result = super.checkLayoutParams(lp);
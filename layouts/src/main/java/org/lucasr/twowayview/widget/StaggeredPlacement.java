@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import org.lucasr.twowayview.MemoryUsage;
+import org.lucasr.twowayview.widget.BaseLayoutManager.ItemSizeProvider;
+
+/**
+ * Immutable table of lane assignments and offsets for the leading items of
+ * a staggered layout. It's computed from provided item sizes only, so it can
+ * be built off the main thread. Lane ends are checkpointed every few items
+ * so that the lane state before any position can be restored without
+ * running placement for all the items before it.
+ */
+final class StaggeredPlacement {
+    private static final int CHECKPOINT_INTERVAL = 32;
+
+    private final int mLaneCount;
+    private final int mLaneSize;
+    private final int mItemSpacing;
+    private final boolean mIsVertical;
+
+    private final int mRequestedCount;
+    private final int mCount;
+
+    private final int[] mStartLanes;
+    private final int[] mAnchorLanes;
+    private final int[] mSpans;
+    private final int[] mStarts;
+    private final int[] mSizes;
+    private final int[] mCheckpoints;
+
+    private StaggeredPlacement(int laneCount, int laneSize, int itemSpacing, boolean isVertical,
+                               int requestedCount, int count, int[] startLanes,
+                               int[] anchorLanes, int[] spans, int[] starts, int[] sizes,
+                               int[] checkpoints) {
+        mLaneCount = laneCount;
+        mLaneSize = laneSize;
+        mItemSpacing = itemSpacing;
+        mIsVertical = isVertical;
+        mRequestedCount = requestedCount;
+        mCount = count;
+        mStartLanes = startLanes;
+        mAnchorLanes = anchorLanes;
+        mSpans = spans;
+        mStarts = starts;
+        mSizes = sizes;
+        mCheckpoints = checkpoints;
+    }
+
+    /**
+     * Places the first <code>itemCount</code> items using the same rules as
+     * {@link Lanes#findLane(Lanes.LaneInfo, int, org.lucasr.twowayview.TwoWayLayoutManager.Direction)}
+     * when laying out towards the end. Placement stops at the first item without
+     * a provided size. Lane ends include the item spacing after each item.
+     */
+    public static StaggeredPlacement compute(ItemSizeProvider provider, int itemCount,
+                                             int laneCount, int laneSize, int itemSpacing,
+                                             boolean isVertical) {
+        final int[] startLanes = new int[itemCount];
+        final int[] anchorLanes = new int[itemCount];
+        final int[] spans = new int[itemCount];
+        final int[] starts = new int[itemCount];
+        final int[] sizes = new int[itemCount];
+        final int[] checkpoints = new int[(itemCount / CHECKPOINT_INTERVAL + 1) * laneCount];
+
+        final int[] laneEnds = new int[laneCount];
+
+        int count = 0;
+        while (count < itemCount) {
+            final int position = count;
+
+            if (position % CHECKPOINT_INTERVAL == 0) {
+                System.arraycopy(laneEnds, 0, checkpoints,
+                        (position / CHECKPOINT_INTERVAL) * laneCount, laneCount);
+            }
+
+            final int span = Math.max(1, Math.min(provider.getItemLaneSpan(position), laneCount));
+            final int size = provider.getItemSize(position, span, laneSize);
+            if (size == ItemSizeProvider.NO_SIZE) {
+                break;
+            }
+
+            int targetEdge = Integer.MAX_VALUE;
+            int startLane = Lanes.NO_LANE;
+            int anchorLane = Lanes.NO_LANE;
+
+            for (int l = 0; l < laneCount; l++) {
+                final int laneEdge = laneEnds[l];
+                if (laneEdge >= targetEdge) {
+                    continue;
+                }
+
+                final int lane = findLaneThatFitsSpan(laneEnds, l, span);
+                if (lane != Lanes.NO_LANE) {
+                    targetEdge = laneEdge;
+                    startLane = lane;
+                    anchorLane = l;
+                }
+            }
+
+            // Nothing fits, this can only happen if the span is
+            // bigger than the lane count.
+            if (startLane == Lanes.NO_LANE) {
+                break;
+            }
+
+            final int start = laneEnds[anchorLane];
+            for (int l = startLane; l < startLane + span; l++) {
+                laneEnds[l] = start + size + itemSpacing;
+            }
+
+            startLanes[position] = startLane;
+            anchorLanes[position] = anchorLane;
+            spans[position] = span;
+            starts[position] = start;
+            sizes[position] = size;
+
+            count++;
+        }
+
+        return new StaggeredPlacement(laneCount, laneSize, itemSpacing, isVertical, itemCount,
+                count, startLanes, anchorLanes, spans, starts, sizes, checkpoints);
+    }
+
+    private static int findLaneThatFitsSpan(int[] laneEnds, int anchorLane, int laneSpan) {
+        final int laneCount = laneEnds.length;
+        final int anchorEdge = laneEnds[anchorLane];
+
+        final int findStart = Math.max(0, anchorLane - laneSpan + 1);
+        final int findEnd = Math.min(findStart + laneSpan, laneCount - laneSpan + 1);
+        for (int l = findStart; l < findEnd; l++) {
+            boolean fits = true;
+            for (int i = l; i < l + laneSpan; i++) {
+                if (laneEnds[i] > anchorEdge) {
+                    fits = false;
+                    break;
+                }
+            }
+
+            if (fits) {
+                return l;
+            }
+        }
+
+        return Lanes.NO_LANE;
+    }
+
+    public boolean matches(int laneCount, int laneSize, int itemSpacing, boolean isVertical) {
+        return (mLaneCount == laneCount && mLaneSize == laneSize &&
+                mItemSpacing == itemSpacing && mIsVertical == isVertical);
+    }
+
+    /**
+     * Returns the number of items the table was requested for. This might
+     * be bigger than {@link #getCount()} if some sizes were not available.
+     */
+    public int getRequestedCount() {
+        return mRequestedCount;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public int getStartLane(int position) {
+        return mStartLanes[position];
+    }
+
+    public int getAnchorLane(int position) {
+        return mAnchorLanes[position];
+    }
+
+    public int getSpan(int position) {
+        return mSpans[position];
+    }
+
+    public int getStart(int position) {
+        return mStarts[position];
+    }
+
+    public int getSize(int position) {
+        return mSizes[position];
+    }
+
+    /**
+     * Fills <code>outLaneEnds</code> with the lane ends right before the item
+     * at the given position is placed.
+     */
+    public void getLaneEndsBefore(int position, int[] outLaneEnds) {
+        final int checkpoint = position / CHECKPOINT_INTERVAL;
+        System.arraycopy(mCheckpoints, checkpoint * mLaneCount, outLaneEnds, 0, mLaneCount);
+
+        for (int i = checkpoint * CHECKPOINT_INTERVAL; i < position; i++) {
+            final int end = mStarts[i] + mSizes[i] + mItemSpacing;
+            for (int l = mStartLanes[i]; l < mStartLanes[i] + mSpans[i]; l++) {
+                outLaneEnds[l] = end;
+            }
+        }
+    }
+
+    /**
+     * Returns a table only holding the items before the given position. The
+     * underlying arrays are shared as they're never modified.
+     */
+    public StaggeredPlacement truncate(int count) {
+        if (count >= mCount) {
+            return this;
+        }
+
+        return new StaggeredPlacement(mLaneCount, mLaneSize, mItemSpacing, mIsVertical, count,
+                count, mStartLanes, mAnchorLanes, mSpans, mStarts, mSizes, mCheckpoints);
+    }
+
+    void collectMemoryUsage(MemoryUsage usage, String name) {
+        final long bytes = 5 * MemoryUsage.getArraySize(mStartLanes.length, MemoryUsage.INT_SIZE) +
+                MemoryUsage.getArraySize(mCheckpoints.length, MemoryUsage.INT_SIZE);
+        usage.add(name, bytes, 6);
+    }
+}
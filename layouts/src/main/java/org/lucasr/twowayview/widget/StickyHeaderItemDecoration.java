@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import android.graphics.Canvas;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.RecyclerView.Adapter;
+import android.support.v7.widget.RecyclerView.ItemDecoration;
+import android.support.v7.widget.RecyclerView.ViewHolder;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+
+/**
+ * Draws the header of the current section on top of a {@link RecyclerView}
+ * using a {@link SectionedLayoutManager}. The sticky header is looked up
+ * from the layout's section index and drawn from a view holder owned by the
+ * decoration, so no child scan or extra view hierarchy is needed. The
+ * sticky header is drawn only, it doesn't receive touch events.
+ */
+public class StickyHeaderItemDecoration extends ItemDecoration {
+    private ViewHolder mHeaderHolder;
+    private int mHeaderPosition = RecyclerView.NO_POSITION;
+
+    private View getHeaderView(RecyclerView parent, boolean isVertical, int position) {
+        final Adapter adapter = parent.getAdapter();
+        final int viewType = adapter.getItemViewType(position);
+
+        if (mHeaderHolder == null || mHeaderHolder.getItemViewType() != viewType) {
+            mHeaderHolder = adapter.createViewHolder(parent, viewType);
+            mHeaderPosition = RecyclerView.NO_POSITION;
+        }
+
+        final View header = mHeaderHolder.itemView;
+        if (mHeaderPosition != position) {
+            adapter.bindViewHolder(mHeaderHolder, position);
+            mHeaderPosition = position;
+
+            measureHeader(parent, isVertical, header);
+            header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
+        }
+
+        return header;
+    }
+
+    private static int getHeaderMeasureSpec(int size) {
+        if (size >= 0) {
+            return MeasureSpec.makeMeasureSpec(size, MeasureSpec.EXACTLY);
+        }
+
+        return MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+    }
+
+    private static void measureHeader(RecyclerView parent, boolean isVertical, View header) {
+        final ViewGroup.LayoutParams lp = header.getLayoutParams();
+
+        final int widthSpec;
+        final int heightSpec;
+        if (isVertical) {
+            final int width = parent.getWidth() - parent.getPaddingLeft() - parent.getPaddingRight();
+            widthSpec = MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY);
+            heightSpec = getHeaderMeasureSpec(lp != null ? lp.height : -1);
+        } else {
+            final int height = parent.getHeight() - parent.getPaddingTop() - parent.getPaddingBottom();
+            widthSpec = getHeaderMeasureSpec(lp != null ? lp.width : -1);
+            heightSpec = MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY);
+        }
+
+        header.measure(widthSpec, heightSpec);
+    }
+
+    /**
+     * Forces the sticky header to be bound again e.g. after the content
+     * of the current header changed.
+     */
+    public void invalidateHeader() {
+        mHeaderPosition = RecyclerView.NO_POSITION;
+    }
+
+    @Override
+    public void onDrawOver(Canvas c, RecyclerView parent) {
+        final SectionedLayoutManager lm = (SectionedLayoutManager) parent.getLayoutManager();
+
+        final int position = lm.getStickyHeaderPosition();
+        if (position == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        final boolean isVertical = lm.isVertical();
+        final View header = getHeaderView(parent, isVertical, position);
+
+        final int headerSize = (isVertical ? header.getHeight() : header.getWidth());
+        final int headerStart = lm.getStickyHeaderStart(headerSize);
+
+        c.save();
+
+        if (isVertical) {
+            c.translate(parent.getPaddingLeft(), headerStart);
+        } else {
+            c.translate(headerStart, parent.getPaddingTop());
+        }
+
+        header.draw(c);
+        c.restore();
+    }
+}
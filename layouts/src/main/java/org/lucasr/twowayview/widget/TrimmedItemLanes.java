@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import org.lucasr.twowayview.MemoryUsage;
+import org.lucasr.twowayview.widget.BaseLayoutManager.ItemEntry;
+
+import java.util.Arrays;
+
+/**
+ * Lanes of the item entries trimmed out of the window, so that items come
+ * back in the lanes they were first laid out in instead of whatever lane
+ * is free when scrolling back to them. Lanes take a single int per
+ * position up to the last trimmed one, so this still grows linearly with
+ * the number of items scrolled through, just a lot slower than the entries
+ * themselves. Span margins are only kept for the few items spanning multiple
+ * lanes, in a table sorted by position.
+ */
+class TrimmedItemLanes {
+    private static final int MIN_SIZE = 16;
+
+    // Start and anchor lanes packed as (startLane + 1) << 16 | (anchorLane + 1),
+    // indexed by position. Zero means the lanes are not known.
+    private int[] mLanes;
+
+    private int[] mMarginPositions = new int[0];
+    private int[][] mMargins = new int[0][];
+    private int mMarginCount;
+
+    private static int pack(int startLane, int anchorLane) {
+        return ((startLane + 1) << 16) | (anchorLane + 1);
+    }
+
+    private void ensureSize(int position) {
+        if (mLanes == null) {
+            mLanes = new int[Math.max(position + 1, MIN_SIZE)];
+        } else if (position >= mLanes.length) {
+            int len = mLanes.length;
+            while (len <= position) {
+                len *= 2;
+            }
+
+            mLanes = Arrays.copyOf(mLanes, len);
+        }
+    }
+
+    /**
+     * Keeps the lanes of the given entry, if they're defined.
+     */
+    public void put(int position, ItemEntry entry) {
+        if (entry.startLane == Lanes.NO_LANE || entry.anchorLane == Lanes.NO_LANE) {
+            return;
+        }
+
+        ensureSize(position);
+        mLanes[position] = pack(entry.startLane, entry.anchorLane);
+
+        final int marginCount = entry.getSpanMarginCount();
+        if (marginCount == 0) {
+            removeMargins(position);
+            return;
+        }
+
+        final int[] margins = new int[marginCount];
+        for (int i = 0; i < marginCount; i++) {
+            margins[i] = entry.getSpanMargin(i);
+        }
+
+        putMargins(position, margins);
+    }
+
+    /**
+     * Sets the lanes and span margins the item at the given position had
+     * when it was trimmed on the given entry.
+     *
+     * @return <code>true</code> if they were known.
+     */
+    public boolean restore(int position, ItemEntry entry) {
+        if (mLanes == null || position >= mLanes.length || mLanes[position] == 0) {
+            return false;
+        }
+
+        final int packed = mLanes[position];
+        entry.startLane = (packed >>> 16) - 1;
+        entry.anchorLane = (packed & 0xFFFF) - 1;
+
+        final int index = Arrays.binarySearch(mMarginPositions, 0, mMarginCount, position);
+        if (index >= 0) {
+            final int[] margins = mMargins[index];
+            for (int i = 0; i < margins.length; i++) {
+                entry.setSpanMargin(i, margins[i], margins.length);
+            }
+        }
+
+        return true;
+    }
+
+    private void putMargins(int position, int[] margins) {
+        int index = Arrays.binarySearch(mMarginPositions, 0, mMarginCount, position);
+        if (index >= 0) {
+            mMargins[index] = margins;
+            return;
+        }
+
+        index = -index - 1;
+        if (mMarginCount == mMarginPositions.length) {
+            final int len = Math.max(MIN_SIZE, mMarginCount * 2);
+            mMarginPositions = Arrays.copyOf(mMarginPositions, len);
+            mMargins = Arrays.copyOf(mMargins, len);
+        }
+
+        System.arraycopy(mMarginPositions, index, mMarginPositions, index + 1,
+                mMarginCount - index);
+        System.arraycopy(mMargins, index, mMargins, index + 1, mMarginCount - index);
+
+        mMarginPositions[index] = position;
+        mMargins[index] = margins;
+        mMarginCount++;
+    }
+
+    private void removeMargins(int position) {
+        final int index = Arrays.binarySearch(mMarginPositions, 0, mMarginCount, position);
+        if (index < 0) {
+            return;
+        }
+
+        removeMarginsAt(index, index + 1);
+    }
+
+    private void removeMarginsAt(int from, int to) {
+        System.arraycopy(mMarginPositions, to, mMarginPositions, from, mMarginCount - to);
+        System.arraycopy(mMargins, to, mMargins, from, mMarginCount - to);
+
+        final int newCount = mMarginCount - (to - from);
+        Arrays.fill(mMargins, newCount, mMarginCount, null);
+        mMarginCount = newCount;
+    }
+
+    private int findFirstMarginsAtOrAfter(int position) {
+        final int index = Arrays.binarySearch(mMarginPositions, 0, mMarginCount, position);
+        return (index >= 0 ? index : -index - 1);
+    }
+
+    /**
+     * Forgets the lanes of all positions starting at the given one.
+     */
+    public void invalidateAfter(int position) {
+        position = Math.max(0, position);
+
+        if (mLanes != null && position < mLanes.length) {
+            Arrays.fill(mLanes, position, mLanes.length, 0);
+        }
+
+        removeMarginsAt(findFirstMarginsAtOrAfter(position), mMarginCount);
+    }
+
+    public void offsetForAddition(int positionStart, int itemCount) {
+        if (mLanes != null && positionStart < mLanes.length) {
+            ensureSize(mLanes.length + itemCount - 1);
+
+            final int moveCount = mLanes.length - positionStart - itemCount;
+            System.arraycopy(mLanes, positionStart, mLanes, positionStart + itemCount, moveCount);
+            Arrays.fill(mLanes, positionStart, positionStart + itemCount, 0);
+        }
+
+        for (int i = findFirstMarginsAtOrAfter(positionStart); i < mMarginCount; i++) {
+            mMarginPositions[i] += itemCount;
+        }
+    }
+
+    public void offsetForRemoval(int positionStart, int itemCount) {
+        if (mLanes != null && positionStart < mLanes.length) {
+            final int count = Math.min(itemCount, mLanes.length - positionStart);
+            final int moveCount = mLanes.length - positionStart - count;
+            System.arraycopy(mLanes, positionStart + count, mLanes, positionStart, moveCount);
+            Arrays.fill(mLanes, mLanes.length - count, mLanes.length, 0);
+        }
+
+        final int from = findFirstMarginsAtOrAfter(positionStart);
+        final int to = findFirstMarginsAtOrAfter(positionStart + itemCount);
+        removeMarginsAt(from, to);
+
+        for (int i = from; i < mMarginCount; i++) {
+            mMarginPositions[i] -= itemCount;
+        }
+    }
+
+    public void clear() {
+        mLanes = null;
+        mMarginPositions = new int[0];
+        mMargins = new int[0][];
+        mMarginCount = 0;
+    }
+
+    void collectMemoryUsage(MemoryUsage usage, String name) {
+        long bytes = MemoryUsage.getObjectSize(3 * MemoryUsage.REFERENCE_SIZE +
+                MemoryUsage.INT_SIZE) +
+                MemoryUsage.getArraySize(mMarginPositions.length, MemoryUsage.INT_SIZE) +
+                MemoryUsage.getArraySize(mMargins.length, MemoryUsage.REFERENCE_SIZE);
+        int objects = 3 + mMarginCount;
+
+        if (mLanes != null) {
+            bytes += MemoryUsage.getArraySize(mLanes.length, MemoryUsage.INT_SIZE);
+            objects++;
+        }
+
+        for (int i = 0; i < mMarginCount; i++) {
+            bytes += MemoryUsage.getArraySize(mMargins[i].length, MemoryUsage.INT_SIZE);
+        }
+
+        usage.add(name, bytes, objects);
+    }
+}
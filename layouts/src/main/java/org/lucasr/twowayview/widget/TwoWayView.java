@@ -21,9 +21,13 @@ import android.content.res.TypedArray;
 import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
 import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.ViewConfiguration;
+import android.widget.OverScroller;
 
 import org.lucasr.twowayview.TwoWayLayoutManager;
 import org.lucasr.twowayview.TwoWayLayoutManager.Orientation;
+import org.lucasr.twowayview.widget.BaseLayoutManager.SnapMode;
 
 import java.lang.reflect.Constructor;
 
@@ -35,6 +39,10 @@ public class TwoWayView extends RecyclerView {
 
     final Object[] sConstructorArgs = new Object[2];
 
+    private final int mMinFlingVelocity;
+    private final int mMaxFlingVelocity;
+    private OverScroller mSnapScroller;
+
     public TwoWayView(Context context) {
         this(context, null);
     }
@@ -55,6 +63,10 @@ public class TwoWayView extends RecyclerView {
         }
 
         a.recycle();
+
+        final ViewConfiguration vc = ViewConfiguration.get(context);
+        mMinFlingVelocity = vc.getScaledMinimumFlingVelocity();
+        mMaxFlingVelocity = vc.getScaledMaximumFlingVelocity();
     }
 
     private void loadLayoutManagerFromName(Context context, AttributeSet attrs, String name) {
@@ -93,6 +105,86 @@ public class TwoWayView extends RecyclerView {
         super.setLayoutManager(layout);
     }
 
+    private BaseLayoutManager getSnappingLayout() {
+        final LayoutManager layout = getLayoutManager();
+        if (!(layout instanceof BaseLayoutManager)) {
+            return null;
+        }
+
+        final BaseLayoutManager baseLayout = (BaseLayoutManager) layout;
+        return (baseLayout.getSnapMode() != SnapMode.NONE ? baseLayout : null);
+    }
+
+    private int getFlingDistance(boolean isVertical, int velocityX, int velocityY) {
+        int velocity = (isVertical ? velocityY : velocityX);
+        if (Math.abs(velocity) < mMinFlingVelocity) {
+            return 0;
+        }
+
+        velocity = Math.max(-mMaxFlingVelocity, Math.min(velocity, mMaxFlingVelocity));
+
+        if (mSnapScroller == null) {
+            mSnapScroller = new OverScroller(getContext());
+        }
+
+        // Only the final position is needed, the scroller is never run.
+        final int min = Integer.MIN_VALUE;
+        final int max = Integer.MAX_VALUE;
+        if (isVertical) {
+            mSnapScroller.fling(0, 0, 0, velocity, 0, 0, min, max);
+            return mSnapScroller.getFinalY();
+        } else {
+            mSnapScroller.fling(0, 0, velocity, 0, min, max, 0, 0);
+            return mSnapScroller.getFinalX();
+        }
+    }
+
+    private boolean snapScrollBy(BaseLayoutManager layout, int distance) {
+        final int snapDistance = layout.getSnapScrollDistance(distance);
+        if (snapDistance == 0) {
+            return false;
+        }
+
+        if (layout.isVertical()) {
+            smoothScrollBy(0, snapDistance);
+        } else {
+            smoothScrollBy(snapDistance, 0);
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean fling(int velocityX, int velocityY) {
+        final BaseLayoutManager layout = getSnappingLayout();
+        if (layout == null) {
+            return super.fling(velocityX, velocityY);
+        }
+
+        // The resting position is resolved once when the fling starts,
+        // then reached with a regular smooth scroll.
+        final int distance = getFlingDistance(layout.isVertical(), velocityX, velocityY);
+        return snapScrollBy(layout, distance);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent e) {
+        final boolean handled = super.onTouchEvent(e);
+
+        final int action = e.getActionMasked();
+        if (action != MotionEvent.ACTION_UP && action != MotionEvent.ACTION_CANCEL) {
+            return handled;
+        }
+
+        // Drags ending without a fling still have to rest on a snap point.
+        final BaseLayoutManager layout = getSnappingLayout();
+        if (layout != null && getScrollState() == SCROLL_STATE_IDLE) {
+            snapScrollBy(layout, 0);
+        }
+
+        return handled;
+    }
+
     public Orientation getOrientation() {
         TwoWayLayoutManager layout = (TwoWayLayoutManager) getLayoutManager();
         return layout.getOrientation();
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.lucasr.twowayview.widget.AdaptiveRecycledViewPool.computeMaxRecycledViews;
+
+public class AdaptiveRecycledViewPoolTest {
+    @Test
+    public void keepsTwoRowsOfSingleType() {
+        // 4 lanes, 20 children of the same type: 4 per row.
+        assertEquals(8, computeMaxRecycledViews(4, 20, 20));
+        assertEquals(2, computeMaxRecycledViews(1, 10, 10));
+    }
+
+    @Test
+    public void splitsRowsByTypeMix() {
+        // A quarter of the children are of this type, one per row.
+        assertEquals(2, computeMaxRecycledViews(4, 20, 5));
+
+        // Rare types still get at least one view per row.
+        assertEquals(2, computeMaxRecycledViews(4, 20, 1));
+    }
+
+    @Test
+    public void neverExceedsLaidOutViewsPlusOneRow() {
+        // Fewer children than lanes, e.g. a short list in a wide grid.
+        assertEquals(6, computeMaxRecycledViews(6, 3, 2));
+        assertEquals(11, computeMaxRecycledViews(10, 1, 1));
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lucasr.twowayview.TwoWayLayoutManager.Direction;
+import org.lucasr.twowayview.widget.ChildLaneIndex.ChildBounds;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ChildLaneIndexTest {
+    private static final int LANE_SIZE = 100;
+
+    private static class Child {
+        final int lane;
+        final int span;
+        final int start;
+        final int end;
+
+        Child(int lane, int span, int start, int end) {
+            this.lane = lane;
+            this.span = span;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static class Children implements ChildBounds<Child> {
+        final List<Child> children = new ArrayList<Child>();
+        int laneCount;
+
+        Children(int laneCount) {
+            this.laneCount = laneCount;
+        }
+
+        @Override
+        public int getChildCount() {
+            return children.size();
+        }
+
+        @Override
+        public Child getChildAt(int index) {
+            return children.get(index);
+        }
+
+        @Override
+        public int getChildStart(Child child) {
+            return child.start;
+        }
+
+        @Override
+        public int getChildEnd(Child child) {
+            return child.end;
+        }
+
+        @Override
+        public int getLaneCount() {
+            return laneCount;
+        }
+
+        @Override
+        public int getStartLane(Child child) {
+            return child.lane;
+        }
+
+        @Override
+        public int getEndLane(Child child) {
+            return child.lane + child.span - 1;
+        }
+
+        @Override
+        public int getLaneAt(int crossCoordinate) {
+            final int lane = crossCoordinate / LANE_SIZE;
+            return (crossCoordinate >= 0 && lane < laneCount ? lane : Lanes.NO_LANE);
+        }
+
+        Child findChild(int crossCoordinate, int coordinate) {
+            final int lane = getLaneAt(crossCoordinate);
+            for (Child child : children) {
+                if (lane >= child.lane && lane < child.lane + child.span &&
+                        coordinate >= child.start && coordinate <= child.end) {
+                    return child;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private Children mChildren;
+    private ChildLaneIndex<Child> mIndex;
+
+    @Before
+    public void setUp() {
+        mChildren = new Children(3);
+        mIndex = new ChildLaneIndex<Child>();
+    }
+
+    private void assertMatchesChildren() {
+        assertTrue(mIndex.isValid(mChildren));
+
+        for (int cross = 0; cross < mChildren.laneCount * LANE_SIZE; cross += LANE_SIZE / 2) {
+            for (int coordinate = -50; coordinate < 3000; coordinate += 7) {
+                assertSame(mChildren.findChild(cross, coordinate),
+                        mIndex.findChild(mChildren, cross, coordinate));
+            }
+        }
+    }
+
+    @Test
+    public void findsChildrenAfterBuild() {
+        final Child first = new Child(0, 1, 0, 90);
+        final Child wide = new Child(1, 2, 0, 40);
+        final Child second = new Child(0, 1, 100, 150);
+        mChildren.children.add(first);
+        mChildren.children.add(wide);
+        mChildren.children.add(second);
+
+        mIndex.build(mChildren);
+
+        assertSame(first, mIndex.findChild(mChildren, 50, 10));
+        assertSame(wide, mIndex.findChild(mChildren, 150, 10));
+        assertSame(wide, mIndex.findChild(mChildren, 250, 40));
+        assertSame(second, mIndex.findChild(mChildren, 0, 120));
+        assertNull(mIndex.findChild(mChildren, 50, 95));
+        assertNull(mIndex.findChild(mChildren, 350, 10));
+        assertMatchesChildren();
+    }
+
+    @Test
+    public void followsChildrenAddedAndRemovedWhileScrolling() {
+        final Random random = new Random(42);
+        final int[] laneEnds = new int[mChildren.laneCount];
+        final int[] laneStarts = new int[mChildren.laneCount];
+
+        mIndex.build(mChildren);
+
+        for (int i = 0; i < 200; i++) {
+            // Scroll towards the end, adding a child to the shortest lane
+            // and recycling the first ones once there are enough.
+            int lane = 0;
+            for (int l = 1; l < laneEnds.length; l++) {
+                if (laneEnds[l] < laneEnds[lane]) {
+                    lane = l;
+                }
+            }
+
+            final Child child = new Child(lane, 1, laneEnds[lane],
+                    laneEnds[lane] + 10 + random.nextInt(50));
+            laneEnds[lane] = child.end + 1;
+
+            mChildren.children.add(child);
+            mIndex.addChild(mChildren, child, Direction.END);
+
+            if (mChildren.children.size() > 30) {
+                final Child recycled = mChildren.children.remove(0);
+                mIndex.removeChild(mChildren, recycled, Direction.END);
+                laneStarts[recycled.lane] = recycled.end + 1;
+            }
+        }
+
+        assertMatchesChildren();
+
+        // Scroll back towards the start.
+        for (int i = 0; i < 20; i++) {
+            final Child recycled = mChildren.children.remove(mChildren.children.size() - 1);
+            mIndex.removeChild(mChildren, recycled, Direction.START);
+
+            final int lane = recycled.lane;
+            final Child child = new Child(lane, 1, laneStarts[lane] - 30, laneStarts[lane] - 1);
+            laneStarts[lane] = child.start;
+
+            mChildren.children.add(0, child);
+            mIndex.addChild(mChildren, child, Direction.START);
+        }
+
+        assertMatchesChildren();
+    }
+
+    @Test
+    public void removingUnknownChildInvalidates() {
+        mChildren.children.add(new Child(0, 1, 0, 10));
+        mIndex.build(mChildren);
+
+        mIndex.removeChild(mChildren, new Child(0, 1, 20, 30), Direction.END);
+        assertFalse(mIndex.isValid(mChildren));
+    }
+
+    @Test
+    public void laneCountChangeInvalidates() {
+        mIndex.build(mChildren);
+
+        mChildren.laneCount = 2;
+        assertFalse(mIndex.isValid(mChildren));
+
+        final Child child = new Child(0, 1, 0, 10);
+        mChildren.children.add(child);
+        mIndex.addChild(mChildren, child, Direction.END);
+
+        mIndex.build(mChildren);
+        assertMatchesChildren();
+    }
+
+    @Test
+    public void childrenAddedBehindIndexInvalidate() {
+        mIndex.build(mChildren);
+        mChildren.children.add(new Child(0, 1, 0, 10));
+
+        assertFalse(mIndex.isValid(mChildren));
+
+        mIndex.build(mChildren);
+        mIndex.invalidate();
+        assertFalse(mIndex.isValid(mChildren));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class DividerRunsTest {
+    private static int[] getRun(DividerRuns runs, int index) {
+        return new int[] { runs.getLeft(index), runs.getTop(index),
+                runs.getRight(index), runs.getBottom(index) };
+    }
+
+    @Test
+    public void mergesVerticalSegmentsInSameSlot() {
+        final DividerRuns runs = new DividerRuns(true);
+        runs.reset(2);
+
+        runs.add(0, 100, 0, 102, 50);
+        runs.add(0, 100, 50, 102, 120);
+        runs.add(1, 200, 0, 202, 80);
+        runs.add(1, 200, 80, 202, 90);
+
+        assertEquals(2, runs.size());
+        assertArrayEquals(new int[] { 100, 0, 102, 120 }, getRun(runs, 0));
+        assertArrayEquals(new int[] { 200, 0, 202, 90 }, getRun(runs, 1));
+    }
+
+    @Test
+    public void mergesHorizontalSegmentsInSameSlot() {
+        final DividerRuns runs = new DividerRuns(false);
+        runs.reset(1);
+
+        runs.add(0, 0, 50, 100, 52);
+        runs.add(0, 100, 50, 200, 52);
+        runs.add(0, 200, 50, 300, 52);
+
+        assertEquals(1, runs.size());
+        assertArrayEquals(new int[] { 0, 50, 300, 52 }, getRun(runs, 0));
+    }
+
+    @Test
+    public void startsNewRunOnGapOrMisalignment() {
+        final DividerRuns runs = new DividerRuns(true);
+        runs.reset(1);
+
+        runs.add(0, 100, 0, 102, 50);
+
+        // Gap along the run.
+        runs.add(0, 100, 60, 102, 100);
+
+        // Different position across the run.
+        runs.add(0, 101, 100, 103, 150);
+
+        assertEquals(3, runs.size());
+        assertArrayEquals(new int[] { 100, 60, 102, 100 }, getRun(runs, 1));
+
+        // Only the last run in a slot can be extended.
+        runs.add(0, 101, 150, 103, 200);
+        assertEquals(3, runs.size());
+        assertArrayEquals(new int[] { 101, 100, 103, 200 }, getRun(runs, 2));
+    }
+
+    @Test
+    public void resetDropsRunsAndGrowsSlots() {
+        final DividerRuns runs = new DividerRuns(true);
+        runs.reset(1);
+
+        for (int i = 0; i < 100; i++) {
+            runs.add(0, i * 10, 0, i * 10 + 2, 10);
+        }
+
+        assertEquals(100, runs.size());
+        assertArrayEquals(new int[] { 990, 0, 992, 10 }, getRun(runs, 99));
+
+        runs.reset(4);
+        assertEquals(0, runs.size());
+
+        runs.add(3, 0, 0, 2, 10);
+        runs.add(3, 0, 10, 2, 20);
+        assertEquals(1, runs.size());
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lucasr.twowayview.widget.BaseLayoutManager.ItemEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ItemEntriesTest {
+    private static final int ADAPTER_SIZE = 1000;
+
+    private ItemEntries mEntries;
+
+    @Before
+    public void setUp() {
+        mEntries = new ItemEntries();
+        mEntries.setAdapterSize(ADAPTER_SIZE);
+    }
+
+    private ItemEntry[] putEntries(int start, int end) {
+        final ItemEntry[] entries = new ItemEntry[end - start];
+        for (int i = start; i < end; i++) {
+            entries[i - start] = new ItemEntry(i % 3, i % 3);
+            mEntries.putItemEntry(i, entries[i - start]);
+        }
+
+        return entries;
+    }
+
+    private static ItemEntry newUndefinedEntry() {
+        return new ItemEntry(Lanes.NO_LANE, Lanes.NO_LANE);
+    }
+
+    @Test
+    public void putsAndGetsEntries() {
+        final ItemEntry[] entries = putEntries(0, 50);
+
+        for (int i = 0; i < 50; i++) {
+            assertSame(entries[i], mEntries.getItemEntry(i));
+        }
+
+        assertNull(mEntries.getItemEntry(50));
+        assertNull(mEntries.getItemEntry(-1));
+        assertEquals(50, mEntries.getEntryCount());
+    }
+
+    @Test
+    public void growsTowardsStart() {
+        final ItemEntry[] entries = putEntries(500, 520);
+        final ItemEntry entry = new ItemEntry(0, 0);
+        mEntries.putItemEntry(450, entry);
+
+        assertSame(entry, mEntries.getItemEntry(450));
+        assertSame(entries[0], mEntries.getItemEntry(500));
+        assertTrue(mEntries.getFirstPosition() <= 450);
+    }
+
+    @Test
+    public void trimDropsEntriesOutsideWindow() {
+        final ItemEntry[] entries = putEntries(0, 100);
+        mEntries.trim(40, 60);
+
+        assertEquals(40, mEntries.getFirstPosition());
+        assertEquals(20, mEntries.size());
+        assertNull(mEntries.getItemEntry(39));
+        assertNull(mEntries.getItemEntry(60));
+
+        for (int i = 40; i < 60; i++) {
+            assertSame(entries[i], mEntries.getItemEntry(i));
+        }
+    }
+
+    @Test
+    public void trimOutsideEntriesDropsAll() {
+        putEntries(0, 20);
+        mEntries.trim(50, 60);
+
+        assertEquals(0, mEntries.size());
+        assertEquals(0, mEntries.getEntryCount());
+    }
+
+    @Test
+    public void trimKeepsLanesOfDroppedEntries() {
+        putEntries(0, 100);
+        mEntries.trim(40, 60);
+
+        for (int i = 0; i < 100; i++) {
+            if (i >= 40 && i < 60) {
+                continue;
+            }
+
+            final ItemEntry entry = newUndefinedEntry();
+            assertTrue(mEntries.restoreTrimmedLanes(i, entry));
+            assertEquals(i % 3, entry.startLane);
+            assertEquals(i % 3, entry.anchorLane);
+        }
+    }
+
+    @Test
+    public void trimKeepsSpanMarginsOfDroppedEntries() {
+        final ItemEntry spanned = new ItemEntry(1, 2);
+        spanned.setSpanMargin(0, 5, 3);
+        spanned.setSpanMargin(1, 0, 3);
+        spanned.setSpanMargin(2, 7, 3);
+
+        putEntries(0, 20);
+        mEntries.putItemEntry(5, spanned);
+        mEntries.trim(10, 20);
+
+        final ItemEntry entry = newUndefinedEntry();
+        assertTrue(mEntries.restoreTrimmedLanes(5, entry));
+        assertEquals(1, entry.startLane);
+        assertEquals(2, entry.anchorLane);
+        assertEquals(3, entry.getSpanMarginCount());
+        assertEquals(5, entry.getSpanMargin(0));
+        assertEquals(0, entry.getSpanMargin(1));
+        assertEquals(7, entry.getSpanMargin(2));
+
+        final ItemEntry single = newUndefinedEntry();
+        assertTrue(mEntries.restoreTrimmedLanes(4, single));
+        assertEquals(0, single.getSpanMarginCount());
+    }
+
+    @Test
+    public void trimSkipsEntriesWithoutLanes() {
+        putEntries(0, 20);
+        mEntries.getItemEntry(5).invalidateLane();
+        mEntries.trim(10, 20);
+
+        assertFalse(mEntries.restoreTrimmedLanes(5, newUndefinedEntry()));
+        assertTrue(mEntries.restoreTrimmedLanes(6, newUndefinedEntry()));
+    }
+
+    @Test
+    public void invalidatingLanesDropsTrimmedLanesAfterPosition() {
+        putEntries(0, 100);
+        mEntries.trim(40, 60);
+        mEntries.invalidateItemLanesAfter(30);
+
+        assertTrue(mEntries.restoreTrimmedLanes(29, newUndefinedEntry()));
+        assertFalse(mEntries.restoreTrimmedLanes(30, newUndefinedEntry()));
+        assertFalse(mEntries.restoreTrimmedLanes(70, newUndefinedEntry()));
+        assertEquals(Lanes.NO_LANE, mEntries.getItemEntry(50).startLane);
+    }
+
+    @Test
+    public void clearDropsTrimmedLanes() {
+        putEntries(0, 100);
+        mEntries.trim(40, 60);
+        mEntries.clear();
+
+        assertNull(mEntries.getItemEntry(50));
+        assertFalse(mEntries.restoreTrimmedLanes(10, newUndefinedEntry()));
+    }
+
+    @Test
+    public void offsetForAdditionShiftsEntries() {
+        final ItemEntry[] entries = putEntries(0, 30);
+        mEntries.offsetForAddition(10, 5);
+
+        assertSame(entries[9], mEntries.getItemEntry(9));
+        assertNull(mEntries.getItemEntry(10));
+        assertNull(mEntries.getItemEntry(14));
+        assertSame(entries[10], mEntries.getItemEntry(15));
+        assertSame(entries[20], mEntries.getItemEntry(25));
+    }
+
+    @Test
+    public void offsetForAdditionBeforeWindowShiftsWindow() {
+        final ItemEntry[] entries = putEntries(0, 100);
+        mEntries.trim(40, 60);
+        mEntries.offsetForAddition(10, 5);
+
+        assertEquals(45, mEntries.getFirstPosition());
+        assertSame(entries[40], mEntries.getItemEntry(45));
+
+        // Trimmed lanes move along with the items.
+        final ItemEntry entry = newUndefinedEntry();
+        assertTrue(mEntries.restoreTrimmedLanes(25, entry));
+        assertEquals(20 % 3, entry.startLane);
+        assertFalse(mEntries.restoreTrimmedLanes(12, newUndefinedEntry()));
+    }
+
+    @Test
+    public void offsetForRemovalShiftsEntries() {
+        final ItemEntry[] entries = putEntries(0, 30);
+        mEntries.offsetForRemoval(10, 5);
+
+        assertSame(entries[9], mEntries.getItemEntry(9));
+        assertSame(entries[15], mEntries.getItemEntry(10));
+        assertSame(entries[29], mEntries.getItemEntry(24));
+        assertNull(mEntries.getItemEntry(25));
+    }
+
+    @Test
+    public void offsetForRemovalBeforeWindowShiftsWindow() {
+        final ItemEntry[] entries = putEntries(0, 100);
+        mEntries.trim(40, 60);
+        mEntries.offsetForRemoval(10, 5);
+
+        assertEquals(35, mEntries.getFirstPosition());
+        assertSame(entries[40], mEntries.getItemEntry(35));
+
+        final ItemEntry entry = newUndefinedEntry();
+        assertTrue(mEntries.restoreTrimmedLanes(10, entry));
+        assertEquals(15 % 3, entry.startLane);
+    }
+
+    @Test
+    public void offsetForRemovalOverlappingWindowDropsRemovedEntries() {
+        final ItemEntry[] entries = putEntries(0, 100);
+        mEntries.trim(40, 60);
+        mEntries.offsetForRemoval(35, 10);
+
+        assertEquals(35, mEntries.getFirstPosition());
+        assertSame(entries[45], mEntries.getItemEntry(35));
+        assertSame(entries[59], mEntries.getItemEntry(49));
+    }
+}
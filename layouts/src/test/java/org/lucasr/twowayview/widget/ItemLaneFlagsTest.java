@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.lucasr.twowayview.widget.ItemLaneFlags.FLAG_FIRST_IN_LANE;
+import static org.lucasr.twowayview.widget.ItemLaneFlags.FLAG_RESOLVED;
+import static org.lucasr.twowayview.widget.ItemLaneFlags.FLAG_SECOND_LANE;
+
+public class ItemLaneFlagsTest {
+    @Test
+    public void storesFlagsPerPosition() {
+        final ItemLaneFlags flags = new ItemLaneFlags();
+        flags.setFlags(0, FLAG_RESOLVED | FLAG_FIRST_IN_LANE);
+        flags.setFlags(100, FLAG_RESOLVED | FLAG_SECOND_LANE);
+
+        assertEquals(FLAG_RESOLVED | FLAG_FIRST_IN_LANE, flags.getFlags(0));
+        assertEquals(0, flags.getFlags(50));
+        assertEquals(FLAG_RESOLVED | FLAG_SECOND_LANE, flags.getFlags(100));
+        assertEquals(0, flags.getFlags(1000));
+    }
+
+    @Test
+    public void invalidatesFlagsAfterPosition() {
+        final ItemLaneFlags flags = new ItemLaneFlags();
+        for (int i = 0; i < 20; i++) {
+            flags.setFlags(i, FLAG_RESOLVED);
+        }
+
+        flags.invalidateAfter(10);
+
+        assertEquals(FLAG_RESOLVED, flags.getFlags(9));
+        assertEquals(0, flags.getFlags(10));
+        assertEquals(0, flags.getFlags(19));
+
+        flags.clear();
+        assertEquals(0, flags.getFlags(0));
+    }
+
+    @Test
+    public void lastPositionsMatchLaneAndItemCounts() {
+        final ItemLaneFlags flags = new ItemLaneFlags();
+        final int[] lastPositions = { 97, 98, 99 };
+        flags.setLastPositions(lastPositions, 100, -1);
+
+        assertSame(lastPositions, flags.getLastPositions(3, 100));
+        assertNull(flags.getLastPositions(2, 100));
+        assertNull(flags.getLastPositions(3, 101));
+
+        flags.invalidateAfter(50);
+        assertNull(flags.getLastPositions(3, 100));
+    }
+
+    @Test
+    public void resolvingBlockedLaneInvalidatesLastPositions() {
+        final ItemLaneFlags flags = new ItemLaneFlags();
+        final int[] lastPositions = { 97, -1, 99 };
+        flags.setLastPositions(lastPositions, 100, 80);
+
+        flags.onItemLaneResolved(70);
+        assertSame(lastPositions, flags.getLastPositions(3, 100));
+
+        flags.onItemLaneResolved(80);
+        assertNull(flags.getLastPositions(3, 100));
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lucasr.twowayview.widget.BaseLayoutManager.ItemSizeProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+
+public class ItemSizeLoaderTest {
+    private static final int LANE_SIZE = 100;
+    private static final int LANE_COUNT = 3;
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static class QueueExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+
+            tasks.clear();
+        }
+    }
+
+    private static final ItemSizeProvider PROVIDER = new ItemSizeProvider() {
+        @Override
+        public int getItemLaneSpan(int position) {
+            return (position % 5 == 0 ? 10 : 1);
+        }
+
+        @Override
+        public int getItemSize(int position, int laneSpan, int laneSize) {
+            return (position == 7 ? NO_SIZE : position * 10 + laneSpan);
+        }
+    };
+
+    private QueueExecutor mWorker;
+
+    @Before
+    public void setUp() {
+        mWorker = new QueueExecutor();
+    }
+
+    private ItemSizeLoader createLoader(Executor executor) {
+        final ItemSizeLoader loader = new ItemSizeLoader(PROVIDER, executor, DIRECT_EXECUTOR);
+        loader.setLanes(LANE_SIZE, LANE_COUNT);
+        return loader;
+    }
+
+    @Test
+    public void loadsSizesAndClampsSpans() {
+        final ItemSizeLoader loader = createLoader(DIRECT_EXECUTOR);
+        loader.load(0, 10);
+
+        assertEquals(10 * 1 + 1, loader.getSize(1));
+        assertEquals(1, loader.getSpan(1));
+
+        assertEquals(50 + LANE_COUNT, loader.getSize(5));
+        assertEquals(LANE_COUNT, loader.getSpan(5));
+
+        assertEquals(ItemSizeProvider.NO_SIZE, loader.getSize(7));
+        assertEquals(0, loader.getSpan(7));
+        assertEquals(ItemSizeProvider.NO_SIZE, loader.getSize(10));
+    }
+
+    @Test
+    public void onlySubmitsMissingPositions() {
+        final ItemSizeLoader loader = createLoader(mWorker);
+
+        loader.load(0, 10);
+        assertEquals(1, mWorker.tasks.size());
+
+        // In-flight positions aren't requested again.
+        loader.load(5, 20);
+        assertEquals(2, mWorker.tasks.size());
+
+        mWorker.runAll();
+        assertEquals(161, loader.getSize(16));
+
+        // Positions without a provided size are known too.
+        loader.load(0, 20);
+        assertEquals(0, mWorker.tasks.size());
+
+        loader.load(18, 25);
+        assertEquals(1, mWorker.tasks.size());
+    }
+
+    @Test
+    public void dropsResultsFromOlderGenerations() {
+        final ItemSizeLoader loader = createLoader(mWorker);
+        loader.load(0, 10);
+
+        loader.offsetForAddition(0, 5);
+        mWorker.runAll();
+
+        for (int i = 0; i < 15; i++) {
+            assertEquals(ItemSizeProvider.NO_SIZE, loader.getSize(i));
+        }
+
+        // Cancelled positions can be requested again.
+        loader.load(0, 10);
+        assertEquals(1, mWorker.tasks.size());
+
+        mWorker.runAll();
+        assertEquals(21, loader.getSize(2));
+    }
+
+    @Test
+    public void offsetsSizesForAddition() {
+        final ItemSizeLoader loader = createLoader(DIRECT_EXECUTOR);
+        loader.load(0, 10);
+
+        loader.offsetForAddition(3, 2);
+
+        assertEquals(21, loader.getSize(2));
+        assertEquals(ItemSizeProvider.NO_SIZE, loader.getSize(3));
+        assertEquals(ItemSizeProvider.NO_SIZE, loader.getSize(4));
+        assertEquals(31, loader.getSize(5));
+        assertEquals(50 + LANE_COUNT, loader.getSize(7));
+        assertEquals(LANE_COUNT, loader.getSpan(7));
+        assertEquals(91, loader.getSize(11));
+    }
+
+    @Test
+    public void offsetsSizesForRemoval() {
+        final ItemSizeLoader loader = createLoader(DIRECT_EXECUTOR);
+        loader.load(0, 10);
+
+        loader.offsetForRemoval(2, 3);
+
+        assertEquals(11, loader.getSize(1));
+        assertEquals(50 + LANE_COUNT, loader.getSize(2));
+        assertEquals(61, loader.getSize(3));
+        assertEquals(ItemSizeProvider.NO_SIZE, loader.getSize(7));
+
+        // Removing past the known sizes is a no-op.
+        loader.offsetForRemoval(100, 5);
+        assertEquals(61, loader.getSize(3));
+    }
+
+    @Test
+    public void invalidateDropsRange() {
+        final ItemSizeLoader loader = createLoader(DIRECT_EXECUTOR);
+        loader.load(0, 10);
+
+        loader.invalidate(2, 2);
+
+        assertEquals(11, loader.getSize(1));
+        assertEquals(ItemSizeProvider.NO_SIZE, loader.getSize(2));
+        assertEquals(ItemSizeProvider.NO_SIZE, loader.getSize(3));
+        assertEquals(41, loader.getSize(4));
+    }
+
+    @Test
+    public void laneChangesClearSizes() {
+        final ItemSizeLoader loader = createLoader(DIRECT_EXECUTOR);
+        loader.load(0, 10);
+
+        loader.setLanes(LANE_SIZE, LANE_COUNT);
+        assertEquals(11, loader.getSize(1));
+
+        loader.setLanes(LANE_SIZE * 2, LANE_COUNT);
+        assertEquals(LANE_SIZE * 2, loader.getLaneSize());
+        assertEquals(ItemSizeProvider.NO_SIZE, loader.getSize(1));
+    }
+
+    @Test
+    public void doesNotLoadWithoutLanes() {
+        final ItemSizeLoader loader = new ItemSizeLoader(PROVIDER, mWorker, DIRECT_EXECUTOR);
+        loader.load(0, 10);
+
+        assertEquals(0, mWorker.tasks.size());
+    }
+}
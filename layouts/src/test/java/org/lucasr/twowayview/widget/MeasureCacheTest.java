@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MeasureCacheTest {
+    @Test
+    public void matchesOnlySameSpanAndLaneSize() {
+        final MeasureCache cache = new MeasureCache();
+        cache.put(1L, 1, 100, 100, 50);
+
+        assertTrue(cache.contains(1L, 1, 100));
+        assertEquals(100, cache.getWidth(1L, 1, 100));
+        assertEquals(50, cache.getHeight(1L, 1, 100));
+
+        assertFalse(cache.contains(1L, 2, 100));
+        assertFalse(cache.contains(1L, 1, 120));
+        assertFalse(cache.contains(2L, 1, 100));
+        assertEquals(0, cache.getHeight(1L, 1, 120));
+    }
+
+    @Test
+    public void putReplacesEntry() {
+        final MeasureCache cache = new MeasureCache();
+        cache.put(1L, 1, 100, 100, 50);
+        cache.put(1L, 2, 100, 200, 80);
+
+        assertEquals(1, cache.size());
+        assertFalse(cache.contains(1L, 1, 100));
+        assertEquals(80, cache.getHeight(1L, 2, 100));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedQuarter() {
+        final MeasureCache cache = new MeasureCache(8);
+        for (long key = 0; key < 8; key++) {
+            cache.put(key, 1, 100, 100, (int) key);
+        }
+
+        // Using the oldest entries makes the next ones the least recent.
+        assertTrue(cache.contains(0L, 1, 100));
+        assertTrue(cache.contains(1L, 1, 100));
+
+        cache.put(8L, 1, 100, 100, 8);
+
+        assertEquals(7, cache.size());
+        assertFalse(cache.contains(2L, 1, 100));
+        assertFalse(cache.contains(3L, 1, 100));
+
+        for (long key : new long[] { 0, 1, 4, 5, 6, 7, 8 }) {
+            assertEquals((int) key, cache.getHeight(key, 1, 100));
+        }
+    }
+
+    @Test
+    public void neverGrowsPastMaxSize() {
+        final MeasureCache cache = new MeasureCache(16);
+        for (long key = 0; key < 1000; key++) {
+            cache.put(key, 1, 100, 100, 100);
+            assertTrue(cache.size() <= cache.getMaxSize());
+        }
+
+        // The most recent entry always survives eviction.
+        assertTrue(cache.contains(999L, 1, 100));
+    }
+
+    @Test
+    public void invalidateAndClearDropEntries() {
+        final MeasureCache cache = new MeasureCache();
+        cache.put(1L, 1, 100, 100, 50);
+        cache.put(2L, 1, 100, 100, 50);
+
+        cache.invalidate(1L);
+        assertFalse(cache.contains(1L, 1, 100));
+        assertTrue(cache.contains(2L, 1, 100));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveMaxSize() {
+        new MeasureCache(0);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.v7.widget.RecyclerView.RecycledViewPool;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class NestedViewCacheTest {
+    private static class TestState implements Parcelable {
+        @Override
+        public int describeContents() {
+            return 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+        }
+    }
+
+    @Test
+    public void handsOverStoredStatesOnce() {
+        final NestedViewCache cache = new NestedViewCache(new RecycledViewPool(), 4);
+        final Parcelable state = new TestState();
+        cache.putLayoutState(1L, state);
+
+        assertNull(cache.takeLayoutState(2L));
+        assertSame(state, cache.takeLayoutState(1L));
+        assertNull(cache.takeLayoutState(1L));
+    }
+
+    @Test
+    public void keepsMostRecentlyStoredStates() {
+        final NestedViewCache cache = new NestedViewCache(new RecycledViewPool(), 2);
+        final Parcelable first = new TestState();
+        final Parcelable second = new TestState();
+        final Parcelable third = new TestState();
+
+        cache.putLayoutState(1L, first);
+        cache.putLayoutState(2L, second);
+        cache.putLayoutState(3L, third);
+
+        assertNull(cache.takeLayoutState(1L));
+        assertSame(second, cache.takeLayoutState(2L));
+        assertSame(third, cache.takeLayoutState(3L));
+    }
+
+    @Test
+    public void removesStates() {
+        final NestedViewCache cache = new NestedViewCache(new RecycledViewPool(), 2);
+        cache.putLayoutState(1L, new TestState());
+
+        cache.removeLayoutState(1L);
+        assertNull(cache.takeLayoutState(1L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingViewPool() {
+        new NestedViewCache(null, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyStateCache() {
+        new NestedViewCache(new RecycledViewPool(), 0);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResizeDebouncerTest {
+    private static class FakeScheduler implements ResizeDebouncer.Scheduler {
+        Runnable pending;
+        long delay = -1;
+
+        @Override
+        public void schedule(Runnable runnable, long delayMillis) {
+            pending = runnable;
+            delay = delayMillis;
+        }
+
+        @Override
+        public void cancel(Runnable runnable) {
+            if (pending == runnable) {
+                pending = null;
+            }
+        }
+
+        void runPending() {
+            final Runnable runnable = pending;
+            pending = null;
+            runnable.run();
+        }
+    }
+
+    private FakeScheduler mScheduler;
+    private int mSettleCount;
+    private ResizeDebouncer<String> mDebouncer;
+
+    @Before
+    public void setUp() {
+        mScheduler = new FakeScheduler();
+        mSettleCount = 0;
+        mDebouncer = new ResizeDebouncer<String>(mScheduler, new Runnable() {
+            @Override
+            public void run() {
+                mSettleCount++;
+            }
+        });
+    }
+
+    @Test
+    public void enabledOnlyWithPositiveDelay() {
+        assertFalse(mDebouncer.isEnabled());
+
+        mDebouncer.setDelay(200);
+        assertTrue(mDebouncer.isEnabled());
+        assertEquals(200, mDebouncer.getDelay());
+
+        mDebouncer.setDelay(0);
+        assertFalse(mDebouncer.isEnabled());
+    }
+
+    @Test
+    public void keepsLanesFromBeforeResize() {
+        mDebouncer.setDelay(200);
+
+        mDebouncer.onResize("first");
+        mDebouncer.onResize("second");
+
+        assertTrue(mDebouncer.isResizing());
+        assertFalse(mDebouncer.isSettled());
+        assertEquals("first", mDebouncer.getLanesBeforeResize());
+        assertEquals(200, mScheduler.delay);
+    }
+
+    @Test
+    public void settlesAfterLastResize() {
+        mDebouncer.setDelay(200);
+
+        mDebouncer.onResize("first");
+        final Runnable firstSettle = mScheduler.pending;
+        mDebouncer.onResize("second");
+
+        // Every resize restarts the same pending settle.
+        assertSame(firstSettle, mScheduler.pending);
+        assertEquals(0, mSettleCount);
+
+        mScheduler.runPending();
+        assertTrue(mDebouncer.isSettled());
+        assertEquals(1, mSettleCount);
+    }
+
+    @Test
+    public void zeroDelaySettlesPendingResize() {
+        mDebouncer.setDelay(200);
+        mDebouncer.onResize("first");
+
+        mDebouncer.setDelay(0);
+        assertNull(mScheduler.pending);
+        assertTrue(mDebouncer.isSettled());
+        assertEquals(1, mSettleCount);
+    }
+
+    @Test
+    public void zeroDelayWithoutResizeDoesNotSettle() {
+        mDebouncer.setDelay(0);
+
+        assertFalse(mDebouncer.isSettled());
+        assertEquals(0, mSettleCount);
+    }
+
+    @Test
+    public void finishResetsState() {
+        mDebouncer.setDelay(200);
+        mDebouncer.onResize("first");
+        mScheduler.runPending();
+
+        assertEquals("first", mDebouncer.finish());
+        assertFalse(mDebouncer.isResizing());
+        assertFalse(mDebouncer.isSettled());
+        assertNull(mDebouncer.finish());
+
+        mDebouncer.onResize("next");
+        assertEquals("next", mDebouncer.getLanesBeforeResize());
+    }
+
+    @Test
+    public void settleAfterFinishIsIgnored() {
+        mDebouncer.setDelay(200);
+        mDebouncer.onResize("first");
+        mDebouncer.finish();
+
+        mScheduler.runPending();
+        assertFalse(mDebouncer.isSettled());
+        assertEquals(0, mSettleCount);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import org.junit.Test;
+import org.lucasr.twowayview.widget.SectionedLayoutManager.SectionAdapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SectionIndexTest {
+    private static class TestAdapter implements SectionAdapter {
+        private final int[] mHeaderPositions;
+        private final int[] mLaneCounts;
+
+        TestAdapter(int[] headerPositions, int[] laneCounts) {
+            mHeaderPositions = headerPositions;
+            mLaneCounts = laneCounts;
+        }
+
+        @Override
+        public int getSectionCount() {
+            return mHeaderPositions.length;
+        }
+
+        @Override
+        public int getSectionHeaderPosition(int section) {
+            return mHeaderPositions[section];
+        }
+
+        @Override
+        public int getSectionLaneCount(int section) {
+            return mLaneCounts[section];
+        }
+    }
+
+    private static SectionIndex build(int itemCount, int[] headerPositions, int[] laneCounts) {
+        return SectionIndex.build(new TestAdapter(headerPositions, laneCounts), itemCount);
+    }
+
+    @Test
+    public void emptyAdapterUsesEmptyIndex() {
+        assertSame(SectionIndex.EMPTY, build(0, new int[0], new int[0]));
+    }
+
+    @Test
+    public void findsSectionForPosition() {
+        final SectionIndex index = build(30, new int[] { 0, 10, 25 }, new int[] { 1, 2, 3 });
+
+        assertEquals(3, index.getSectionCount());
+        assertEquals(0, index.getSectionForPosition(0));
+        assertEquals(0, index.getSectionForPosition(9));
+        assertEquals(1, index.getSectionForPosition(10));
+        assertEquals(1, index.getSectionForPosition(24));
+        assertEquals(2, index.getSectionForPosition(25));
+        assertEquals(2, index.getSectionForPosition(29));
+        assertEquals(SectionIndex.NO_SECTION, index.getSectionForPosition(-1));
+    }
+
+    @Test
+    public void findsHeaders() {
+        final SectionIndex index = build(30, new int[] { 0, 10, 25 }, new int[] { 1, 2, 3 });
+
+        assertTrue(index.isHeader(0));
+        assertTrue(index.isHeader(10));
+        assertTrue(index.isHeader(25));
+        assertFalse(index.isHeader(1));
+        assertFalse(index.isHeader(24));
+
+        assertEquals(10, index.getHeaderPosition(1));
+    }
+
+    @Test
+    public void splitsTotalLanesEvenly() {
+        final SectionIndex index = build(30, new int[] { 0, 10, 25 }, new int[] { 2, 3, 4 });
+
+        assertEquals(12, index.getTotalLaneCount());
+        assertEquals(6, index.getLaneSpan(0));
+        assertEquals(4, index.getLaneSpan(1));
+        assertEquals(3, index.getLaneSpan(2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsTooManyTotalLanes() {
+        build(40, new int[] { 0, 10, 20, 30 }, new int[] { 3, 4, 5, 7 });
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsFirstSectionNotAtStart() {
+        build(10, new int[] { 1 }, new int[] { 1 });
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsUnsortedSections() {
+        build(10, new int[] { 0, 5, 5 }, new int[] { 1, 1, 1 });
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsSectionAfterLastItem() {
+        build(10, new int[] { 0, 10 }, new int[] { 1, 1 });
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsItemsWithoutSections() {
+        build(10, new int[0], new int[0]);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import android.support.v7.widget.RecyclerView;
+
+import org.junit.Test;
+import org.lucasr.twowayview.widget.BaseLayoutManager.ItemSizeProvider;
+import org.lucasr.twowayview.widget.SmoothScrollJump.ItemExtents;
+
+import static org.junit.Assert.assertEquals;
+import static org.lucasr.twowayview.widget.SmoothScrollJump.findJumpPosition;
+
+public class SmoothScrollJumpTest {
+    private static ItemExtents fixedExtents(final int extent) {
+        return new ItemExtents() {
+            @Override
+            public int getItemExtent(int position) {
+                return extent;
+            }
+        };
+    }
+
+    @Test
+    public void jumpsBeforeTargetTowardsEnd() {
+        // Ten 100px items cover the distance before the target.
+        assertEquals(990, findJumpPosition(fixedExtents(100), 1000, 0, 9, 1000, 980));
+    }
+
+    @Test
+    public void jumpsAfterTargetTowardsStart() {
+        assertEquals(20, findJumpPosition(fixedExtents(100), 10, 900, 909, 1000, 30));
+    }
+
+    @Test
+    public void usesExtentsOfItemsBetweenJumpAndTarget() {
+        final ItemExtents extents = new ItemExtents() {
+            @Override
+            public int getItemExtent(int position) {
+                return (position >= 995 ? 300 : 10);
+            }
+        };
+
+        // Items 995 to 999 alone cover the distance.
+        assertEquals(996, findJumpPosition(extents, 1000, 0, 9, 1000, 980));
+    }
+
+    @Test
+    public void fallsBackToEstimateOnUnknownSize() {
+        final ItemExtents extents = new ItemExtents() {
+            @Override
+            public int getItemExtent(int position) {
+                return (position == 995 ? ItemSizeProvider.NO_SIZE : 100);
+            }
+        };
+
+        assertEquals(980, findJumpPosition(extents, 1000, 0, 9, 1000, 980));
+    }
+
+    @Test
+    public void doesNotJumpWhenVisibleItemsAreReached() {
+        assertEquals(RecyclerView.NO_POSITION,
+                findJumpPosition(fixedExtents(10), 30, 0, 9, 1000, 20));
+        assertEquals(RecyclerView.NO_POSITION,
+                findJumpPosition(fixedExtents(10), 10, 20, 29, 1000, 15));
+    }
+}
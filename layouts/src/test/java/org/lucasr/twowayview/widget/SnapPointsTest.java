@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SnapPointsTest {
+    private SnapPoints mSnapPoints;
+
+    @Before
+    public void setUp() {
+        mSnapPoints = new SnapPoints();
+        mSnapPoints.reset(60);
+
+        mSnapPoints.add(50);
+        mSnapPoints.add(-30);
+        mSnapPoints.add(120);
+        mSnapPoints.add(0);
+        mSnapPoints.sort();
+    }
+
+    @Test
+    public void findsKnownPoints() {
+        assertEquals(0, mSnapPoints.floor(0));
+        assertEquals(0, mSnapPoints.floor(40));
+        assertEquals(50, mSnapPoints.ceiling(40));
+        assertEquals(-30, mSnapPoints.ceiling(-30));
+        assertEquals(-30, mSnapPoints.floor(-1));
+        assertEquals(120, mSnapPoints.floor(120));
+    }
+
+    @Test
+    public void extrapolatesPastKnownPoints() {
+        assertEquals(180, mSnapPoints.floor(200));
+        assertEquals(180, mSnapPoints.ceiling(121));
+        assertEquals(240, mSnapPoints.ceiling(200));
+
+        assertEquals(-150, mSnapPoints.floor(-100));
+        assertEquals(-90, mSnapPoints.ceiling(-100));
+        assertEquals(-90, mSnapPoints.floor(-90));
+        assertEquals(-90, mSnapPoints.ceiling(-90));
+    }
+
+    @Test
+    public void findsNearestPoint() {
+        assertEquals(0, mSnapPoints.nearest(20));
+        assertEquals(50, mSnapPoints.nearest(30));
+        assertEquals(0, mSnapPoints.nearest(25));
+        assertEquals(180, mSnapPoints.nearest(170));
+        assertEquals(-30, mSnapPoints.nearest(-50));
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        mSnapPoints.reset(10);
+        for (int i = 99; i >= 0; i--) {
+            mSnapPoints.add(i * 10);
+        }
+        mSnapPoints.sort();
+
+        assertEquals(500, mSnapPoints.floor(505));
+        assertEquals(510, mSnapPoints.ceiling(505));
+        assertEquals(1000, mSnapPoints.ceiling(991));
+    }
+
+    @Test
+    public void clampsPitchToOnePixel() {
+        mSnapPoints.reset(0);
+        mSnapPoints.add(0);
+        mSnapPoints.sort();
+
+        assertEquals(7, mSnapPoints.floor(7));
+        assertEquals(-7, mSnapPoints.ceiling(-7));
+    }
+}
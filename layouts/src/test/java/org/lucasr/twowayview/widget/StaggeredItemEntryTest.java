@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import org.junit.Test;
+import org.lucasr.twowayview.widget.StaggeredGridLayoutManager.StaggeredItemEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StaggeredItemEntryTest {
+    private static StaggeredItemEntry createEntry(int width, int height) {
+        final StaggeredItemEntry entry = new StaggeredItemEntry(0, 0, 1);
+        entry.setSize(width, height);
+        return entry;
+    }
+
+    @Test
+    public void rescalesKeepingAspectRatioVertically() {
+        final StaggeredItemEntry entry = createEntry(100, 150);
+
+        assertTrue(entry.rescale(100, 240, true));
+        assertEquals(240, entry.getWidth());
+        assertEquals(360, entry.getHeight());
+    }
+
+    @Test
+    public void rescalesKeepingAspectRatioHorizontally() {
+        final StaggeredItemEntry entry = createEntry(150, 100);
+
+        assertTrue(entry.rescale(100, 50, false));
+        assertEquals(75, entry.getWidth());
+        assertEquals(50, entry.getHeight());
+    }
+
+    @Test
+    public void roundsToNearestPixel() {
+        final StaggeredItemEntry entry = createEntry(300, 100);
+
+        assertTrue(entry.rescale(300, 200, true));
+        assertEquals(67, entry.getHeight());
+    }
+
+    @Test
+    public void rotationRoundTripRestoresSize() {
+        final StaggeredItemEntry entry = createEntry(360, 487);
+
+        assertTrue(entry.rescale(360, 640, true));
+        assertTrue(entry.rescale(640, 360, true));
+        assertEquals(360, entry.getWidth());
+        assertEquals(487, entry.getHeight());
+    }
+
+    @Test
+    public void skipsEntriesWithoutSize() {
+        assertFalse(createEntry(0, 0).rescale(100, 200, true));
+        assertFalse(createEntry(100, 100).rescale(0, 200, true));
+    }
+}
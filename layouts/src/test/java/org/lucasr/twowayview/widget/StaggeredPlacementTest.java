@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.twowayview.widget;
+
+import org.junit.Test;
+import org.lucasr.twowayview.widget.BaseLayoutManager.ItemSizeProvider;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StaggeredPlacementTest {
+    private static final int LANE_SIZE = 100;
+    private static final int ITEM_SPACING = 4;
+
+    private static class RandomSizeProvider implements ItemSizeProvider {
+        private final int[] mSizes;
+        private final int[] mSpans;
+
+        RandomSizeProvider(int count, int maxSpan, long seed) {
+            final Random random = new Random(seed);
+
+            mSizes = new int[count];
+            mSpans = new int[count];
+            for (int i = 0; i < count; i++) {
+                mSizes[i] = 10 + random.nextInt(200);
+                mSpans[i] = 1 + random.nextInt(maxSpan);
+            }
+        }
+
+        @Override
+        public int getItemLaneSpan(int position) {
+            return mSpans[position];
+        }
+
+        @Override
+        public int getItemSize(int position, int laneSpan, int laneSize) {
+            return mSizes[position];
+        }
+    }
+
+    /**
+     * Checks each placement against the lane rules of
+     * {@link Lanes#findLane(Lanes.LaneInfo, int, org.lucasr.twowayview.TwoWayLayoutManager.Direction)}:
+     * items go right after the lowest lane edge any span-wide window fits
+     * under, the anchor lane being the first lane with that edge.
+     */
+    private static void assertFollowsLaneRules(StaggeredPlacement placement, int laneCount) {
+        final int[] laneEnds = new int[laneCount];
+        final int[] checkpointEnds = new int[laneCount];
+
+        for (int position = 0; position < placement.getCount(); position++) {
+            placement.getLaneEndsBefore(position, checkpointEnds);
+            assertArrayEquals(laneEnds, checkpointEnds);
+
+            final int span = placement.getSpan(position);
+            final int startLane = placement.getStartLane(position);
+            final int anchorLane = placement.getAnchorLane(position);
+            final int start = placement.getStart(position);
+
+            int lowestEdge = Integer.MAX_VALUE;
+            int firstLaneWithLowestEdge = Lanes.NO_LANE;
+            for (int l = 0; l + span <= laneCount; l++) {
+                int edge = 0;
+                for (int i = l; i < l + span; i++) {
+                    edge = Math.max(edge, laneEnds[i]);
+                }
+
+                lowestEdge = Math.min(lowestEdge, edge);
+            }
+
+            for (int l = 0; l < laneCount; l++) {
+                if (laneEnds[l] == lowestEdge) {
+                    firstLaneWithLowestEdge = l;
+                    break;
+                }
+            }
+
+            assertEquals(lowestEdge, start);
+            assertEquals(start, laneEnds[anchorLane]);
+            assertTrue(anchorLane >= startLane && anchorLane < startLane + span);
+            assertTrue(startLane + span <= laneCount);
+
+            if (span == 1) {
+                assertEquals(firstLaneWithLowestEdge, startLane);
+            }
+
+            for (int l = startLane; l < startLane + span; l++) {
+                assertTrue(laneEnds[l] <= start);
+                laneEnds[l] = start + placement.getSize(position) + ITEM_SPACING;
+            }
+        }
+    }
+
+    @Test
+    public void placesSingleSpanItemsInShortestLane() {
+        final int[] sizes = { 50, 30, 40, 10, 20 };
+        final ItemSizeProvider provider = new ItemSizeProvider() {
+            @Override
+            public int getItemLaneSpan(int position) {
+                return 1;
+            }
+
+            @Override
+            public int getItemSize(int position, int laneSpan, int laneSize) {
+                return sizes[position];
+            }
+        };
+
+        final StaggeredPlacement placement =
+                StaggeredPlacement.compute(provider, sizes.length, 3, LANE_SIZE, ITEM_SPACING, true);
+
+        assertEquals(sizes.length, placement.getCount());
+
+        final int[] expectedLanes = { 0, 1, 2, 1, 2 };
+        final int[] expectedStarts = { 0, 0, 0, 34, 44 };
+        for (int i = 0; i < sizes.length; i++) {
+            assertEquals(expectedLanes[i], placement.getStartLane(i));
+            assertEquals(expectedLanes[i], placement.getAnchorLane(i));
+            assertEquals(expectedStarts[i], placement.getStart(i));
+        }
+    }
+
+    @Test
+    public void followsLaneRulesWithSingleSpans() {
+        final int count = 500;
+        final StaggeredPlacement placement = StaggeredPlacement.compute(
+                new RandomSizeProvider(count, 1, 1), count, 4, LANE_SIZE, ITEM_SPACING, true);
+
+        assertEquals(count, placement.getCount());
+        assertFollowsLaneRules(placement, 4);
+    }
+
+    @Test
+    public void followsLaneRulesWithMultipleSpans() {
+        final int count = 500;
+        final StaggeredPlacement placement = StaggeredPlacement.compute(
+                new RandomSizeProvider(count, 3, 2), count, 4, LANE_SIZE, ITEM_SPACING, false);
+
+        assertEquals(count, placement.getCount());
+        assertFollowsLaneRules(placement, 4);
+    }
+
+    @Test
+    public void stopsAtFirstUnknownSize() {
+        final ItemSizeProvider provider = new ItemSizeProvider() {
+            @Override
+            public int getItemLaneSpan(int position) {
+                return 1;
+            }
+
+            @Override
+            public int getItemSize(int position, int laneSpan, int laneSize) {
+                return (position < 40 ? 10 : NO_SIZE);
+            }
+        };
+
+        final StaggeredPlacement placement =
+                StaggeredPlacement.compute(provider, 100, 2, LANE_SIZE, ITEM_SPACING, true);
+
+        assertEquals(100, placement.getRequestedCount());
+        assertEquals(40, placement.getCount());
+        assertFollowsLaneRules(placement, 2);
+    }
+
+    @Test
+    public void truncateSharesPlacements() {
+        final StaggeredPlacement placement = StaggeredPlacement.compute(
+                new RandomSizeProvider(100, 2, 3), 100, 3, LANE_SIZE, ITEM_SPACING, true);
+
+        final StaggeredPlacement truncated = placement.truncate(50);
+        assertEquals(50, truncated.getCount());
+        assertEquals(placement.getStart(49), truncated.getStart(49));
+
+        final int[] laneEnds = new int[3];
+        final int[] truncatedLaneEnds = new int[3];
+        placement.getLaneEndsBefore(50, laneEnds);
+        truncated.getLaneEndsBefore(50, truncatedLaneEnds);
+        assertTrue(Arrays.equals(laneEnds, truncatedLaneEnds));
+
+        assertSame(placement, placement.truncate(100));
+    }
+
+    @Test
+    public void matchesOnlySameLanes() {
+        final StaggeredPlacement placement = StaggeredPlacement.compute(
+                new RandomSizeProvider(10, 1, 4), 10, 3, LANE_SIZE, ITEM_SPACING, true);
+
+        assertTrue(placement.matches(3, LANE_SIZE, ITEM_SPACING, true));
+        assertFalse(placement.matches(2, LANE_SIZE, ITEM_SPACING, true));
+        assertFalse(placement.matches(3, LANE_SIZE + 1, ITEM_SPACING, true));
+        assertFalse(placement.matches(3, LANE_SIZE, ITEM_SPACING, false));
+    }
+}